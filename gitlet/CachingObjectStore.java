@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** An ObjectStore keeping the contents of recently read objects in memory in front of another store, for the
+ * long-lived JVM of the daemon.  Objects never change once written, so cached contents stay valid; only objects up to
+ * a size limit are kept, least recently used first out once the cache is full.  Whether an object exists is always
+ * asked of the underlying store, since another process may have removed it.
+ * @author Lila Chalabi
+ */
+class CachingObjectStore implements ObjectStore {
+
+    /** A store caching up to CAPACITY bytes of the contents of objects read from STORE. */
+    CachingObjectStore(ObjectStore store, long capacity) {
+        this.store = store;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean has(String id) {
+        return store.has(id);
+    }
+
+    /** Returns a copy of the contents, so that callers may change them. */
+    @Override
+    public byte[] read(String id) {
+        byte[] contents = cached(id);
+        if (contents == null) {
+            contents = store.read(id);
+            remember(id, contents.clone());
+            return contents;
+        }
+        return contents.clone();
+    }
+
+    /** A miss is streamed from the underlying store, and copied into the cache as it is read unless it turns out to
+     * be too large. */
+    @Override
+    public InputStream openStream(String id) {
+        byte[] contents = cached(id);
+        if (contents != null) {
+            return new ByteArrayInputStream(contents);
+        }
+        return new FilterInputStream(store.openStream(id)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) {
+                    finish();
+                } else if (copy != null) {
+                    copy.write(b);
+                    check();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n < 0) {
+                    finish();
+                } else if (copy != null) {
+                    copy.write(buf, off, n);
+                    check();
+                }
+                return n;
+            }
+
+            /** Stops copying once the copy is too large to cache. */
+            private void check() {
+                if (copy.size() > maxObject()) {
+                    copy = null;
+                }
+            }
+
+            /** Caches the copy at the end of the object. */
+            private void finish() {
+                if (copy != null) {
+                    remember(id, copy.toByteArray());
+                    copy = null;
+                }
+            }
+
+            /** The bytes read so far, or null if they are not being kept. */
+            private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        };
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        store.write(id, contents);
+    }
+
+    @Override
+    public String write(InputStream in) {
+        return store.write(in);
+    }
+
+    @Override
+    public File rawFile(String id) {
+        return store.rawFile(id);
+    }
+
+    @Override
+    public File storeRaw(String id, InputStream in) {
+        return store.storeRaw(id, in);
+    }
+
+    @Override
+    public Iterable<String> iterate() {
+        return store.iterate();
+    }
+
+    /** Returns the cached contents of the object with id ID, or null. */
+    private synchronized byte[] cached(String id) {
+        return cache.get(id);
+    }
+
+    /** Caches CONTENTS as those of the object with id ID, if they are small enough, evicting the least recently used
+     * objects as needed. */
+    private synchronized void remember(String id, byte[] contents) {
+        if (contents.length > maxObject() || cache.containsKey(id)) {
+            return;
+        }
+        cache.put(id, contents);
+        size += contents.length;
+        Iterator<Map.Entry<String, byte[]>> oldest =
+            cache.entrySet().iterator();
+        while (size > capacity && oldest.hasNext()) {
+            size -= oldest.next().getValue().length;
+            oldest.remove();
+        }
+    }
+
+    /** Returns the size of the largest object cached. */
+    private long maxObject() {
+        return capacity / 16;
+    }
+
+    /** The underlying store. */
+    private final ObjectStore store;
+    /** Most bytes of contents cached. */
+    private final long capacity;
+    /** Cached contents, least recently used first. */
+    private final LinkedHashMap<String, byte[]> cache =
+        new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    /** Bytes of contents cached. */
+    private long size;
+}
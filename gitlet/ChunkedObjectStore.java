@@ -0,0 +1,407 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/** An ObjectStore that keeps large blobs as lists of chunks, so that versions of a large file share the chunks they
+ * have in common.  With a file .gitlet/chunked-blobs present, a blob of at least the number of bytes it holds, or of
+ * DEFAULT_THRESHOLD if it is empty, is cut into chunks by FastCdc and each chunk is stored once, as a loose object of
+ * a second store in objects/chunks.  The blob itself is then a chunk list: MAGIC, a version, the total length, and the
+ * UID and length of each chunk in order.  It is still named by the SHA-1 of the whole contents, so nothing else needs
+ * to know how it is kept; reads reassemble it, streams chunk by chunk, and check that the chunks add up to the size
+ * the list records and hash to its UID.  Chunk lists are read whether or not the setting is present.  Contents that
+ * start with MAGIC are always chunked, whatever their size and whether or not the setting is present, so that no blob
+ * stored whole looks like a chunk list; one stored whole before that was so is still told apart, since its stored
+ * contents hash to its UID, which those of a chunk list never do.
+ * @author Lila Chalabi
+ */
+class ChunkedObjectStore implements ObjectStore {
+
+    /** Marks the start of a chunk list.  The NUL keeps it from looking like the start of a text file. */
+    static final byte[] MAGIC = {0, 'G', 'C', 'L'};
+    /** Name of the directory of chunks within the objects directory. */
+    static final String CHUNKS = "chunks";
+    /** Least size of a chunked blob when the setting file is empty. */
+    static final int DEFAULT_THRESHOLD = 1 << 20;
+
+    /** The chunks of a chunked blob. */
+    static class ChunkList {
+        /** A list of the chunks with UIDS and LENGTHS, in order. */
+        ChunkList(List<String> ids, List<Integer> lengths) {
+            this.ids = ids;
+            this.lengths = lengths;
+            long total = 0;
+            for (int length : lengths) {
+                total += length;
+            }
+            this.size = total;
+        }
+
+        /** Returns the stored form of this list. */
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.write(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(size);
+                out.writeInt(ids.size());
+                for (int i = 0; i < ids.size(); i += 1) {
+                    out.write(PackFile.toBytes(ids.get(i)));
+                    out.writeInt(lengths.get(i));
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return bytes.toByteArray();
+        }
+
+        /** Returns the list stored as CONTENTS, or null if CONTENTS are not a chunk list.  A list whose size is not
+         * that of its chunks is corrupt. */
+        static ChunkList decode(byte[] contents) {
+            if (!isChunkList(contents)) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(contents, MAGIC.length,
+                            contents.length - MAGIC.length))) {
+                if (in.readByte() != VERSION) {
+                    throw new IllegalArgumentException(
+                            "unknown chunk list version");
+                }
+                long size = in.readLong();
+                int count = in.readInt();
+                List<String> ids = new ArrayList<String>();
+                List<Integer> lengths = new ArrayList<Integer>();
+                byte[] id = new byte[Utils.UID_LENGTH / 2];
+                for (int i = 0; i < count; i += 1) {
+                    in.readFully(id);
+                    ids.add(Utils.toHex(id));
+                    lengths.add(in.readInt());
+                }
+                ChunkList result = new ChunkList(ids, lengths);
+                if (result.size != size || in.read() >= 0) {
+                    throw new IllegalArgumentException("corrupt chunk list");
+                }
+                return result;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException("corrupt chunk list");
+            }
+        }
+
+        /** The UIDs of the chunks. */
+        final List<String> ids;
+        /** Their lengths. */
+        final List<Integer> lengths;
+        /** The length of the whole blob. */
+        final long size;
+    }
+
+    /** Returns the store of the objects directory OBJECTS: its loose objects, falling back to its packs, with the
+     * chunks of chunked blobs in its CHUNKS directory, following the setting .gitlet/chunked-blobs beside it. */
+    static ChunkedObjectStore open(File objects) {
+        return new ChunkedObjectStore(new CompositeObjectStore(
+                new LooseObjectStore(objects), new PackedObjectStore(objects)),
+                new LooseObjectStore(new File(objects, CHUNKS)),
+                new File(objects.getParentFile(), "chunked-blobs"));
+    }
+
+    /** A store keeping objects in STORE and the chunks of blobs at least as large as the threshold SETTINGS holds,
+     * when it exists, in CHUNKS. */
+    ChunkedObjectStore(ObjectStore store, ObjectStore chunks, File settings) {
+        this.store = store;
+        this.chunks = chunks;
+        this.settings = settings;
+    }
+
+    @Override
+    public boolean has(String id) {
+        return store.has(id);
+    }
+
+    @Override
+    public byte[] read(String id) {
+        byte[] contents = store.read(id);
+        ChunkList list = listFor(id, contents);
+        if (list == null) {
+            return contents;
+        } else if (list.size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("object " + id
+                    + " is too large to read whole");
+        }
+        byte[] result = new byte[(int) list.size];
+        int pos = 0;
+        for (int i = 0; i < list.ids.size(); i += 1) {
+            byte[] part = chunks.read(list.ids.get(i));
+            if (part.length != list.lengths.get(i)) {
+                throw mismatch(id);
+            }
+            System.arraycopy(part, 0, result, pos, part.length);
+            pos += part.length;
+        }
+        if (!Utils.sha1((Object) result).equals(id)) {
+            throw mismatch(id);
+        }
+        return result;
+    }
+
+    /** A chunked blob is checked as it is read, and the stream fails at its end if the chunks are not the blob. */
+    @Override
+    public InputStream openStream(String id) {
+        PushbackInputStream in = new PushbackInputStream(store.openStream(id),
+                MAGIC.length);
+        try {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                in.unread(magic);
+                return in;
+            }
+            byte[] rest = in.readAllBytes();
+            in.close();
+            byte[] contents = Arrays.copyOf(magic, magic.length + rest.length);
+            System.arraycopy(rest, 0, contents, magic.length, rest.length);
+            ChunkList list = listFor(id, contents);
+            if (list == null) {
+                return new ByteArrayInputStream(contents);
+            }
+            return checked(id, list);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        store.write(id, contents);
+    }
+
+    /** Contents shorter than the threshold, or all contents when there is no setting file, are passed to the
+     * underlying store unless they start with MAGIC; only that many bytes are held in memory to find out. */
+    @Override
+    public String write(InputStream in) {
+        int threshold = threshold();
+        try {
+            byte[] head = in.readNBytes(Math.max(threshold, MAGIC.length));
+            InputStream all = new SequenceInputStream(
+                    new ByteArrayInputStream(head), in);
+            if (Arrays.equals(head, 0, Math.min(head.length, MAGIC.length),
+                    MAGIC, 0, MAGIC.length)) {
+                return writeChunked(all);
+            } else if (threshold < 0) {
+                return store.write(all);
+            } else if (head.length < threshold) {
+                return store.write(new ByteArrayInputStream(head));
+            }
+            return writeChunked(all);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public File rawFile(String id) {
+        return store.rawFile(id);
+    }
+
+    /** A chunked blob is not replaced by a raw copy, which would undo the sharing of its chunks. */
+    @Override
+    public File storeRaw(String id, InputStream in) {
+        if (chunkList(id) != null) {
+            return null;
+        }
+        return store.storeRaw(id, in);
+    }
+
+    @Override
+    public Iterable<String> iterate() {
+        return store.iterate();
+    }
+
+    /** Returns the chunk list of the object with UID ID, or null if it is not a chunked blob. */
+    ChunkList chunkList(String id) {
+        try (InputStream in = store.openStream(id)) {
+            if (!Arrays.equals(in.readNBytes(MAGIC.length), MAGIC)) {
+                return null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return listFor(id, store.read(id));
+    }
+
+    /** Returns the chunk list stored as CONTENTS under UID ID, or null if CONTENTS are the blob itself: they are not
+     * a chunk list, or they hash to ID, as the stored form of a chunked blob never does. */
+    private static ChunkList listFor(String id, byte[] contents) {
+        if (!isChunkList(contents)
+                || Utils.sha1((Object) contents).equals(id)) {
+            return null;
+        }
+        return ChunkList.decode(contents);
+    }
+
+    /** Returns a stream over the contents of the chunks of LIST, the blob with UID ID, that fails at its end unless
+     * they are as long as LIST says and hash to ID. */
+    private InputStream checked(String id, ChunkList list) {
+        MessageDigest digest = sha1();
+        return new FilterInputStream(chunkStream(chunks, list)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b < 0) {
+                    finish();
+                } else {
+                    digest.update((byte) b);
+                    count += 1;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n < 0) {
+                    finish();
+                } else {
+                    digest.update(buf, off, n);
+                    count += n;
+                }
+                return n;
+            }
+
+            /** Checks what was read, once it has all been read. */
+            private void finish() throws IOException {
+                if (!done && (count != list.size
+                        || !Utils.toHex(digest.digest()).equals(id))) {
+                    throw new IOException(mismatch(id).getMessage());
+                }
+                done = true;
+            }
+
+            /** Bytes read so far. */
+            private long count;
+            /** True iff the end was reached and checked. */
+            private boolean done;
+        };
+    }
+
+    /** Returns the error for a chunked blob with UID ID whose chunks are not its contents. */
+    private static IllegalArgumentException mismatch(String id) {
+        return new IllegalArgumentException("chunks of object " + id
+                + " do not match it");
+    }
+
+    /** Returns a SHA-1 digest. */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns a stream over the contents of the chunks of LIST, read from CHUNKS, opening each as the one before it
+     * runs out. */
+    static InputStream chunkStream(ObjectStore chunks, ChunkList list) {
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next < list.ids.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                next += 1;
+                return chunks.openStream(list.ids.get(next - 1));
+            }
+
+            /** The index of the next chunk to open. */
+            private int next;
+        });
+    }
+
+    /** Returns true iff CONTENTS are a chunk list. */
+    static boolean isChunkList(byte[] contents) {
+        return contents.length > MAGIC.length
+            && Arrays.equals(contents, 0, MAGIC.length, MAGIC, 0,
+                    MAGIC.length);
+    }
+
+    /** Cuts everything remaining in IN into chunks, stores those not stored yet, and stores the list of them as
+     * the blob named by the SHA-1 of all of IN, whose UID is returned. */
+    private String writeChunked(InputStream in) throws IOException {
+        MessageDigest whole = sha1();
+        List<String> ids = new ArrayList<String>();
+        List<Integer> lengths = new ArrayList<Integer>();
+        byte[] buf = new byte[2 * FastCdc.MAX_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean done = false;
+        while (true) {
+            if (!done && end - start < FastCdc.MAX_SIZE) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+                int n = in.readNBytes(buf, end, buf.length - end);
+                end += n;
+                done = end < buf.length;
+            }
+            if (start == end) {
+                break;
+            }
+            int length = FastCdc.cut(buf, start, end);
+            byte[] chunk = Arrays.copyOfRange(buf, start, start + length);
+            whole.update(chunk);
+            String id = Utils.sha1((Object) chunk);
+            chunks.write(id, chunk);
+            ids.add(id);
+            lengths.add(length);
+            start += length;
+        }
+        String id = Utils.toHex(whole.digest());
+        store.write(id, new ChunkList(ids, lengths).encode());
+        return id;
+    }
+
+    /** Returns the least size of a chunked blob, or -1 if blobs are not chunked. */
+    private int threshold() {
+        if (!settings.isFile()) {
+            return -1;
+        }
+        String setting = Utils.readContentsAsString(settings).trim();
+        if (setting.isEmpty()) {
+            return DEFAULT_THRESHOLD;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(setting));
+        } catch (NumberFormatException excp) {
+            return DEFAULT_THRESHOLD;
+        }
+    }
+
+    /** Format version of chunk lists. */
+    private static final byte VERSION = 1;
+
+    /** The store of whole objects and chunk lists. */
+    private final ObjectStore store;
+    /** The store of chunks. */
+    private final ObjectStore chunks;
+    /** The file whose presence turns chunking on, holding the threshold. */
+    private final File settings;
+}
@@ -0,0 +1,294 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** The binary encoding of commits, trees and the staging area, in place of Java serialization.  An encoding starts
+ * with the bytes 'g' 'l', a byte for the kind of object ('C' for a commit, 'T' for a tree, 'S' for the staging area)
+ * and a format version, followed by the object's fields in a fixed order: numbers as unsigned LEB128 varints, strings
+ * as a varint byte count and their UTF-8 bytes, UIDs as their 20 raw bytes, and maps as a varint count and their
+ * entries, which trees write sorted by name.  The same commit or tree therefore always has the same encoding, which is
+ * what commit and tree UIDs are the sha-1 of.
+ *
+ * Java serialization streams start with the bytes 0xAC 0xED, so metadata written by earlier versions of Gitlet is
+ * recognized and read as before; it is written back in this encoding the next time it changes.
+ * @author Lila Chalabi
+ */
+class Codec {
+
+    /** Kind byte of a commit. */
+    static final byte COMMIT = 'C';
+    /** Kind byte of a tree. */
+    static final byte TREE = 'T';
+    /** Kind byte of the staging area. */
+    static final byte STAGED_AREA = 'S';
+    /** Format version of the staging area.  Version 1 also held the list of all commits and the branches, which are
+     * now kept by CommitJournal and Refs; it is still read, and written for a staging area not yet migrated. */
+    static final byte STAGED_AREA_VERSION = 2;
+
+    /** Returns the encoding of OBJ, which must be a Commit, Tree or StagedArea. */
+    static byte[] encode(Object obj) {
+        Writer out = new Writer();
+        if (obj instanceof Commit) {
+            out.header(COMMIT, VERSION);
+            ((Commit) obj).encode(out);
+        } else if (obj instanceof Tree) {
+            out.header(TREE, VERSION);
+            ((Tree) obj).encode(out);
+        } else if (obj instanceof StagedArea) {
+            StagedArea sA = (StagedArea) obj;
+            out.header(STAGED_AREA, sA.formatVersion());
+            sA.encode(out);
+        } else {
+            throw new IllegalArgumentException("cannot encode "
+                    + obj.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns true iff CONTENTS are in this encoding rather than a Java serialization stream. */
+    static boolean isEncoded(byte[] contents) {
+        return contents.length >= HEADER_SIZE && contents[0] == MAGIC[0]
+                && contents[1] == MAGIC[1];
+    }
+
+    /** Returns the object encoded or serialized in CONTENTS, cast to EXPECTEDCLASS.  Throws
+     * IllegalArgumentException if CONTENTS hold something else or are damaged. */
+    static <T extends Serializable> T decode(byte[] contents,
+                                             Class<T> expectedClass) {
+        try {
+            if (!isEncoded(contents)) {
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(contents))) {
+                    return expectedClass.cast(in.readObject());
+                }
+            }
+            Reader in = new Reader(contents);
+            int latest = contents[2] == STAGED_AREA ? STAGED_AREA_VERSION
+                    : VERSION;
+            if (contents[3] < 1 || contents[3] > latest) {
+                throw new IllegalArgumentException(
+                        "unknown metadata version " + contents[3]);
+            }
+            Object result;
+            switch (contents[2]) {
+            case COMMIT:
+                result = Commit.decode(in);
+                break;
+            case TREE:
+                result = Tree.decode(in);
+                break;
+            case STAGED_AREA:
+                result = StagedArea.decode(in);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "unknown metadata kind " + contents[2]);
+            }
+            if (in.remaining() != 0) {
+                throw new IllegalArgumentException("trailing metadata");
+            }
+            return expectedClass.cast(result);
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Accumulates an encoding. */
+    static class Writer {
+
+        /** Appends N as an unsigned varint. */
+        void varint(long n) {
+            ensure(MAX_VARINT);
+            while ((n & ~0x7fL) != 0) {
+                buf[size++] = (byte) ((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            buf[size++] = (byte) n;
+        }
+
+        /** Appends S as a length-prefixed UTF-8 string. */
+        void string(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        /** Appends the UID ID as its raw bytes. */
+        void id(String id) {
+            if (id.length() != 2 * ID_BYTES) {
+                throw new IllegalArgumentException("not a UID: " + id);
+            }
+            ensure(ID_BYTES);
+            for (int i = 0; i < ID_BYTES; i += 1) {
+                int hi = hexValue(id.charAt(2 * i));
+                int lo = hexValue(id.charAt(2 * i + 1));
+                if (hi < 0 || lo < 0) {
+                    throw new IllegalArgumentException("not a UID: " + id);
+                }
+                buf[size++] = (byte) ((hi << 4) | lo);
+            }
+        }
+
+        /** Appends a flag saying whether there is a UID ID, null or empty if not, and then the UID. */
+        void optionalId(String id) {
+            boolean present = id != null && !id.isEmpty();
+            ensure(1);
+            buf[size++] = (byte) (present ? 1 : 0);
+            if (present) {
+                id(id);
+            }
+        }
+
+        /** Returns the encoding so far. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        /** Appends the header of an object of kind KIND in format version VERSION. */
+        private void header(byte kind, byte version) {
+            ensure(HEADER_SIZE);
+            buf[size++] = MAGIC[0];
+            buf[size++] = MAGIC[1];
+            buf[size++] = kind;
+            buf[size++] = version;
+        }
+
+        /** Makes room for N more bytes. */
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, size + n));
+            }
+        }
+
+        /** The encoding, in buf[0..size). */
+        private byte[] buf = new byte[INITIAL_SIZE];
+        /** Bytes used in buf. */
+        private int size;
+    }
+
+    /** Returns the value of the hexadecimal digit C, or -1 if it is not one. */
+    private static int hexValue(char c) {
+        return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+    }
+
+    /** Reads the fields of an encoding in order. */
+    static class Reader {
+
+        /** A reader of the fields of CONTENTS, which start with a header. */
+        Reader(byte[] contents) {
+            this.contents = contents;
+            this.pos = HEADER_SIZE;
+        }
+
+        /** Returns the next unsigned varint. */
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                int b = next();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        /** Returns the next varint, which must be a count of items that fits in an int. */
+        int count() {
+            long n = varint();
+            if (n > remaining()) {
+                throw new IllegalArgumentException("malformed count");
+            }
+            return (int) n;
+        }
+
+        /** Returns the next string. */
+        String string() {
+            int length = count();
+            String result = new String(contents, pos, length,
+                    StandardCharsets.UTF_8);
+            pos += length;
+            return result;
+        }
+
+        /** Returns the next UID. */
+        String id() {
+            if (remaining() < ID_BYTES) {
+                throw new IllegalArgumentException("truncated metadata");
+            }
+            char[] hex = new char[2 * ID_BYTES];
+            for (int i = 0; i < ID_BYTES; i += 1) {
+                int b = contents[pos++];
+                hex[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+                hex[2 * i + 1] = HEX_DIGITS[b & 0xf];
+            }
+            return new String(hex);
+        }
+
+        /** Returns the next optional UID, or "" if it is absent. */
+        String optionalId() {
+            return next() == 0 ? "" : id();
+        }
+
+        /** Returns the format version of the encoding. */
+        int version() {
+            return contents[3];
+        }
+
+        /** Returns the number of bytes not read yet. */
+        int remaining() {
+            return contents.length - pos;
+        }
+
+        /** Returns the whole encoding being read. */
+        byte[] contents() {
+            return contents;
+        }
+
+        /** Returns the next byte, as an unsigned value. */
+        private int next() {
+            if (pos >= contents.length) {
+                throw new IllegalArgumentException("truncated metadata");
+            }
+            return contents[pos++] & 0xff;
+        }
+
+        /** The encoding. */
+        private final byte[] contents;
+        /** Position of the next field. */
+        private int pos;
+    }
+
+    /** The first two bytes of every encoding. */
+    private static final byte[] MAGIC = {'g', 'l'};
+    /** Format version of commits and trees. */
+    private static final byte VERSION = 1;
+    /** Bytes before the first field. */
+    private static final int HEADER_SIZE = 4;
+    /** Bytes in a binary UID. */
+    private static final int ID_BYTES = 20;
+    /** Most bytes in a varint. */
+    private static final int MAX_VARINT = 10;
+    /** Bytes a Writer starts with room for. */
+    private static final int INITIAL_SIZE = 256;
+    /** The lower-case hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** The values of hexadecimal digits, by character; -1 for other characters. */
+    private static final byte[] HEX_VALUES = new byte['g'];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < HEX_DIGITS.length; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+}
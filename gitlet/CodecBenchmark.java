@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/** Compares Codec with the Java serialization it replaced on the metadata every command reads and writes.  Run with
+ * java gitlet.CodecBenchmark [FILES]; the staging area holds FILES staged files (10000 by default), and the tree as
+ * many files.  Each line shows the size of the two encodings and the mean time of
+ * an encode and a decode, after a warm-up, for Java serialization and then for Codec.
+ * @author Lila Chalabi
+ */
+public class CodecBenchmark {
+
+    /** Runs the benchmark on metadata holding ARGS[0] files. */
+    public static void main(String... args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        StagedArea sA = new StagedArea();
+        for (int i = 0; i < count; i += 1) {
+            String id = Utils.sha1(Integer.toString(i));
+            sA.stagedMap.put("dir" + (i / 100) + "/file" + i + ".txt", id);
+        }
+
+        System.out.printf("%-12s %9s %9s %11s %11s %11s %11s%n", "object",
+                "java(B)", "codec(B)", "java enc", "codec enc", "java dec",
+                "codec dec");
+        run("staged area", sA, StagedArea.class, count);
+        run("tree", treeOf(count), Tree.class, count);
+        run("commit", new Commit(), Commit.class, count);
+    }
+
+    /** Prints a line comparing the encodings of OBJ, of class TYPE, named NAME, timing ITERATIONS runs of each. */
+    private static <T extends Serializable> void run(String name, T obj,
+                                                     Class<T> type,
+                                                     int iterations) {
+        int rounds = Math.max(REPEAT, REPEAT * 100000 / iterations);
+        byte[] serialized = Utils.serialize(obj);
+        byte[] encoded = Codec.encode(obj);
+        double javaEncode = time(() -> Utils.serialize(obj), rounds);
+        double codecEncode = time(() -> Codec.encode(obj), rounds);
+        double javaDecode = time(() -> Codec.decode(serialized, type),
+                rounds);
+        double codecDecode = time(() -> Codec.decode(encoded, type), rounds);
+        System.out.printf("%-12s %9d %9d %8.1f us %8.1f us %8.1f us"
+                + " %8.1f us%n", name, serialized.length, encoded.length,
+                javaEncode, codecEncode, javaDecode, codecDecode);
+    }
+
+    /** Returns the mean time of a call to TASK in microseconds, over ROUNDS calls after as many to warm up. */
+    private static double time(Supplier<Object> task, int rounds) {
+        for (int i = 0; i < rounds; i += 1) {
+            sink = task.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            sink = task.get();
+        }
+        return (System.nanoTime() - start) / 1e3 / rounds;
+    }
+
+    /** Returns a tree of one directory holding COUNT files, building it in a scratch repository. */
+    private static Tree treeOf(int count) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-codec").toFile();
+        String oldDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        new File(dir, ".gitlet/objects").mkdirs();
+        try {
+            Map<String, String> files = new HashMap<String, String>();
+            for (int i = 0; i < count; i += 1) {
+                files.put("file" + i + ".txt",
+                        Utils.sha1(Integer.toString(i)));
+            }
+            return Tree.read(Tree.fromMap(files));
+        } finally {
+            System.setProperty("user.dir", oldDir);
+            delete(dir);
+        }
+    }
+
+    /** Deletes FILE and everything below it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Times each encoding this many times at least. */
+    private static final int REPEAT = 20;
+    /** Keeps results alive so that the work is not optimized away. */
+    private static Object sink;
+}
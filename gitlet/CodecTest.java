@@ -0,0 +1,91 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class CodecTest {
+
+    @Test
+    public void testVarints() {
+        long[] values = {0, 1, 127, 128, 300, Integer.MAX_VALUE,
+                         Long.MAX_VALUE, -1};
+        /* a Reader starts after the four header bytes. */
+        Codec.Writer out = new Codec.Writer();
+        for (int i = 0; i < 4; i += 1) {
+            out.varint(0);
+        }
+        for (long value : values) {
+            out.varint(value);
+        }
+        byte[] bytes = out.toByteArray();
+        assertEquals(4 + 1 + 1 + 1 + 2 + 2 + 5 + 9 + 10, bytes.length);
+        Codec.Reader in = new Codec.Reader(bytes);
+        for (long value : values) {
+            assertEquals(value, in.varint());
+        }
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    public void testStagedArea() {
+        StagedArea sA = new StagedArea();
+        sA.stagedMap.put("a.txt", Utils.sha1("a"));
+        sA.stagedMap.put("dir/\u00e9t\u00e9.txt", Utils.sha1("b"));
+        sA.toDelete.add("gone.txt");
+
+        byte[] encoded = Codec.encode(sA);
+        assertTrue(Codec.isEncoded(encoded));
+        assertEquals(Codec.STAGED_AREA_VERSION, encoded[3]);
+        StagedArea copy = Codec.decode(encoded, StagedArea.class);
+        assertEquals(sA.stagedMap, copy.stagedMap);
+        assertEquals(sA.toDelete, copy.toDelete);
+
+        /* a staging area that still holds commits and branches keeps them until they are migrated. */
+        sA.commitList.add(Utils.sha1("c"));
+        sA._branches.put("master", Utils.sha1("c"));
+        sA.current_branch_name = "master";
+        encoded = Codec.encode(sA);
+        assertEquals(1, encoded[3]);
+        copy = Codec.decode(encoded, StagedArea.class);
+        assertEquals(sA.stagedMap, copy.stagedMap);
+        assertEquals(sA.commitList, copy.commitList);
+        assertEquals(sA._branches, copy._branches);
+        assertEquals("master", copy.current_branch_name);
+
+        /* staging areas written by earlier versions are still read. */
+        byte[] serialized = Utils.serialize(sA);
+        assertFalse(Codec.isEncoded(serialized));
+        assertEquals(sA.stagedMap,
+                Codec.decode(serialized, StagedArea.class).stagedMap);
+    }
+
+    @Test
+    public void testCommitId() {
+        Commit initial = new Commit();
+        byte[] encoded = Codec.encode(initial);
+        assertEquals(Utils.sha1(encoded), initial.getUid());
+        Commit copy = Codec.decode(encoded, Commit.class);
+        assertEquals(initial.getUid(), copy.getUid());
+        assertEquals(initial.getLogMessage(), copy.getLogMessage());
+        assertEquals(initial.getTimeStamp(), copy.getTimeStamp());
+        assertTrue(copy.getParents().isEmpty());
+        assertEquals(Tree.EMPTY, copy.getTree());
+        assertArrayEquals(encoded, Codec.encode(copy));
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] encoded = Codec.encode(new Commit());
+        try {
+            Codec.decode(Arrays.copyOf(encoded, encoded.length - 1),
+                    Commit.class);
+            fail("decoded a truncated commit");
+        } catch (IllegalArgumentException excp) {
+            return;
+        }
+    }
+}
@@ -16,10 +16,8 @@ public class Commands {
 
         StagedArea stagedArea = new StagedArea();
 
-        /* creates the initial commit and the master branch and sets the current branch to master.*/
+        /* creates the initial commit. */
         gitlet.Commit firstcommit = new gitlet.Commit();
-        stagedArea._branches.put("master", firstcommit.getUid());
-        stagedArea.current_branch_name = "master";
 
         /* creates the .gitlet directory if one does not exist */
         File gitlet = new File(".gitlet");
@@ -41,77 +39,98 @@ public class Commands {
         objects.mkdir();
 
 
-        firstcommit.blobReference.putAll(stagedArea.stagedMap);
+        firstcommit.getBlobReference().putAll(stagedArea.stagedMap);
         stagedArea.stagedMap.clear();
-        stagedArea.commitList.add(firstcommit.getUid());
 
-        ObjectOutputStream out = new ObjectOutputStream(
-                new FileOutputStream(stagedFile));
-        out.writeObject(stagedArea);
-        out.close();
+        Utils.writeObject(stagedFile, stagedArea);
 
-        ObjectOutputStream out1 =
-                new ObjectOutputStream(new FileOutputStream(objects
-                        + "/" + firstcommit.getUid()));
-        out1.writeObject(firstcommit);
-        out1.close();
+        firstcommit.save();
+        CommitJournal.load().append(firstcommit.getUid());
+        CommitGraph.load().add(firstcommit);
+        IdIndex.load();
+        MessageIndex.load();
 
-        /* sets the head commit of the current branch (master) to be the first commit */
-        File head = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Utils.writeObject(head, firstcommit);
+        /* creates the master branch at the first commit and makes it the current branch */
+        Refs refs = Refs.load();
+        refs.update("master", null, firstcommit.getUid());
+        refs.setCurrentBranch("master");
 
     }
 
 
-    /** Add allows us to add the file with the given filename in our current directory to the StagedArea in preparation f
-     * or the next commit.  Technically, I read the staged file (deserialize it) and add the new filename, sha-1 UID
-     * pair to the stagedMap in the staging area.  I take the file off the toDelete list if it is already on it.
-     * @param filename
+    /** Add allows us to add files in our current directory to the StagedArea in preparation for the next commit.
+     * Each operand is a file, a directory standing for every file below it, or a glob (see PathSpec).  Technically, I
+     * read the staged file (deserialize it) once, add a filename, sha-1 UID pair to the stagedMap in the staging area
+     * for each file, taking it off the toDelete list if it is on it, and write the staged file once.
+     * @param operands
      */
-    public void add(String filename)
+    public void add(String... operands)
             throws ClassNotFoundException, IOException {
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
-
-        File wdFile = new File(filename);
-        if (!wdFile.exists()) {
-            System.out.println("File does not exist.");
-            return;
+        WorkingTreeScanner scanner = new WorkingTreeScanner(
+                new File(System.getProperty("user.dir")));
+        Map<String, StatCache.Stat> files =
+            new TreeMap<String, StatCache.Stat>();
+        Map<String, StatCache.Stat> workingFiles = null;
+        for (String operand : operands) {
+            PathSpec spec = new PathSpec(operand);
+            if (!spec.inWorkingTree()) {
+                System.out.println(OUTSIDE);
+                return;
+            }
+            StatCache.Stat stat = spec.isGlob() ? null
+                : StatCache.stat(spec.path());
+            boolean found = stat != null;
+            if (found) {
+                files.put(spec.path(), stat);
+            } else {
+                /* the whole working directory is scanned, once, only for directories and globs. */
+                if (workingFiles == null) {
+                    workingFiles = scanner.scan();
+                }
+                for (Map.Entry<String, StatCache.Stat> e
+                         : workingFiles.entrySet()) {
+                    if (spec.matches(e.getKey())) {
+                        files.put(e.getKey(), e.getValue());
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                System.out.println("File does not exist.");
+                return;
+            }
         }
 
-        /* creates a sha1 UID for the given file using the files contents */
-        byte[] wdFileContents = Utils.readContents(wdFile);
-        String sha1wdFile = Utils.sha1(wdFileContents);
-
+        /* creates a sha1 UID for each file using the files contents, storing the file as a blob in the objects
+        directory in the same pass unless an identical blob is already there.  The stat cache already knows the UID of
+        a file that has not changed since it was last hashed, so such a file is only read if its blob is missing. */
+        StatCache cache = StatCache.load();
+        Map<String, String> ids = scanner.store(files.keySet(), files, cache);
+        cache.save();
+        warnDamaged(scanner.damaged());
+
+        Commit head = Commit.head();
+        if (files.size() > LOOKUP_LIMIT) {
+            head.getBlobReference();
+        }
         File file = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(file, StagedArea.class);
 
-        if (sA.toDelete.contains(filename)) {
-            sA.toDelete.remove(filename);
-        }
-
-        /* If the file remains unchanged since the last commit of the given branch (head) then we don't need to add it
+        /* If a file remains unchanged since the last commit of the given branch (head) then we don't need to add it
         to the staging area. Head files are automatically added to the next commit unless they have been specified for
         removal by the rm command.  Else, we add the file, sha1 UID pair to the stagedMap and write the updated staged
-        file. We also serialize the file itself and store it to the objects directory. */
-        if (head.blobReference.containsKey(filename)
-                && head.blobReference.get(filename).equals(sha1wdFile)) {
-            sA.stagedMap.remove(filename);
-            Utils.writeObject(file, sA);
-        } else {
-            sA.stagedMap.put(filename, sha1wdFile);
-
-            File blob = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + sha1wdFile);
-            blob.createNewFile();
-            byte[] blobContents = Utils.readContents(wdFile);
-
-            Utils.writeContents(blob, blobContents);
-            Utils.writeObject(file, sA);
+        file. */
+        for (Map.Entry<String, String> e : ids.entrySet()) {
+            String filename = e.getKey();
+            sA.toDelete.remove(filename);
+            if (e.getValue().equals(head.getBlob(filename))) {
+                sA.stagedMap.remove(filename);
+            } else {
+                sA.stagedMap.put(filename, e.getValue());
+            }
         }
+        Utils.writeObject(file, sA);
     }
 
 
@@ -122,16 +141,41 @@ public class Commands {
      * included a commit message, then I throw an error message.
      */
     public void commit(String message) {
+        commit(message, "");
+    }
+
+    /** Makes a commit as for commit(message), recording the commit with UID secondParent as its second parent when
+     * it is not empty.  Merges use this to remember the head of the branch they merged in. */
+    private void commit(String message, String secondParent) {
         File file = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(file, StagedArea.class);
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
+        commit(message, secondParent, Utils.readObject(file,
+                StagedArea.class));
+    }
+
+    /** Makes a commit as for commit(message, secondParent) of the files staged in SA, which then replaces the staging
+     * area on disk. */
+    private void commit(String message, String secondParent, StagedArea sA) {
+        commit(message, secondParent, sA, null);
+    }
+
+    /** Makes a commit as for commit(message, secondParent, sA) on top of the commit with UID HEADID, or of the head of
+     * the current branch if HEADID is null, and returns true iff it was made.  The branch must still be at HEADID
+     * when it is moved. */
+    private boolean commit(String message, String secondParent, StagedArea sA,
+                           String headID) {
+        File file = new File(System.getProperty("user.dir")
+                + "/.gitlet/staged");
+        Refs refs = Refs.load();
+        String branch = refs.currentBranch();
+        if (headID == null) {
+            headID = refs.get(branch);
+        }
+        Commit head = Utils.readObject(headID, Commit.class);
 
         if (sA.stagedMap.isEmpty() && sA.toDelete.isEmpty()) {
             System.out.println("No changes added to the commit.");
-            return;
+            return false;
         }
         if (message.equals("")) {
             System.out.println("Please enter a commit message.");
@@ -139,61 +183,85 @@ public class Commands {
 
         /* when we initialize a Commit we add all the files in the stagedMap to the blobReference which is why we
         are able to clear the stagedMap in the next line. */
-        Commit newCommit = new Commit(message);
+        Commit newCommit = new Commit(message, head, sA, secondParent);
+        List<String> newBlobs = new ArrayList<String>(sA.stagedMap.values());
 
         sA.stagedMap.clear();
-        sA.commitList.add(newCommit.getUid());
-
-        /* sets the head to this new commit */
-        sA._branches.put(sA.current_branch_name, newCommit.getUid());
-        sA.toDelete.removeAll(head.blobReference.keySet());
-
-        /* writing the information we have just created and updated to file */
-        File commit = new File(System.getProperty("user.dir")
-                + "/.gitlet/objects/" + newCommit.getUid());
-        Utils.writeObject(commit, newCommit);
+        sA.toDelete.removeIf(filename -> head.getBlob(filename) != null);
+
+        /* writing the commit and then moving the current branch to it, unless another process moved the branch
+        first, in which case the staging area is left as it was. */
+        newCommit.save();
+        if (!refs.update(branch, headID, newCommit.getUid())) {
+            System.out.println("The current branch changed during the "
+                    + "commit; nothing was committed.");
+            return false;
+        }
+        CommitJournal.load().append(newCommit.getUid());
+        CommitGraph.load().add(newCommit);
+        IdIndex.load().add(newCommit.getUid(), newBlobs);
+        MessageIndex.load().add(newCommit.getUid(), message);
 
         Utils.writeObject(file, sA);
-
-        Utils.writeObject(headfile, newCommit);
-
+        return true;
     }
 
-    /** Removes the specified file if the head file is tracking or the file has been staged for the next commit.  If the
-     * the head commit is tracking the file then I delete the file from the working directory as well as unstaging it from the
-     * next commit.
-     * @param filename the name of the file specified for removal
+    /** Removes the specified files if the head file is tracking them or they have been staged for the next commit.  If
+     * the head commit is tracking a file then I delete the file from the working directory as well as unstaging it from
+     * the next commit.  As for add, each operand is a file, a directory or a glob.
+     * @param operands the names of the files specified for removal
      */
-    public void rm(String filename) {
-        boolean staged;
-        boolean headIsTracking = false;
-
+    public void rm(String... operands) {
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
 
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
-
-        staged = sA.stagedMap.containsKey(filename);
-
-        if (staged) {
-            sA.stagedMap.remove(filename);
+        Commit head = Commit.head();
+
+        /* an operand that is a file the head tracks or that is staged names just that file; any other operand is
+        matched against all of them, since the files it names may no longer be in the working directory.  Nothing is
+        changed unless every operand names a file there is a reason to remove. */
+        Set<String> targets = new TreeSet<String>();
+        Set<String> candidates = null;
+        for (String operand : operands) {
+            PathSpec spec = new PathSpec(operand);
+            if (!spec.inWorkingTree()) {
+                System.out.println(OUTSIDE);
+                return;
+            }
+            String filename = spec.path();
+            if (!spec.isGlob() && (sA.stagedMap.containsKey(filename)
+                    || head.getBlob(filename) != null)) {
+                targets.add(filename);
+                continue;
+            }
+            if (candidates == null) {
+                candidates = new TreeSet<String>(
+                        head.getBlobReference().keySet());
+                candidates.addAll(sA.stagedMap.keySet());
+            }
+            boolean found = false;
+            for (String candidate : candidates) {
+                if (spec.matches(candidate)) {
+                    targets.add(candidate);
+                    found = true;
+                }
+            }
+            if (!found) {
+                System.out.println("No reason to remove the file.");
+                return;
+            }
         }
 
-        if (head.blobReference.containsKey(filename)) {
-            Utils.restrictedDelete(filename);
-            headIsTracking = true;
-            if (!sA.toDelete.contains(filename)) {
-                sA.toDelete.add(filename);
+        for (String filename : targets) {
+            sA.stagedMap.remove(filename);
+            if (head.getBlob(filename) != null) {
+                Utils.deleteWorkingFile(filename);
+                if (!sA.toDelete.contains(filename)) {
+                    sA.toDelete.add(filename);
+                }
             }
         }
-        if (!headIsTracking && !staged) {
-            System.out.println("No reason to remove the file.");
-            return;
-        }
-
         Utils.writeObject(stagedFile, sA);
     }
 
@@ -201,38 +269,27 @@ public class Commands {
      * until reaching the initial commit (where parent reference equals a blank string).  The log shows the commit UID, the
      * timestamp, and the log message. */
     public void log() {
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
+        Commit head = Commit.head();
 
-        Commit pointer = head;
+        CommitGraph graph = CommitGraph.load();
         Formatter out = new Formatter();
-
-        out.format("===\n");
-        out.format("commit %s\n", pointer.getUid());
-
         SimpleDateFormat dateformat = new SimpleDateFormat(
                 "EEE MMM d HH:mm:ss yyyy Z");
-        out.format("Date: %s\n", dateformat.format(pointer.getTimeStamp()));
-
-        out.format("%s\n", pointer.getLogMessage());
-
-        while (true) {
-            File parentcommitFILE = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/"
-                    + pointer.getParentReference());
-            pointer = Utils.readObject(parentcommitFILE, Commit.class);
-
-            out.format("\n===\n");
-            out.format("commit %s\n", pointer.getUid());
-            out.format("Date: %s\n", dateformat.format
-                    (pointer.getTimeStamp()));
-            out.format("%s\n", pointer.getLogMessage());
 
-            if (pointer.getParentReference().equals("")) {
-                break;
+        /* the commit graph holds each commit's parent, timestamp and message, so no commit needs to be read. */
+        int pointer = graph.position(head.getUid());
+        boolean first = true;
+        while (pointer != CommitGraph.NONE) {
+            if (!first) {
+                out.format("\n");
             }
-
+            first = false;
+            out.format("===\n");
+            out.format("commit %s\n", graph.id(pointer));
+            out.format("Date: %s\n", dateformat.format(
+                    new Date(graph.time(pointer))));
+            out.format("%s\n", graph.message(pointer));
+            pointer = graph.parent(pointer);
         }
         System.out.println(out.toString());
     }
@@ -240,26 +297,21 @@ public class Commands {
     /** Like log, except displays information about all commits ever made. The order of the commits does not matter. */
     public void globalLog() {
         Formatter out = new Formatter();
-        File stagedFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
-        Commit commit;
-        File commitFile;
+        CommitGraph graph = CommitGraph.load();
         SimpleDateFormat dateformat = new SimpleDateFormat(
                 "EEE MMM d HH:mm:ss yyyy Z");
 
-        /* sA.commitList is an array list of sha1 IDs pertaining to every commit ever made, added at the creation of
-        the commit.
+        /* the commit journal holds the sha1 IDs of every commit ever made, appended at the creation of the commit,
+        and is read straight from a mapping of the file.  Their timestamps and messages come from the commit graph.
          */
-        for (String sha1 : sA.commitList) {
-            commitFile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + sha1);
-            commit = Utils.readObject(commitFile, Commit.class);
+        for (String sha1 : CommitJournal.load()) {
+            int pos = graph.position(sha1);
 
             out.format("===\n");
-            out.format("commit %s\n", commit.getUid());
-            out.format("Date: %s\n", dateformat.format(commit.getTimeStamp()));
-            out.format("%s\n\n", commit.getLogMessage());
+            out.format("commit %s\n", sha1);
+            out.format("Date: %s\n", dateformat.format(
+                    new Date(graph.time(pos))));
+            out.format("%s\n\n", graph.message(pos));
         }
 
         String text = out.toString();
@@ -272,87 +324,299 @@ public class Commands {
      * @param logMessage given commit message
      */
     public void find(String logMessage) {
-        Formatter out = new Formatter();
-        File stagedFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
-        int count = 0;
-        String message;
-
-        /* sA.commitList is an array list of sha1 IDs pertaining to every commit ever made, added at the creation of
-        the commit.
-         */
-        for (String sha1 : sA.commitList) {
-            File commitfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + sha1);
-            Commit commit = Utils.readObject(commitfile, Commit.class);
-
-            message = commit.getLogMessage();
+        CommitGraph graph = CommitGraph.load();
+
+        /* the message index names the commits that may have this message; each is checked against its message in
+        the commit graph, since the index only stores hashes. */
+        List<Integer> found = new ArrayList<Integer>();
+        for (String sha1 : MessageIndex.load().exact(logMessage)) {
+            int pos = graph.position(sha1);
+            if (pos != CommitGraph.NONE
+                    && graph.message(pos).equals(logMessage)) {
+                found.add(pos);
+            }
+        }
+        printFound(graph, found);
+    }
 
-            if (message.equals(logMessage)) {
-                out.format("%s\n", commit.getUid());
-                count += 1;
+    /** Like find, but prints the ids of all commits whose messages contain TEXT, ignoring case.  Texts of at least
+     * MessageIndex.GRAM characters are looked up in the message index; shorter ones are checked against every
+     * message in the commit graph. */
+    public void findContaining(String text) {
+        CommitGraph graph = CommitGraph.load();
+        String lower = text.toLowerCase();
+        List<Integer> candidates = new ArrayList<Integer>();
+        List<String> ids = MessageIndex.load().containing(text);
+        if (ids == null) {
+            for (int pos = 0; pos < graph.size(); pos += 1) {
+                candidates.add(pos);
+            }
+        } else {
+            for (String sha1 : ids) {
+                candidates.add(graph.position(sha1));
+            }
+        }
+        List<Integer> found = new ArrayList<Integer>();
+        for (int pos : candidates) {
+            if (pos != CommitGraph.NONE
+                    && graph.message(pos).toLowerCase().contains(lower)) {
+                found.add(pos);
             }
         }
-        if (count == 0) {
+        printFound(graph, found);
+    }
+
+    /** Prints the ids of the commits at positions FOUND in GRAPH, oldest first, or a message if there are none. */
+    private void printFound(CommitGraph graph, List<Integer> found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
             return;
         }
+        found.sort(Comparator.comparingLong((Integer pos) -> graph.time(pos))
+                .thenComparing(pos -> graph.id(pos)));
+        Formatter out = new Formatter();
+        for (int pos : found) {
+            out.format("%s\n", graph.id(pos));
+        }
         System.out.println(out.toString());
-
     }
 
     /** Displays what branches currently exist, and marks the current branch with a *.
-     * Also displays what files have been staged or marked for untracking. I pull branches from an instance
-     * variable of the StagedArea object, _branches, a hashmap of branch names with their head commit sha-1 ids.
+     * Also displays what files have been staged or marked for untracking. I pull branches from the repository's Refs,
+     * which map branch names to their head commit sha-1 ids.
      * I pull staged files from an instance variable of the StagedArea object, stagedMap, another hashmap that maps
      * filenames to their sha-1 ids.  Lastly for deleted files, I pull their names from an array list instance variable
-     * of the StagedArea object, toDelete (a list of filenames that have been marked for removal). */
+     * of the StagedArea object, toDelete (a list of filenames that have been marked for removal).  Then come the
+     * files modified or deleted without being staged and the untracked files, found by a WorkingTreeScanner. */
     public void status() {
+        status(0);
+    }
+
+    /** Like status(), but scans the working directory with PARALLELISM threads, or on the common ForkJoinPool if it
+     * is 0. */
+    public void status(int parallelism) {
+        status(parallelism, null);
+    }
+
+    /** Like status(parallelism), and if RENAMES is not null, uses it to pair the files staged that the head does not
+     * track with the files staged for removal, and with the files the head tracks, and lists each pair as one staged
+     * rename or copy. */
+    public void status(int parallelism, RenameDetector renames) {
         Formatter out = new Formatter();
+        File cwd = new File(System.getProperty("user.dir"));
 
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
+        Commit head = Commit.head();
 
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
 
 
-        SArrayList sortedbranchnames = new SArrayList();
-        sortedbranchnames.addAll(sA._branches.keySet());
-        Collections.sort(sortedbranchnames);
+        Refs refs = Refs.load();
+        String current = refs.currentBranch();
 
         out.format("=== Branches ===\n");
-        for (String branchName : sortedbranchnames) {
-            if (sA._branches.get(branchName).equals(head.getUid())) {
+        for (String branchName : refs.branches().keySet()) {
+            if (branchName.equals(current)) {
                 branchName = '*' + branchName;
             }
             out.format(branchName + "\n");
         }
 
+        /* a rename is listed as staged, by its target, in place of its source among the removed files. */
+        Map<String, RenameDetector.Rename> renamed =
+            new HashMap<String, RenameDetector.Rename>();
+        Set<String> renamedFrom = new HashSet<String>();
+        if (renames != null) {
+            Map<String, String> removed = new HashMap<String, String>();
+            Map<String, String> present = new HashMap<String, String>(
+                    head.getBlobReference());
+            for (String file : sA.toDelete) {
+                String id = present.remove(file);
+                if (id != null) {
+                    removed.put(file, id);
+                }
+            }
+            Map<String, String> added = new HashMap<String, String>();
+            for (Map.Entry<String, String> e : sA.stagedMap.entrySet()) {
+                if (head.getBlob(e.getKey()) == null) {
+                    added.put(e.getKey(), e.getValue());
+                }
+            }
+            for (RenameDetector.Rename rename
+                     : renames.detect(removed, added, present)) {
+                renamed.put(rename.target, rename);
+                if (!rename.copy) {
+                    renamedFrom.add(rename.source);
+                }
+            }
+        }
+
         out.format("\n=== Staged Files ===\n");
         SArrayList sortedstagednames = new SArrayList();
         sortedstagednames.addAll(sA.stagedMap.keySet());
 
         Collections.sort(sortedstagednames);
         for (String stagedName : sortedstagednames) {
-            out.format(stagedName + "\n");
+            RenameDetector.Rename rename = renamed.get(stagedName);
+            out.format("%s\n", rename != null ? rename : stagedName);
         }
 
         out.format("\n=== Removed Files ===\n");
         ArrayList<String> sorteddeletes = sA.toDelete;
         Collections.sort(sorteddeletes);
         for (String delete : sorteddeletes) {
-            out.format(delete + "\n");
+            if (!renamedFrom.contains(delete)) {
+                out.format(delete + "\n");
+            }
         }
 
+        /* the scanner walks the working directory and hashes files in parallel, and hashes a file only if its stat
+        data differ from those the stat cache recorded when it was last hashed. */
+        WorkingTreeScanner scanner = parallelism > 0
+            ? new WorkingTreeScanner(cwd, parallelism)
+            : new WorkingTreeScanner(cwd);
+        WorkingTreeScanner.Result changes = scanner.compare(
+                head.getBlobReference(), sA, StatCache.load());
+
         out.format("\n=== Modifications Not Staged For Commit ===\n");
+        TreeMap<String, String> modifications = new TreeMap<String, String>();
+        for (String file : changes.modified) {
+            modifications.put(file, " (modified)");
+        }
+        for (String file : changes.deleted) {
+            modifications.put(file, " (deleted)");
+        }
+        for (Map.Entry<String, String> e : modifications.entrySet()) {
+            out.format(e.getKey() + e.getValue() + "\n");
+        }
 
         out.format("\n=== Untracked Files ===\n");
+        for (String file : changes.untracked) {
+            out.format(file + "\n");
+        }
 
         System.out.println(out.toString());
+        warnDamaged(scanner.damaged());
+    }
+
+    /** Warns that each of the working files DAMAGED, hard links to their blobs, was changed in place, and so changed
+     * the blob too. */
+    private static void warnDamaged(List<String> damaged) {
+        for (String file : damaged) {
+            System.out.println("Warning: " + file + " was changed in place "
+                    + "and so was the blob it is linked to; run fsck.");
+        }
+    }
+
+    /** Prints the differences between two versions of the files named by PATHS, or of every file if there are no
+     * PATHS, as unified diffs, or only the number of lines changed in each if STAT.  With no COMMITS the files staged
+     * or tracked are compared with the working directory, with one the files of that commit are, and with two the
+     * files of the first commit are compared with those of the second.  The versions are compared by blob UID first,
+     * and only files whose versions differ are read; files of the working directory are hashed only if the stat
+     * cache cannot vouch for them. */
+    public void diff(String[] commits, String[] paths, boolean stat)
+            throws IOException {
+        Commit[] resolved = new Commit[commits.length];
+        for (int i = 0; i < commits.length; i += 1) {
+            String commitID = commitSearch(commits[i]);
+            if (commitID.equals("null")) {
+                System.out.println("No commit with that id exists.");
+                return;
+            } else if (commitID.equals("ambiguous")) {
+                System.out.println("More than one commit has that id prefix.");
+                return;
+            }
+            resolved[i] = Utils.readObject(commitID, Commit.class);
+        }
+        List<PathSpec> specs = new ArrayList<PathSpec>();
+        for (String path : paths) {
+            PathSpec spec = new PathSpec(path);
+            if (!spec.inWorkingTree()) {
+                System.out.println(OUTSIDE);
+                return;
+            }
+            specs.add(spec);
+        }
+
+        /* the files that differ, mapped to their blob UIDs on either side; null is a missing file. */
+        Map<String, String[]> changes;
+        if (resolved.length == 2) {
+            changes = changedFiles(resolved[0], resolved[1]);
+        } else {
+            StagedArea sA = Utils.readObject(new File(System.getProperty(
+                    "user.dir") + "/.gitlet/staged"), StagedArea.class);
+            Map<String, String> index = new TreeMap<String, String>(
+                    Commit.head().getBlobReference());
+            index.keySet().removeAll(sA.toDelete);
+            index.putAll(sA.stagedMap);
+            Map<String, String> from = resolved.length == 1
+                ? resolved[0].getBlobReference() : index;
+
+            Map<String, StatCache.Stat> files =
+                new HashMap<String, StatCache.Stat>();
+            for (String path : index.keySet()) {
+                StatCache.Stat fileStat = StatCache.stat(path);
+                if (fileStat != null && selected(specs, path)) {
+                    files.put(path, fileStat);
+                }
+            }
+            StatCache cache = StatCache.load();
+            Map<String, String> to = new WorkingTreeScanner(
+                    new File(System.getProperty("user.dir")))
+                .hash(files.keySet(), files, cache);
+            cache.save();
+
+            changes = new TreeMap<String, String[]>();
+            Set<String> all = new HashSet<String>(from.keySet());
+            all.addAll(to.keySet());
+            for (String path : all) {
+                String a = from.get(path);
+                String b = to.get(path);
+                if (!Objects.equals(a, b)) {
+                    changes.put(path, new String[] {a, b});
+                }
+            }
+        }
+
+        UnifiedDiff out = new UnifiedDiff(System.out, stat);
+        ObjectStore objects = Utils.objectStore();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String path = e.getKey();
+            if (!selected(specs, path)) {
+                continue;
+            }
+            String[] ids = e.getValue();
+            UnifiedDiff.Version a = UnifiedDiff.Version.none();
+            if (ids[0] != null) {
+                try (InputStream in = objects.openStream(ids[0])) {
+                    a = UnifiedDiff.Version.read(in, ids[0]);
+                }
+            }
+            UnifiedDiff.Version b = UnifiedDiff.Version.none();
+            if (ids[1] != null) {
+                try (InputStream in = resolved.length == 2
+                        ? objects.openStream(ids[1])
+                        : new FileInputStream(path)) {
+                    b = UnifiedDiff.Version.read(in, ids[1]);
+                }
+            }
+            out.file(path, a, b);
+        }
+        out.finish();
+    }
+
+    /** Returns true iff the file at PATH is named by one of SPECS, or SPECS is empty. */
+    private static boolean selected(List<PathSpec> specs, String path) {
+        if (specs.isEmpty()) {
+            return true;
+        }
+        for (PathSpec spec : specs) {
+            if (spec.matches(path)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Takes the version of the file as it exists in the head commit, the front of the current branch,
@@ -360,10 +624,7 @@ public class Commands {
      * The new version of the file is not staged.
      * @param filename name of file to checkout */
     public void checkout(String filename) throws IOException {
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
-        checkout(head.getUid(), filename);
+        checkout(Refs.load().head(), filename);
     }
 
     /** Takes the version of the file as it exists in the commit with the given id, and puts it in the working directory,
@@ -371,39 +632,29 @@ public class Commands {
      * @param commitID UID of desired commit
      * @param filename name of file to checkout */
     public void checkout(String commitID, String filename) throws IOException {
-        File stagedFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
-
         commitID = commitSearch(commitID);
 
         /* Error cases if the commit doesn't exist or if the commit doesnt contain the desired file */
         if (commitID.equals("null")) {
             System.out.println("No commit with that id exists.");
             return;
+        } else if (commitID.equals("ambiguous")) {
+            System.out.println("More than one commit has that id prefix.");
+            return;
         }
 
-        File commitFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/objects/" + commitID);
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-        if (!commit.blobReference.containsKey(filename)) {
+        Commit commit = Utils.readObject(commitID, Commit.class);
+        String filesha1 = commit.getBlob(filename);
+        if (filesha1 == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        /* find the sha1 of the desired version of the file to checkout, create the file in the current directory if it
-        does not exist, write the contents of the desired version to the file in the current directory.  */
-        String filesha1 = commit.blobReference.get(filename);
+        /* create the file (and its directories) in the current directory if it does not exist, write the contents
+        of the desired version to the file in the current directory.  */
         File targetfile = new File(filename);
-        File blob = new File(System.getProperty("user.dir")
-                + "/.gitlet/objects/" + filesha1);
-
-        if (!targetfile.exists()) {
-            targetfile.createNewFile();
-        }
 
-        byte[] blobcontents = Utils.readContents(blob);
-        Utils.writeContents(targetfile, blobcontents);
+        Utils.copyObject(filesha1, targetfile);
 
     }
 
@@ -415,18 +666,21 @@ public class Commands {
      * @param branchName the name of the new branch
      */
     public void branch(String branchName) {
-        File stagedFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
-
-        if (sA._branches.containsKey(branchName)) {
+        if (!Refs.isValidName(branchName)) {
+            System.out.println("Not a valid branch name.");
+            return;
+        }
+        Refs refs = Refs.load();
+        String conflict = refs.conflict(branchName);
+        if (refs.get(branchName) != null) {
             System.out.println("A branch with that name already exists.");
-        } else {
-            File headfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/HEAD");
-            Commit head = Utils.readObject(headfile, Commit.class);
-            sA._branches.put(branchName, head.getUid());
-            Utils.writeObject(stagedFile, sA);
+        } else if (conflict != null) {
+            System.out.println("A branch named " + conflict
+                    + " is in the way of that name.");
+        } else if (!refs.update(branchName, null, refs.head())) {
+            System.out.println(refs.get(branchName) != null
+                    ? "A branch with that name already exists."
+                    : "The branch changed meanwhile; it was not created.");
         }
     }
 
@@ -444,54 +698,48 @@ public class Commands {
      * delete it or add it first." and exit; I perform this check before doing anything else.
      * @param branchName name of branch to checkout */
     public void branchCheckout(String branchName) throws IOException {
+        branchCheckout(branchName, false);
+    }
+
+    /** Like branchCheckout(BRANCHNAME), also printing how many working files were written, deleted and skipped if
+     * STAT.  Only the files that differ between the two heads, or whose working copies differ from the checked-out
+     * branch's, are written. */
+    public void branchCheckout(String branchName, boolean stat)
+            throws IOException {
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
 
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
+        Refs refs = Refs.load();
+        String bheadID = refs.get(branchName);
 
-        if (!sA._branches.containsKey(branchName)) {
+        if (bheadID == null) {
             System.out.println("No such branch exists.");
-        } else if (sA.current_branch_name.equals(branchName)) {
+        } else if (refs.currentBranch().equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
         } else {
-            File bheadfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/"
-                    + sA._branches.get(branchName));
-            Commit bhead = Utils.readObject(bheadfile, Commit.class);
-
-            Set<String> headfiles = head.blobReference.keySet();
-            Set<String> bheadfiles = bhead.blobReference.keySet();
-
-            List<String> wdfiles = Utils.plainFilenamesIn(
-                    System.getProperty("user.dir"));
-            for (String file : wdfiles) {
-                if ((!headfiles.contains(file))
-                        && bheadfiles.contains(file)) {
-                    System.out.println("There is an untracked file in the "
-                            + "way; delete it or add it first.");
-                    return;
-                }
-            }
-
-            for (String file : headfiles) {
-                if (!bheadfiles.contains(file)) {
-                    Utils.restrictedDelete(file);
-                }
-            }
-            for (String bfile : bheadfiles) {
-                checkout(bhead.getUid(), bfile);
+            Commit head = Utils.readObject(refs.head(), Commit.class);
+            Commit bhead = Utils.readObject(bheadID, Commit.class);
+
+            /* only files whose versions differ between the two heads can be in the way or need deleting; the
+            directories the heads share are skipped. */
+            Map<String, String[]> changes = changedFiles(head, bhead);
+            if (untrackedInTheWay(changes)) {
+                System.out.println("There is an untracked file in the "
+                        + "way; delete it or add it first.");
+                return;
             }
 
-            if (!sA.current_branch_name.equals(branchName)) {
-                sA.stagedMap.clear();
-            }
+            WorkingTreeUpdate.Result updated = new WorkingTreeUpdate(
+                    new File(System.getProperty("user.dir")))
+                .apply(head, bhead, StatCache.load());
 
-            sA.current_branch_name = branchName;
-            Utils.writeObject(headfile, bhead);
+            sA.stagedMap.clear();
+            refs.setCurrentBranch(branchName);
             Utils.writeObject(stagedFile, sA);
+            if (stat) {
+                System.out.println("Updated working tree: " + updated + ".");
+            }
         }
     }
 
@@ -501,19 +749,17 @@ public class Commands {
      * @param branchName the name of the branch whose pointer will be deleted
      */
     public void rmbranch(String branchName) {
-        File stagedFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
+        Refs refs = Refs.load();
+        String id = refs.get(branchName);
 
-        if (!sA._branches.containsKey(branchName)) {
+        if (id == null) {
             System.out.println("A branch with that name does not exist.");
-        } else if (sA.current_branch_name.equals(branchName)) {
+        } else if (refs.currentBranch().equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
-        } else {
-            sA._branches.remove(branchName);
-            Utils.writeObject(stagedFile, sA);
+        } else if (!refs.update(branchName, id, null)) {
+            System.out.println("The branch changed meanwhile; "
+                    + "it was not removed.");
         }
-
     }
 
     /** Checks out all the files tracked by the given commit. Removes tracked files that are not present in that commit.
@@ -525,61 +771,62 @@ public class Commands {
      * @throws IOException yes
      */
     public void reset(String commitID) throws IOException {
+        reset(commitID, false);
+    }
+
+    /** Like reset(COMMITID), also printing how many working files were written, deleted and skipped if STAT. */
+    public void reset(String commitID, boolean stat) throws IOException {
 
         commitID = commitSearch(commitID);
 
         if (commitID.equals("null")) {
             System.out.println("No commit with that id exists.");
             return;
+        } else if (commitID.equals("ambiguous")) {
+            System.out.println("More than one commit has that id prefix.");
+            return;
         }
 
-        List<String> wdfiles = Utils.plainFilenamesIn(
-                System.getProperty("user.dir"));
+        Commit commit = Utils.readObject(commitID, Commit.class);
 
-        File commitFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/objects/"
-                + commitID);
-        Commit commit = Utils.readObject(commitFile, Commit.class);
-
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headfile, Commit.class);
+        Refs refs = Refs.load();
+        String branch = refs.currentBranch();
+        String headID = refs.get(branch);
+        Commit head = Utils.readObject(headID, Commit.class);
 
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
 
-        Set<String> committrackedfiles = commit.blobReference.keySet();
-        Set<String> headtrackedfiles = head.blobReference.keySet();
+        Map<String, String[]> changes = changedFiles(head, commit);
 
         /* checks for untracked files that would be overwritten by reset, ie files that are in both the working directory and desired
         commit but have not been added/staged.
          */
-        for (String file : wdfiles) {
-            if ((!headtrackedfiles.contains(file))
-                    && committrackedfiles.contains(file)) {
-                System.out.println("There is an untracked file "
-                        + "in the way; delete it or add it first.");
-                return;
-            }
+        if (untrackedInTheWay(changes)) {
+            System.out.println("There is an untracked file "
+                    + "in the way; delete it or add it first.");
+            return;
         }
 
-        /* deletes files from working directory that are present only in the head commit */
-        for (String file : headtrackedfiles) {
-            if (!committrackedfiles.contains(file)) {
-                Utils.restrictedDelete(file);
-            }
+        /* moves the current branch first, so that nothing changes if another process moved it meanwhile */
+        if (!refs.update(branch, headID, commitID)) {
+            System.out.println("The current branch changed meanwhile; "
+                    + "nothing was reset.");
+            return;
         }
 
-        /* checks out all other files */
-        for (String file : committrackedfiles) {
-            checkout(commitID, file);
-        }
+        /* deletes files from working directory that are present only in the head commit, and checks out the
+        others that do not already have the contents the commit gives them */
+        WorkingTreeUpdate.Result updated = new WorkingTreeUpdate(
+                new File(System.getProperty("user.dir")))
+            .apply(head, commit, StatCache.load());
 
         sA.stagedMap.clear();
-        sA._branches.put(sA.current_branch_name, commitID);
-        Utils.writeObject(headfile, commit);
         Utils.writeObject(stagedFile, sA);
+        if (stat) {
+            System.out.println("Updated working tree: " + updated + ".");
+        }
 
     }
 
@@ -593,46 +840,43 @@ public class Commands {
      */
     public void merge(String branchName) throws IOException,
             ClassNotFoundException {
+        merge(branchName, new RenameDetector(), false);
+    }
+
+    /** Like merge(branchName), but following the renames RENAMES finds, or none if it is null, and then printing how
+     * long each phase of the merge took if TIMINGS. */
+    public void merge(String branchName, RenameDetector renames,
+                      boolean timings)
+            throws IOException, ClassNotFoundException {
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
 
-        File headfile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit curr = Utils.readObject(headfile, Commit.class);
+        Refs refs = Refs.load();
+        String currname = refs.currentBranch();
+        String givenhead = refs.get(branchName);
+        Commit curr = Utils.readObject(refs.get(currname), Commit.class);
 
-        Set<String> currfiles = curr.blobReference.keySet();
-
-        if (!sA.stagedMap.isEmpty()
-                || !Collections.disjoint(currfiles, sA.toDelete)) {
+        if (!sA.stagedMap.isEmpty() || sA.toDelete.stream()
+                .anyMatch(file -> curr.getBlob(file) != null)) {
             System.out.println("You have uncommitted changes.");
             return;
-        } else if (!sA._branches.containsKey(branchName)) {
+        } else if (givenhead == null) {
             System.out.println("A branch with that name does not exist.");
             return;
-        } else if (branchName.equals(sA.current_branch_name)) {
+        } else if (branchName.equals(currname)) {
             System.out.println("Cannot merge a branch with itself.");
             return;
         }
 
-        File branchFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/objects/" + sA._branches.get(branchName));
-        Commit given = Utils.readObject(branchFile, Commit.class);
-
-        Set<String> givenfiles = given.blobReference.keySet();
+        Commit given = Utils.readObject(givenhead, Commit.class);
 
-        List<String> wdfiles = Utils.plainFilenamesIn(System.getProperty
-                ("user.dir"));
-        for (String file : wdfiles) {
-            if ((!currfiles.contains(file))
-                    && givenfiles.contains(file)) {
-                System.out.println("There is an untracked "
-                        + "file in the way; delete it or add it first.");
-                return;
-            }
+        if (untrackedInTheWay(changedFiles(curr, given))) {
+            System.out.println("There is an untracked "
+                    + "file in the way; delete it or add it first.");
+            return;
         }
 
-        String givenhead = sA._branches.get(branchName);
         String currhead = curr.getUid();
         String splitID = findSplitPoint(givenhead, currhead);
 
@@ -641,141 +885,300 @@ public class Commands {
                     + "of the current branch.");
             return;
         } else if (splitID.equals(currhead)) {
-            String currname = sA.current_branch_name;
-            branchCheckout(branchName);
-            sA.current_branch_name = currname;
-            sA._branches.put(currname, givenhead);
+            reset(givenhead);
             System.out.println("Current branch fast-forwarded.");
-            Utils.writeObject(stagedFile, sA);
         } else {
-            File spfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + splitID);
-            Commit split = Utils.readObject(spfile, Commit.class);
-            Set<String> splitfiles = split.blobReference.keySet();
-
-            Set<String> allfiles = new HashSet<String>();
-            allfiles.addAll(splitfiles);
-            allfiles.addAll(currfiles);
-            allfiles.addAll(givenfiles);
-            boolean conflict = false;
-
-            for (String file : allfiles) {
-                String sID = split.blobReference.get(file);
-                String cID = curr.blobReference.get(file);
-                String gID = given.blobReference.get(file);
-
-                if (sID != null) {
-                    if (cID != null && gID != null) {
-                        if ((!gID.equals(sID)) && cID.equals(sID)) {
-                            checkout(givenhead, file);
-                            add(file);
-                        }
-                    } else if (gID == null && cID != null) {
-                        if (cID.equals(sID)) {
-                            rm(file);
-                        }
-                    }
-                } else if (cID == null && gID != null) {
-                    checkout(givenhead, file);
-                    add(file);
-                }
-                if ((sID != null && cID != null && gID != null
-                        && !gID.equals(sID) && !gID.equals(sID)
-                        && !cID.equals(sID))
-                        || (sID == null && cID != null && gID != null
-                        && !cID.equals(gID))
-                        || (sID != null && gID == null && !sID.equals(cID))
-                        || (sID != null && cID == null && !sID.equals(gID))) {
-                    Formatter out = new Formatter();
-                    File currfile = new File(System.getProperty("user.dir")
-                            + "/.gitlet/objects/" + cID);
-                    File givenfile = new File(System.getProperty("user.dir")
-                            + "/.gitlet/objects/" + gID);
-                    String currcontents;
-                    String givencontents;
-                    if (!currfile.exists()) {
-                        givencontents = Utils.readContentsAsString(givenfile);
-                        currcontents = "";
-                    } else if (!givenfile.exists()) {
-                        givencontents = "";
-                        currcontents = Utils.readContentsAsString(currfile);
-                    } else {
-                        givencontents = Utils.readContentsAsString(givenfile);
-                        currcontents = Utils.readContentsAsString(currfile);
-                    }
-                    out.format("<<<<<<< HEAD\n%s=======\n%s>>>>>>>\n",
-                            currcontents, givencontents);
-                    String newcontents = out.toString();
-                    File confl = new File(file);
-                    Utils.writeContents(confl, newcontents);
-                    add(file);
-                    conflict = true;
-                }
-            }
-            if (conflict) {
+            Commit split = Utils.readObject(splitID, Commit.class);
+
+            /* the outcome for every file is worked out before any file is written, and staged in SA rather than by
+            add and rm, so the staging file is written once, by the commit.  The commit is made on CURRHEAD, and if
+            another process has moved the branch meanwhile the working files are put back as they were. */
+            MergeTransaction transaction = new MergeTransaction(split, curr,
+                    given, renames);
+            boolean conflict = transaction.apply(sA, StatCache.load());
+            long start = System.nanoTime();
+            String logmessage = "Merged " + branchName + " into "
+                    + currname + ".";
+            if (!commit(logmessage, givenhead, sA, currhead)) {
+                transaction.rollback();
+                return;
+            } else if (conflict) {
                 System.out.println("Encountered a merge conflict.");
             }
-            String logmessage = "Merged " + branchName + " into "
-                    + sA.current_branch_name + ".";
-            commit(logmessage);
+            if (timings) {
+                System.out.printf("Merge took %s, commit %.1f ms.%n",
+                        transaction.timings(),
+                        (System.nanoTime() - start) / 1e6);
+            }
         }
 
     }
 
-    /** Locates the split point of two branches.  Creates a list of commit IDs starting from the
-     * given branch head ID, and then goes backwards in parent references from the current branch head commitID and returns the
-     * first commitID that is also found in the list of commit IDs starting from the given branch head ID.
+    /** Returns the files whose versions differ between commits A and B, mapped to their blob UIDs in A and in B
+     * (null where a commit does not track the file).  Directories with the same tree in both are not read. */
+    private static Map<String, String[]> changedFiles(Commit a, Commit b) {
+        Map<String, String[]> result = new TreeMap<String, String[]>();
+        Tree.diff(a.getTree(), b.getTree(), "", result);
+        return result;
+    }
+
+    /** Returns true iff one of CHANGES, as returned by changedFiles, is a file that only the second commit tracks
+     * and that is in the working directory, where replacing the first commit's files with the second's would
+     * overwrite it. */
+    private static boolean untrackedInTheWay(Map<String, String[]> changes) {
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            if (e.getValue()[0] == null && new File(e.getKey()).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Locates the split point of two branches: a latest common ancestor of the two heads, following both parents of
+     * merge commits.  The search walks the commit graph from both heads at once in order of decreasing generation
+     * number and stops at the first commit reachable from both.
      *
      * @param givenhead head of given branch
      * @param currhead head of current branch
      * @return most recent overlapping commitID, the split point of the branches
      */
     public String findSplitPoint(String givenhead, String currhead) {
-        SArrayList givenhistory = new SArrayList();
-        SArrayList currhistory = new SArrayList();
-        while (!givenhead.equals("")) {
-            File pgivenfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + givenhead);
-            Commit pgiven = Utils.readObject(pgivenfile, Commit.class);
-            givenhistory.add(givenhead);
-            givenhead = pgiven.getParentReference();
+        CommitGraph graph = CommitGraph.load();
+        int split = graph.mergeBase(graph.position(givenhead),
+                graph.position(currhead));
+        if (split == CommitGraph.NONE) {
+            return "";
+        }
+        return graph.id(split);
+    }
+
+
+
+    /** Gathers every loose object, together with the contents of any existing packs, into one new packfile under
+     * .gitlet/objects/pack and then deletes the loose copies and the old packs.  Versions of the same file are stored
+     * as deltas against each other where that saves space; the file names recorded in the commits are used to decide
+     * which objects are versions of the same file.  The branch refs are moved into .gitlet/packed-refs as well. */
+    public void repack() throws IOException {
+        Refs.load().pack();
+        File objects = Utils.objectsDir();
+        List<PackFile> oldPacks = PackFile.packsIn(objects);
+        LooseObjectStore looseStore = new LooseObjectStore(objects);
+        List<String> loose = new ArrayList<String>();
+        for (String id : looseStore.iterate()) {
+            loose.add(id);
+        }
+        if (loose.isEmpty() && oldPacks.size() <= 1) {
+            System.out.println("Nothing to repack.");
+            return;
+        }
+
+        Set<String> ids = new HashSet<String>(loose);
+        for (PackFile pack : oldPacks) {
+            ids.addAll(pack.ids());
         }
-        while (!currhead.equals("")) {
-            File pcurrfile = new File(System.getProperty("user.dir")
-                    + "/.gitlet/objects/" + currhead);
-            Commit pcurr = Utils.readObject(pcurrfile, Commit.class);
-            if (givenhistory.contains(currhead)) {
-                return currhead;
+
+        File stagedFile = new File(System.getProperty("user.dir")
+                + "/.gitlet/staged");
+        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
+        Map<String, String> nameHints = new HashMap<String, String>();
+        for (String commitID : CommitJournal.load()) {
+            Commit commit = Utils.readObject(commitID, Commit.class);
+            for (Map.Entry<String, String> e
+                    : commit.getBlobReference().entrySet()) {
+                nameHints.put(e.getValue(), e.getKey());
             }
-            currhistory.add(currhead);
-            currhead = pcurr.getParentReference();
         }
-        System.out.println(currhistory);
+        for (Map.Entry<String, String> e : sA.stagedMap.entrySet()) {
+            nameHints.put(e.getValue(), e.getKey());
+        }
+
+        PackFile newPack;
+        try {
+            newPack = PackFile.write(objects, ids, new CompositeObjectStore(
+                    looseStore, new PackedObjectStore(objects)), nameHints);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return;
+        }
 
-        return "";
+        for (PackFile pack : oldPacks) {
+            if (!pack.getPackFile().equals(newPack.getPackFile())) {
+                pack.delete();
+            }
+        }
+        for (String id : loose) {
+            looseStore.delete(id);
+        }
+        System.out.printf("Packed %d objects (%d as deltas).%n",
+                newPack.size(), newPack.deltas());
     }
 
+    /** Deletes the objects that no branch, HEAD or staged file refers to, directly or through history, and that were
+     * written more than GRACE milliseconds ago, or only reports them if DRYRUN.  Commits deleted are dropped from the
+     * commit journal, and the indices built from it are rebuilt without them. */
+    public void gc(boolean dryRun, long grace) throws IOException {
+        Refs refs = Refs.load();
+        List<String> roots = new ArrayList<String>(refs.branches().values());
+        roots.add(refs.head());
+        File stagedFile = new File(System.getProperty("user.dir")
+                + "/.gitlet/staged");
+        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
+        Map<String, String> nameHints = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : sA.stagedMap.entrySet()) {
+            nameHints.put(e.getValue(), e.getKey());
+        }
 
+        long start = System.nanoTime();
+        GarbageCollector collector = new GarbageCollector(Utils.objectsDir(),
+                grace);
+        Set<String> reachable = collector.mark(roots, sA.stagedMap.values());
+        GarbageCollector.Result result = collector.sweep(reachable, nameHints,
+                dryRun);
+        int commits = 0;
+        if (dryRun) {
+            for (String id : CommitJournal.load()) {
+                if (result.deleted.contains(id)) {
+                    commits += 1;
+                }
+            }
+        } else {
+            commits = CommitJournal.load().retain(result.deleted);
+            if (commits > 0) {
+                for (String name : new String[] {"commit-graph", "id-index",
+                        "message-index"}) {
+                    new File(System.getProperty("user.dir") + "/.gitlet/"
+                            + name).delete();
+                }
+                CommitGraph.load();
+                IdIndex.load();
+                MessageIndex.load();
+            }
+        }
+        System.out.printf("%s %d objects (%d loose, %d packed, %d commits), "
+                + "%d bytes, in %.1f ms; kept %d reachable and %d recent "
+                + "objects.%n", dryRun ? "Would remove" : "Removed",
+                result.loose + result.packed, result.loose, result.packed,
+                commits, result.bytes, (System.nanoTime() - start) / 1e6,
+                result.reachable, result.recent);
+    }
 
-    /** commitSearch allows for abbreviations of the hexadecimal sha-1 unique identifier when checking out, etc.
-     * @param id is the potentially abbreviated string of the full 40 char hexadecimal uid
-     * @return full 40 char hexadecimal id */
-    public String commitSearch(String id) {
+    /** Prints how much the chunked blobs of the repository share: their number and total size, the number and size of
+     * the distinct chunks they are made of and the space those take on disk, and the dedupe ratio, the total size of
+     * the blobs over the size of their distinct chunks. */
+    public void chunkStats() {
+        File objects = Utils.objectsDir();
+        ChunkedObjectStore store = ChunkedObjectStore.open(objects);
+        int blobs = 0;
+        long size = 0;
+        int references = 0;
+        Map<String, Integer> distinct = new HashMap<String, Integer>();
+        for (String id : store.iterate()) {
+            ChunkedObjectStore.ChunkList list = store.chunkList(id);
+            if (list == null) {
+                continue;
+            }
+            blobs += 1;
+            size += list.size;
+            references += list.ids.size();
+            for (int i = 0; i < list.ids.size(); i += 1) {
+                distinct.put(list.ids.get(i), list.lengths.get(i));
+            }
+        }
+        if (blobs == 0) {
+            System.out.println("No chunked blobs.");
+            return;
+        }
+        long unique = 0;
+        long onDisk = 0;
+        LooseObjectStore chunks = new LooseObjectStore(new File(objects,
+                ChunkedObjectStore.CHUNKS));
+        for (Map.Entry<String, Integer> e : distinct.entrySet()) {
+            unique += e.getValue();
+            onDisk += chunks.fileFor(e.getKey()).length();
+        }
+        System.out.printf("%d chunked blobs, %d bytes in %d chunks; %d distinct "
+                + "chunks, %d bytes (%d on disk); dedupe ratio %.2f.%n", blobs,
+                size, references, distinct.size(), unique, onDisk,
+                unique == 0 ? 1.0 : (double) size / unique);
+    }
+
+    /** Checks that every object hashes to its UID, and that everything the branches, HEAD and the staging area refer
+     * to, directly or through history, is present, using PARALLELISM threads, or one per processor if it is 0.
+     * Prints each corrupt, missing and dangling object, and then totals and the rate at which objects were checked. */
+    public void fsck(int parallelism) {
+        Refs refs = Refs.load();
+        Map<String, String> roots = new LinkedHashMap<String, String>();
+        roots.put(refs.head(), "HEAD");
+        for (Map.Entry<String, String> e : refs.branches().entrySet()) {
+            roots.putIfAbsent(e.getValue(), "branch " + e.getKey());
+        }
         File stagedFile = new File(System.getProperty("user.dir")
                 + "/.gitlet/staged");
         StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
-        for (String commitID : sA.commitList) {
-            if (commitID.startsWith(id)) {
-                return commitID;
-            }
+        Map<String, String> blobs = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : sA.stagedMap.entrySet()) {
+            blobs.put(e.getValue(), "staged as " + e.getKey());
+        }
+
+        long start = System.nanoTime();
+        Fsck fsck = parallelism > 0 ? new Fsck(Utils.objectsDir(), parallelism)
+            : new Fsck(Utils.objectsDir());
+        Fsck.Report report = fsck.check(roots, blobs);
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+
+        for (Map.Entry<String, String> e : report.corrupt.entrySet()) {
+            System.out.println("corrupt " + e.getKey() + ": " + e.getValue());
+        }
+        for (Map.Entry<String, String> e : report.missing.entrySet()) {
+            String[] kindAndFrom = e.getValue().split(", ", 2);
+            System.out.println("missing " + kindAndFrom[0] + " " + e.getKey()
+                    + " (" + kindAndFrom[1] + ")");
+        }
+        for (String id : new TreeSet<String>(report.badRoots)) {
+            System.out.println("root commit " + id
+                    + " is not the initial commit");
+        }
+        for (Map.Entry<String, String> e : report.dangling.entrySet()) {
+            System.out.println("dangling " + e.getValue() + " " + e.getKey());
+        }
+        System.out.printf("Checked %d objects, %.1f MB, in %.1f ms (%.1f MB/s, "
+                + "%.0f objects/s): %d corrupt, %d missing, %d dangling.%n",
+                report.checked, report.bytes / 1e6, seconds * 1e3,
+                report.bytes / 1e6 / seconds, report.checked / seconds,
+                report.corrupt.size(), report.missing.size()
+                + report.badRoots.size(), report.dangling.size());
+        if (report.legacy > 0) {
+            System.out.printf("%d commits made before Codec were checked by "
+                    + "decoding them.%n", report.legacy);
         }
-        return "null";
+    }
+
+    /** commitSearch allows for abbreviations of the hexadecimal sha-1 unique identifier when checking out, etc.  The
+     * prefix is looked up by binary search in the sorted id index, so the cost does not grow with the length of the
+     * history.
+     * @param id is the potentially abbreviated string of the full 40 char hexadecimal uid
+     * @return full 40 char hexadecimal id, "null" if no commit id starts with id, or "ambiguous" if more than one
+     * does */
+    public String commitSearch(String id) {
+        List<String> matches = IdIndex.load().resolve(id, IdIndex.COMMIT, 2);
+        if (matches.isEmpty()) {
+            return "null";
+        } else if (matches.size() > 1) {
+            return "ambiguous";
+        }
+        return matches.get(0);
     }
 
     /** avoids issues with array lists of strings. */
     private class SArrayList extends ArrayList<String> {
     }
 
+    /** Most files add looks up one by one in the head's tree; for more, it reads the whole tree once. */
+    private static final int LOOKUP_LIMIT = 64;
+    /** What add, rm and diff print for an operand that is absolute or leads out of the working directory. */
+    private static final String OUTSIDE =
+        "File is outside the working directory.";
+
 
 
 
@@ -1,48 +1,81 @@
 package gitlet;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.lang.System;
 
 /** The Commit class represents a commit object.  A commit contains a parentReference (id of its parent), a logMessage, a
  * blobReference hashmap (a map between UIDS of the files in the commit and respective filenames), timeStamp, and the commit's
  * own UID.
+ *
+ * The files of a commit are stored as a Tree of directory objects that the commit names by the UID of its root, so
+ * reading a commit reads only its message, timestamp and parents, and a commit shares every directory it did not
+ * change with its parent.  The blobReference map is built from the tree the first time getBlobReference is called;
+ * getBlob looks up a single path without building it.  Commits written before trees carry their map inline or in a
+ * flat manifest object, and are still read that way.
+ *
+ * A commit is stored in the binary encoding of Codec, and its UID is the sha-1 of that encoding, so it depends only on
+ * the commit's message, time, parents and files.  Commits made before Codec keep the UIDs they were given, and carry
+ * them in their encoding when they are written again.
  * @author Lila Chalabi
  * */
 public class Commit implements Serializable {
 
-    /** initializes commit object with a log message.
+    /** initializes a commit with a log message whose parent is HEAD, the head of the current branch, and whose files
+     * are those of HEAD as changed by the staging area SA.  Its second parent is the commit with UID secondParent, the
+     * head of the branch that was merged in, unless secondParent is empty.
      *
      * @param logMessage
+     * @param head
+     * @param sA
+     * @param secondParent
      */
-    Commit(String logMessage) {
-        File headFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headFile, Commit.class);
-
-        String parentCommitUID = head.uid;
-
+    Commit(String logMessage, Commit head, StagedArea sA,
+           String secondParent) {
         this.logMessage = logMessage;
-        this.blobReference = getBlobReference();
+        this.treeReference = nextTree(head, sA);
 
-        this.parentReference = parentCommitUID;
+        this.parentReference = head.uid;
+        this.secondParentReference = secondParent;
         this.timeStamp = new Date();
-        this.uid = Utils.sha1(logMessage, timeStamp.toString(),
-                parentReference, blobReference.toString());
+        this.uid = Utils.sha1(Codec.encode(this));
     }
 
     /** Initializes the first commit in a gitlet directory once the init command is called. */
     Commit() {
         this.logMessage = "initial commit";
         this.parentReference = "";
+        this.secondParentReference = "";
 
         this.timeStamp = new Date(0);
+        this.blobReference = new HashMap<String, String>();
+        this.treeReference = Tree.EMPTY;
 
-        this.uid = gitlet.Utils.sha1(logMessage, timeStamp.toString(),
-                parentReference, blobReference.toString());
+        this.uid = Utils.sha1(Codec.encode(this));
+    }
+
+    /** A commit read from its encoding, with the given fields. */
+    private Commit(String logMessage, Date timeStamp, String parent,
+                   String secondParent, String tree, String uid) {
+        this.logMessage = logMessage;
+        this.timeStamp = timeStamp;
+        this.parentReference = parent;
+        this.secondParentReference = secondParent;
+        this.treeReference = tree;
+        this.uid = uid;
+    }
+
+    /** @return the head commit of the current branch. */
+    static Commit head() {
+        return Utils.readObject(Refs.load().head(), Commit.class);
     }
 
     /** Various methods to access contents of commit instance variables.
@@ -54,6 +87,18 @@ public class Commit implements Serializable {
     String getParentReference() {
         return this.parentReference;
     }
+    /** access the UIDs of the parents, first parent first; empty for the initial commit. */
+    List<String> getParents() {
+        List<String> parents = new ArrayList<String>();
+        if (!parentReference.equals("")) {
+            parents.add(parentReference);
+        }
+        if (secondParentReference != null
+                && !secondParentReference.equals("")) {
+            parents.add(secondParentReference);
+        }
+        return parents;
+    }
     /** access timestamp.
      * @return date */
     Date getTimeStamp() {
@@ -64,36 +109,151 @@ public class Commit implements Serializable {
         return this.uid;
     }
 
-    /**@return the blobReference which is a hashmap of all the filenames to their sha-1 UIDs, referring to blobs (versions of
-     * files in the given commit). In constructing the blobReference map, we also see if there are files staged for removal in
-     * the StagingArea. */
+    /** @return the blobReference which is a hashmap of all the filenames to their sha-1 UIDs, referring to blobs
+     * (versions of files in the given commit), building it from the commit's tree if it has not been built yet. */
     HashMap<String, String> getBlobReference() {
-        File headFile = new File(System.getProperty("user.dir")
-                + "/.gitlet/HEAD");
-        Commit head = Utils.readObject(headFile, Commit.class);
+        if (blobReference == null) {
+            blobReference = new HashMap<String, String>();
+            if (treeReference != null) {
+                Tree.flatten(treeReference, "", blobReference);
+            } else if (manifestReference != null) {
+                @SuppressWarnings("unchecked")
+                TreeMap<String, String> manifest =
+                    Utils.readObject(manifestReference, TreeMap.class);
+                blobReference.putAll(manifest);
+            }
+        }
+        return blobReference;
+    }
+
+    /** @return the sha-1 UID of the version of the file at PATH in this commit, or null if the commit does not track
+     * it, reading only the trees on the path. */
+    String getBlob(String path) {
+        if (blobReference != null) {
+            return blobReference.get(path);
+        }
+        return Tree.lookup(getTree(), path);
+    }
 
-        HashMap<String, String> bR = head.blobReference;
-        File file = new File(System.getProperty("user.dir")
-                + "/.gitlet/staged");
-        StagedArea sA = Utils.readObject(file, StagedArea.class);
-        bR.putAll(sA.stagedMap);
+    /** @return the UID of the commit's root tree, first storing one built from blobReference if the commit was
+     * written before trees. */
+    String getTree() {
+        if (treeReference == null) {
+            treeReference = Tree.fromMap(getBlobReference());
+        }
+        return treeReference;
+    }
 
+    /** @return the UID of the commit's root tree, or null if it was written before trees and none has been built. */
+    String treeId() {
+        return treeReference;
+    }
+
+    /** @return the UID of the commit's flat manifest object, or null if it has none. */
+    String getManifest() {
+        return manifestReference;
+    }
+
+    /** Stores this commit's tree, if it has not been stored yet, and then the commit itself in the object store.  The
+     * empty tree of the initial commit is stored with it. */
+    void save() {
+        if (getTree().equals(Tree.EMPTY)) {
+            new Tree().write();
+        }
+        Utils.writeObject(uid, this);
+    }
+
+    /** @return the UID of the root tree of a new commit whose parent is HEAD: HEAD's tree, updated by the files staged
+     * in SA and less those staged for removal.  Only the directories holding those files are rewritten. */
+    private static String nextTree(Commit head, StagedArea sA) {
+        Map<String, String> changes = new HashMap<String, String>();
         for (String filename : sA.toDelete) {
-            bR.remove(filename);
+            changes.put(filename, null);
+        }
+        changes.putAll(sA.stagedMap);
+        return Tree.update(head.getTree(), changes);
+    }
+
+    /** Writes the fields of the commit to OUT: its message, its time in milliseconds, its parents, if any, and the UID
+     * of its tree, followed by its own UID only if that is not the sha-1 of the encoding so far, as in commits made
+     * before Codec.  Storing the commit first stores a tree for it if it has none yet. */
+    void encode(Codec.Writer out) {
+        out.string(logMessage);
+        out.varint(timeStamp.getTime());
+        out.optionalId(parentReference);
+        out.optionalId(secondParentReference);
+        out.id(getTree());
+        if (uid != null && !uid.equals(Utils.sha1(out.toByteArray()))) {
+            out.id(uid);
         }
-        return bR;
     }
 
+    /** Returns the commit whose fields IN holds, as written by encode. */
+    static Commit decode(Codec.Reader in) {
+        String logMessage = in.string();
+        Date timeStamp = new Date(in.varint());
+        String parent = in.optionalId();
+        String secondParent = in.optionalId();
+        String tree = in.id();
+        String uid = in.remaining() > 0 ? in.id()
+            : Utils.sha1(in.contents());
+        return new Commit(logMessage, timeStamp, parent, secondParent,
+                tree, uid);
+    }
+
+    /** Reads a commit serialized by earlier versions of this class, which held the map inline until manifests and
+     * trees. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        logMessage = (String) fields.get("logMessage", null);
+        timeStamp = (Date) fields.get("timeStamp", null);
+        parentReference = (String) fields.get("parentReference", null);
+        secondParentReference =
+            (String) fields.get("secondParentReference", null);
+        treeReference = (String) fields.get("treeReference", null);
+        manifestReference = (String) fields.get("manifestReference", null);
+        @SuppressWarnings("unchecked")
+        HashMap<String, String> inline =
+            (HashMap<String, String>) fields.get("blobReference", null);
+        blobReference = inline;
+        uid = (String) fields.get("uid", null);
+    }
+
+    /** Fixed so that commits serialized by earlier versions of this class can still be read. */
+    private static final long serialVersionUID = 1272102655725628506L;
+
+    /** The fields as serialized: blobReference was only written for commits without a tree or manifest. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("logMessage", String.class),
+        new ObjectStreamField("timeStamp", Date.class),
+        new ObjectStreamField("parentReference", String.class),
+        new ObjectStreamField("secondParentReference", String.class),
+        new ObjectStreamField("treeReference", String.class),
+        new ObjectStreamField("manifestReference", String.class),
+        new ObjectStreamField("blobReference", HashMap.class),
+        new ObjectStreamField("uid", String.class),
+    };
+
     /** log message. */
-    private final String logMessage;
+    private String logMessage;
     /** date. */
-    private final Date timeStamp;
+    private Date timeStamp;
     /** pref. */
-    private final String parentReference;
-    /** blob ref. */
-    HashMap<String, String> blobReference = new HashMap<String, String>();
+    private String parentReference;
+    /** second pref, the merged-in branch head of a merge commit; empty otherwise, and null in commits written before
+     * merge commits kept both parents. */
+    private String secondParentReference;
+    /** UID of the root Tree of the commit's files; null in an initial commit until it is saved, and in commits
+     * written before trees until one is built for them. */
+    private String treeReference;
+    /** UID of the flat manifest object holding blobReference in commits written after manifests were split off but
+     * before trees; null otherwise. */
+    private String manifestReference;
+    /** blob ref, null until built from the tree. */
+    private transient HashMap<String, String> blobReference;
     /** uid. */
-    private final String uid;
+    private String uid;
     /** head. */
     static Commit _head = null;
 
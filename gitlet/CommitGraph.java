@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** The commit graph: the parents, generation number, timestamp and log message of every commit, kept in
+ * .gitlet/commit-graph so that history can be walked without deserializing commits.
+ *
+ * Every commit has a position; its record holds the positions of its parents, so a walk never needs to look ids up.
+ * The file is a sequence of layers.  A layer starts with a header (the magic "GCGL", a version, its number of
+ * commits, the position of its first commit and the length of its message section), followed by fixed-width records
+ * sorted by id and then the length-prefixed UTF-8 messages the records point into.  Each commit is appended as a
+ * layer of its own, and the last two layers are merged whenever the last is more than half the size of the one before
+ * it, so a repository of N commits has O(log N) layers and each commit rewrites O(log N) records on average.  The file
+ * is memory-mapped for reading.  Since everything in it can be recomputed from the commits, a missing or damaged file
+ * is simply rebuilt, and one holding fewer commits than the commit journal gets the commits it lacks.  Writers hold
+ * commit-graph.lock, a LockFile, and map the file again once they have it, so that processes committing to different
+ * branches at once each add their commit to the graph as the other left it.
+ * @author Lila Chalabi
+ */
+class CommitGraph {
+
+    /** Position standing for "no such commit". */
+    static final int NONE = -1;
+
+    /** Returns the commit graph of the repository in the current directory, building it from the commits in the
+     * commit journal if there is none yet or it is damaged, and adding the commits of the journal it lacks. */
+    static CommitGraph load() {
+        CommitGraph graph = open(new File(System.getProperty("user.dir")
+                + "/.gitlet/commit-graph"));
+        CommitJournal journal = CommitJournal.load();
+        if (graph.valid && graph.size() < journal.size()) {
+            try {
+                for (String id : journal.missing(journal.size()
+                        - graph.size(), i -> graph.position(i) != NONE)) {
+                    graph.add(Utils.readObject(id, Commit.class));
+                }
+            } catch (IllegalArgumentException excp) {
+                /* a commit lacks a parent the journal also lacks; the graph is built again from scratch. */
+                graph.valid = false;
+            }
+        }
+        if (!graph.valid) {
+            List<Commit> commits = new ArrayList<Commit>();
+            for (String id : journal) {
+                commits.add(Utils.readObject(id, Commit.class));
+            }
+            graph.rebuild(commits);
+        }
+        return graph;
+    }
+
+    /** Returns the graph stored in FILE, which is empty if FILE does not exist yet. */
+    static CommitGraph open(File file) {
+        return new CommitGraph(file);
+    }
+
+    /** The graph stored in FILE, which is not yet checked. */
+    private CommitGraph(File file) {
+        this.file = file;
+        this.valid = map();
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        if (layers.isEmpty()) {
+            return 0;
+        }
+        Layer last = layers.get(layers.size() - 1);
+        return last.base + last.count;
+    }
+
+    /** Returns the position of the commit with id ID, or NONE. */
+    int position(String id) {
+        return position(id, layers.size());
+    }
+
+    /** Returns the id of the commit at POS. */
+    String id(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        buf.get(record(pos), raw, 0, ID_BYTES);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the position of the first parent of the commit at POS, or NONE for the initial commit. */
+    int parent(int pos) {
+        return buf.getInt(record(pos) + ID_BYTES);
+    }
+
+    /** Returns the position of the second parent of the commit at POS, or NONE if it is not a merge. */
+    int secondParent(int pos) {
+        return buf.getInt(record(pos) + ID_BYTES + 4);
+    }
+
+    /** Returns the generation number of the commit at POS: 1 for the initial commit, and otherwise one more than the
+     * largest generation number of its parents. */
+    int generation(int pos) {
+        return buf.getInt(record(pos) + ID_BYTES + 8);
+    }
+
+    /** Returns the timestamp of the commit at POS in milliseconds. */
+    long time(int pos) {
+        return buf.getLong(record(pos) + ID_BYTES + 12);
+    }
+
+    /** Returns the log message of the commit at POS. */
+    String message(int pos) {
+        Layer layer = layerOf(pos);
+        int at = layer.messages + buf.getInt(record(pos) + ID_BYTES + 20);
+        byte[] raw = new byte[buf.getInt(at)];
+        buf.get(at + 4, raw, 0, raw.length);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** Adds COMMIT, whose parents must already be in the graph, and writes the graph. */
+    void add(Commit commit) {
+        add(commit.getUid(), commit.getParents(),
+                commit.getTimeStamp().getTime(), commit.getLogMessage());
+    }
+
+    /** Adds the commit with id ID, parents PARENTS (first parent first), timestamp TIME and log message MESSAGE, and
+     * writes the graph.  The parents must already be in the graph. */
+    void add(String id, List<String> parents, long time, String message) {
+        File lock = LockFile.acquire(file, "commit graph");
+        try {
+            valid = map();
+            if (position(id) == NONE) {
+                insert(id, parents, time, message);
+            }
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Adds the commit with id ID, parents PARENTS, timestamp TIME and log message MESSAGE, which is not in the
+     * graph yet, as for add, holding the lock. */
+    private void insert(String id, List<String> parents, long time,
+                        String message) {
+        /* decide how many of the last layers the new commit's layer will be merged with. */
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (Layer layer : layers) {
+            sizes.add(layer.count);
+        }
+        sizes.add(1);
+        int merged = 1;
+        while (sizes.size() >= 2 && sizes.get(sizes.size() - 1) * 2
+                > sizes.get(sizes.size() - 2)) {
+            int last = sizes.remove(sizes.size() - 1);
+            sizes.set(sizes.size() - 1, sizes.get(sizes.size() - 1) + last);
+            merged += 1;
+        }
+        int keep = layers.size() - (merged - 1);
+
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = keep; i < layers.size(); i += 1) {
+            Layer layer = layers.get(i);
+            for (int pos = layer.base; pos < layer.base + layer.count;
+                 pos += 1) {
+                entries.add(entryAt(pos));
+            }
+        }
+        Entry entry = new Entry(id, parents, 1, time, message);
+        for (String parent : entry.parents) {
+            int pos = position(parent);
+            if (pos == NONE) {
+                throw new IllegalArgumentException("parent " + parent
+                        + " of " + entry.id + " is not in the commit graph");
+            }
+            entry.generation = Math.max(entry.generation,
+                    generation(pos) + 1);
+        }
+        entries.add(entry);
+
+        long start = keep == layers.size() ? fileEnd()
+                : layers.get(keep).start;
+        int base = keep == 0 ? 0 : layers.get(keep - 1).base
+                + layers.get(keep - 1).count;
+        write(start, base, entries, keep);
+    }
+
+    /** Replaces the whole graph by one layer holding COMMITS, listed so that parents come before their children. */
+    void rebuild(List<Commit> commits) {
+        File lock = LockFile.acquire(file, "commit graph");
+        try {
+            write(0, 0, entries(commits), 0);
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Returns the entries of COMMITS, listed so that parents come before their children. */
+    private static List<Entry> entries(List<Commit> commits) {
+        List<Entry> entries = new ArrayList<Entry>();
+        Map<String, Integer> generations = new HashMap<String, Integer>();
+        for (Commit commit : commits) {
+            Entry entry = new Entry(commit.getUid(), commit.getParents(), 1,
+                    commit.getTimeStamp().getTime(), commit.getLogMessage());
+            for (String parent : entry.parents) {
+                Integer g = generations.get(parent);
+                if (g != null) {
+                    entry.generation = Math.max(entry.generation, g + 1);
+                }
+            }
+            generations.put(entry.id, entry.generation);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /* MERGE BASES */
+
+    /** Returns the position of a best common ancestor of the commits at A and B, one that is not an ancestor of any
+     * other common ancestor, or NONE if they have none.
+     *
+     * Commits are visited in order of decreasing generation number, so every descendant of a commit that the walk
+     * reaches is visited before it and has already passed on whether it is reachable from A, from B or both.  The
+     * first commit found reachable from both is therefore a best common ancestor, and the walk stops there; it never
+     * goes further back in history than the generation of the answer. */
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        Map<Integer, Integer> flags = new HashMap<Integer, Integer>();
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer x, Integer y) {
+                        return Integer.compare(generation(y), generation(x));
+                    }
+                });
+        flags.put(a, FROM_A);
+        flags.put(b, FROM_B);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            int f = flags.get(pos);
+            if (f == (FROM_A | FROM_B)) {
+                return pos;
+            }
+            for (int parent : new int[] {parent(pos), secondParent(pos)}) {
+                if (parent == NONE) {
+                    continue;
+                }
+                Integer old = flags.get(parent);
+                if (old == null) {
+                    flags.put(parent, f);
+                    queue.add(parent);
+                } else if ((old | f) != old) {
+                    flags.put(parent, old | f);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /* WRITING */
+
+    /** One commit, as gathered for writing into a layer. */
+    private static class Entry {
+        /** An entry with the given fields. */
+        Entry(String id, List<String> parents, int generation, long time,
+              String message) {
+            this.id = id;
+            this.parents = parents;
+            this.generation = generation;
+            this.time = time;
+            this.message = message;
+        }
+
+        /** Commit id. */
+        final String id;
+        /** Ids of the parents, first parent first. */
+        final List<String> parents;
+        /** Generation number. */
+        int generation;
+        /** Timestamp in milliseconds. */
+        final long time;
+        /** Log message. */
+        final String message;
+    }
+
+    /** Returns the commit at POS as an Entry. */
+    private Entry entryAt(int pos) {
+        List<String> parents = new ArrayList<String>();
+        if (parent(pos) != NONE) {
+            parents.add(id(parent(pos)));
+        }
+        if (secondParent(pos) != NONE) {
+            parents.add(id(secondParent(pos)));
+        }
+        return new Entry(id(pos), parents, generation(pos), time(pos),
+                message(pos));
+    }
+
+    /** Writes ENTRIES as one layer whose first commit has position BASE, at byte START of the file, dropping everything
+     * after it; the first KEEP layers, which all lie before START, are kept. */
+    private void write(long start, int base, List<Entry> entries, int keep) {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.id.compareTo(b.id);
+            }
+        });
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        for (int i = 0; i < entries.size(); i += 1) {
+            positions.put(entries.get(i).id, base + i);
+        }
+
+        List<byte[]> messages = new ArrayList<byte[]>();
+        int messagesLength = 0;
+        for (Entry entry : entries) {
+            byte[] raw = entry.message.getBytes(StandardCharsets.UTF_8);
+            messages.add(raw);
+            messagesLength += 4 + raw.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(HEADER + entries.size() * RECORD
+                + messagesLength);
+        out.put(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(entries.size());
+        out.putInt(base);
+        out.putInt(messagesLength);
+        int messageOffset = 0;
+        for (int i = 0; i < entries.size(); i += 1) {
+            Entry entry = entries.get(i);
+            out.put(PackFile.toBytes(entry.id));
+            for (int k = 0; k < 2; k += 1) {
+                int pos = NONE;
+                if (k < entry.parents.size()) {
+                    String parent = entry.parents.get(k);
+                    Integer p = positions.get(parent);
+                    pos = p != null ? p : position(parent, keep);
+                }
+                out.putInt(pos);
+            }
+            out.putInt(entry.generation);
+            out.putLong(entry.time);
+            out.putInt(messageOffset);
+            messageOffset += 4 + messages.get(i).length;
+        }
+        for (byte[] raw : messages) {
+            out.putInt(raw.length);
+            out.put(raw);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(start);
+            raf.seek(start);
+            raf.write(out.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        valid = map();
+        if (!valid) {
+            throw new IllegalArgumentException("could not write "
+                    + "commit graph");
+        }
+    }
+
+    /* READING */
+
+    /** A layer of the file. */
+    private static class Layer {
+        /** Byte offset of the layer's header. */
+        long start;
+        /** Number of commits in the layer. */
+        int count;
+        /** Position of the layer's first commit. */
+        int base;
+        /** Byte offset of the layer's message section. */
+        int messages;
+        /** Byte offset just past the layer. */
+        long end;
+    }
+
+    /** Maps the file and reads its layer headers, returning false if the file is missing or damaged. */
+    private boolean map() {
+        layers = new ArrayList<Layer>();
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            return false;
+        }
+        long at = 0;
+        int base = 0;
+        byte[] magic = new byte[MAGIC.length];
+        while (at < buf.limit()) {
+            if (at + HEADER > buf.limit()) {
+                return false;
+            }
+            buf.get((int) at, magic, 0, magic.length);
+            Layer layer = new Layer();
+            layer.start = at;
+            layer.count = buf.getInt((int) at + 8);
+            layer.base = buf.getInt((int) at + 12);
+            layer.messages = (int) at + HEADER + layer.count * RECORD;
+            layer.end = layer.messages + buf.getInt((int) at + 16);
+            if (!Arrays.equals(magic, MAGIC)
+                    || buf.getInt((int) at + 4) != VERSION
+                    || layer.base != base || layer.end > buf.limit()) {
+                return false;
+            }
+            layers.add(layer);
+            base += layer.count;
+            at = layer.end;
+        }
+        return !layers.isEmpty();
+    }
+
+    /** Returns the position of the commit with id ID among the first LIMIT layers, or NONE. */
+    private int position(String id, int limit) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return NONE;
+        }
+        byte[] key = PackFile.toBytes(id);
+        byte[] probe = new byte[ID_BYTES];
+        for (int l = 0; l < limit; l += 1) {
+            Layer layer = layers.get(l);
+            int lo = 0;
+            int hi = layer.count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                buf.get((int) layer.start + HEADER + mid * RECORD, probe, 0,
+                        ID_BYTES);
+                int cmp = Arrays.compareUnsigned(probe, key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return layer.base + mid;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Returns the layer holding position POS. */
+    private Layer layerOf(int pos) {
+        for (int l = layers.size() - 1; l >= 0; l -= 1) {
+            if (layers.get(l).base <= pos) {
+                return layers.get(l);
+            }
+        }
+        throw new IllegalArgumentException("bad commit position " + pos);
+    }
+
+    /** Returns the byte offset of the record at position POS. */
+    private int record(int pos) {
+        Layer layer = layerOf(pos);
+        return (int) layer.start + HEADER + (pos - layer.base) * RECORD;
+    }
+
+    /** Returns the byte offset just past the last layer. */
+    private long fileEnd() {
+        return layers.isEmpty() ? 0 : layers.get(layers.size() - 1).end;
+    }
+
+    /** Flag marking commits reachable from the first commit of a merge-base search. */
+    private static final int FROM_A = 1;
+    /** Flag marking commits reachable from the second commit of a merge-base search. */
+    private static final int FROM_B = 2;
+
+    /** Layer magic. */
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'L'};
+    /** Format version. */
+    private static final int VERSION = 1;
+    /** Bytes in a layer header. */
+    private static final int HEADER = 20;
+    /** Bytes in a binary commit id. */
+    private static final int ID_BYTES = 20;
+    /** Bytes in a record: id, two parent positions, generation, time and message offset. */
+    private static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8 + 4;
+
+    /** The graph file. */
+    private final File file;
+    /** The mapped file. */
+    private MappedByteBuffer buf;
+    /** The layers, oldest first. */
+    private List<Layer> layers;
+    /** True iff the file was read successfully. */
+    private boolean valid;
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class CommitGraphTest {
+
+    @Test
+    public void testAdd() throws IOException {
+        File file = new File(Files.createTempDirectory("gitlet-graph")
+                .toFile(), "commit-graph");
+        CommitGraph graph = CommitGraph.open(file);
+        String root = Utils.sha1("root");
+        graph.add(root, new ArrayList<String>(), 0, "root");
+        String parent = root;
+        for (int i = 0; i < 20; i += 1) {
+            String id = Utils.sha1(Integer.toString(i));
+            graph.add(id, List.of(parent), i, "commit " + i);
+            parent = id;
+        }
+        assertEquals(21, graph.size());
+        int pos = graph.position(parent);
+        assertEquals(21, graph.generation(pos));
+        assertEquals("commit 19", graph.message(pos));
+        assertEquals(root, graph.id(graph.mergeBase(pos,
+                graph.position(root))));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        File file = new File(Files.createTempDirectory("gitlet-graph")
+                .toFile(), "commit-graph");
+        String root = Utils.sha1("root");
+        CommitGraph.open(file).add(root, new ArrayList<String>(), 0, "root");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t += 1) {
+            int first = t * 25;
+            threads.add(new Thread(() -> {
+                /* a graph of its own, mapped before the others wrote, as another process would have. */
+                CommitGraph graph = CommitGraph.open(file);
+                String parent = root;
+                for (int i = first; i < first + 25; i += 1) {
+                    String id = Utils.sha1(Integer.toString(i));
+                    graph.add(id, List.of(parent), i, "commit " + i);
+                    parent = id;
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CommitGraph graph = CommitGraph.open(file);
+        assertEquals(101, graph.size());
+        for (int i = 0; i < 100; i += 1) {
+            int pos = graph.position(Utils.sha1(Integer.toString(i)));
+            assertTrue(pos != CommitGraph.NONE);
+            assertEquals(i % 25 + 2, graph.generation(pos));
+        }
+        assertFalse(new File(file.getPath() + ".lock").exists());
+    }
+}
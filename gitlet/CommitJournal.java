@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/** The ids of every commit ever made, in the order they were made, kept in .gitlet/commits.  The file is a header
+ * (the magic "GJNL" and a version) followed by one 20-byte record per commit, so recording a commit appends 20 bytes
+ * however long the history is, and the n-th commit is at a known offset.  Reading maps the file and walks the records
+ * in order.  A record cut short by a crash while it was being appended is ignored, and dropped by the next append.
+ * Appends and rewrites hold commits.lock, a LockFile, so that processes committing to different branches at once
+ * each append a record of their own.
+ *
+ * Staging areas written before the journal held the list of commits themselves; it is moved here the first time the
+ * journal of such a repository is loaded.
+ * @author Lila Chalabi
+ */
+class CommitJournal implements Iterable<String> {
+
+    /** Returns the journal of the repository in the current directory, moving the commits listed in its staging
+     * area there first if it has no journal yet. */
+    static CommitJournal load() {
+        File gitlet = new File(System.getProperty("user.dir"), ".gitlet");
+        CommitJournal journal = new CommitJournal(new File(gitlet,
+                "commits"));
+        if (!journal.file.exists()) {
+            journal.migrate(new File(gitlet, "staged"));
+        }
+        return journal;
+    }
+
+    /** The journal stored in FILE, which is created by the first append if it does not exist. */
+    CommitJournal(File file) {
+        this.file = file;
+    }
+
+    /** Records that the commit with UID ID was made. */
+    void append(String id) {
+        File lock = lock();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length < HEADER) {
+                raf.setLength(0);
+                raf.write(header());
+                length = HEADER;
+            } else {
+                checkHeader(raf);
+                length -= (length - HEADER) % RECORD;
+                raf.setLength(length);
+            }
+            raf.seek(length);
+            raf.write(PackFile.toBytes(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Returns the number of commits recorded. */
+    int size() {
+        long length = file.length();
+        return length < HEADER ? 0 : (int) ((length - HEADER) / RECORD);
+    }
+
+    /** Returns the UIDs of the commits recorded, oldest first.  They are read from a mapping of the records present
+     * when this is called, without copying the file. */
+    @Override
+    public Iterator<String> iterator() {
+        ByteBuffer records = map();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return records.remaining() >= RECORD;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                records.get(id);
+                return Utils.toHex(id);
+            }
+
+            /** Holds the record being converted. */
+            private final byte[] id = new byte[RECORD];
+        };
+    }
+
+    /** Returns the UIDs of the newest COUNT commits recorded that PRESENT does not hold, oldest first, looking back
+     * from the newest commit; there are fewer if the journal runs out first.  An index that holds fewer commits than
+     * the journal finds the ones it lacks this way, which takes one step when it is only behind by the commit being
+     * made. */
+    List<String> missing(long count, Predicate<String> present) {
+        ByteBuffer records = map();
+        List<String> result = new ArrayList<String>();
+        byte[] id = new byte[RECORD];
+        for (int at = records.limit() - RECORD;
+             at >= HEADER && result.size() < count; at -= RECORD) {
+            records.get(at, id);
+            String hex = Utils.toHex(id);
+            if (!present.test(hex)) {
+                result.add(hex);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Returns a read-only mapping of the whole records of the file, positioned at the first, or an empty buffer if
+     * there are none. */
+    ByteBuffer map() {
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long length = channel.size();
+            if (length < HEADER) {
+                return ByteBuffer.allocate(0);
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, length - (length - HEADER) % RECORD);
+            byte[] found = new byte[HEADER];
+            buf.get(found);
+            if (!Arrays.equals(found, header())) {
+                throw new IllegalArgumentException("corrupt commit journal");
+            }
+            return buf;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Drops the commits whose UIDs are in REMOVED, keeping the order of the rest, and returns how many were
+     * dropped.  The journal is rewritten whole and renamed into place, so a crash leaves the old one or the new. */
+    int retain(Set<String> removed) {
+        File lock = lock();
+        try {
+            List<String> kept = new ArrayList<String>();
+            for (String id : this) {
+                if (!removed.contains(id)) {
+                    kept.add(id);
+                }
+            }
+            int result = size() - kept.size();
+            if (result > 0) {
+                replace(kept);
+            }
+            return result;
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Writes the journal of a repository that has none from the list of commits in its staging area STAGEDFILE,
+     * and then drops the list from the staging area.  The journal is written whole and renamed into place, so a
+     * crash leaves either no journal, and the list where it was, or the complete journal. */
+    private void migrate(File stagedFile) {
+        if (!stagedFile.isFile()) {
+            return;
+        }
+        File lock = lock();
+        try {
+            if (file.exists()) {
+                return;
+            }
+            StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
+            List<String> ids = sA.commitList;
+            replace(ids);
+            if (!ids.isEmpty()) {
+                ids.clear();
+                Utils.writeObject(stagedFile, sA);
+            }
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Replaces the file with a journal of the commits IDS, written to a temporary file and renamed into place. */
+    private void replace(List<String> ids) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER + ids.size() * RECORD);
+        out.put(header());
+        for (String id : ids) {
+            out.put(PackFile.toBytes(id));
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(temp, out.array());
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Takes the lock on the journal, returning the lock file, which the caller deletes to release it. */
+    private File lock() {
+        return LockFile.acquire(file, "commit journal");
+    }
+
+    /** Throws IllegalArgumentException if the file open as RAF does not start with the journal header. */
+    private static void checkHeader(RandomAccessFile raf) throws IOException {
+        byte[] found = new byte[HEADER];
+        raf.seek(0);
+        raf.readFully(found);
+        if (!Arrays.equals(found, header())) {
+            throw new IllegalArgumentException("corrupt commit journal");
+        }
+    }
+
+    /** Returns the header of the file. */
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER).put(MAGIC).putInt(VERSION).array();
+    }
+
+    /** First bytes of the file. */
+    private static final byte[] MAGIC = {'G', 'J', 'N', 'L'};
+    /** Format version. */
+    private static final int VERSION = 1;
+    /** Bytes before the first record. */
+    private static final int HEADER = 8;
+    /** Bytes in a record: a raw UID. */
+    private static final int RECORD = 20;
+
+    /** The file. */
+    private final File file;
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+
+public class CommitJournalTest {
+
+    @Test
+    public void testAppend() throws IOException {
+        File file = new File(Files.createTempDirectory("gitlet-journal")
+                .toFile(), "commits");
+        CommitJournal journal = new CommitJournal(file);
+        assertEquals(0, journal.size());
+        assertFalse(journal.iterator().hasNext());
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 100; i += 1) {
+            ids.add(Utils.sha1(Integer.toString(i)));
+            journal.append(ids.get(i));
+        }
+        assertEquals(100, journal.size());
+        assertEquals(8 + 100 * 20, file.length());
+        assertEquals(ids, list(journal));
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+        File file = new File(Files.createTempDirectory("gitlet-journal")
+                .toFile(), "commits");
+        CommitJournal journal = new CommitJournal(file);
+        String one = Utils.sha1("one");
+        String two = Utils.sha1("two");
+        journal.append(one);
+
+        /* half a record, as a crash in the middle of an append leaves. */
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[7]);
+        }
+        assertEquals(1, journal.size());
+        assertEquals(List.of(one), list(journal));
+        journal.append(two);
+        assertEquals(List.of(one, two), list(journal));
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        File file = new File(Files.createTempDirectory("gitlet-journal")
+                .toFile(), "commits");
+        List<Thread> threads = new ArrayList<Thread>();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        for (int t = 0; t < 4; t += 1) {
+            int first = t * 50;
+            threads.add(new Thread(() -> {
+                /* a journal of its own, as another process would have. */
+                CommitJournal journal = new CommitJournal(file);
+                for (int i = first; i < first + 50; i += 1) {
+                    String id = Utils.sha1(Integer.toString(i));
+                    ids.add(id);
+                    journal.append(id);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CommitJournal journal = new CommitJournal(file);
+        assertEquals(200, journal.size());
+        assertEquals(ids, new HashSet<String>(list(journal)));
+        assertFalse(new File(file.getPath() + ".lock").exists());
+    }
+
+    @Test
+    public void testMissing() throws IOException {
+        File file = new File(Files.createTempDirectory("gitlet-journal")
+                .toFile(), "commits");
+        CommitJournal journal = new CommitJournal(file);
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 10; i += 1) {
+            ids.add(Utils.sha1(Integer.toString(i)));
+            journal.append(ids.get(i));
+        }
+        Set<String> present = new HashSet<String>(ids);
+        present.remove(ids.get(3));
+        present.remove(ids.get(8));
+        assertEquals(List.of(ids.get(3), ids.get(8)),
+                journal.missing(2, present::contains));
+        assertEquals(List.of(ids.get(8)), journal.missing(1, present::contains));
+        assertEquals(List.of(), journal.missing(5, ids::contains));
+    }
+
+    /** Returns the ids in JOURNAL. */
+    private static List<String> list(CommitJournal journal) {
+        List<String> result = new ArrayList<String>();
+        for (String id : journal) {
+            result.add(id);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** An ObjectStore layered over a writable store and read-only sources behind it.  Reads are served by the first of
+ * them holding the object; writes go to the writable store only.
+ * @author Lila Chalabi
+ */
+class CompositeObjectStore implements ObjectStore {
+
+    /** A store writing to PRIMARY and reading from PRIMARY and then each of OTHERS in turn. */
+    CompositeObjectStore(ObjectStore primary, ObjectSource... others) {
+        this.primary = primary;
+        this.sources = new ArrayList<ObjectSource>();
+        sources.add(primary);
+        sources.addAll(Arrays.asList(others));
+    }
+
+    @Override
+    public boolean has(String id) {
+        return sourceHolding(id) != null;
+    }
+
+    @Override
+    public byte[] read(String id) {
+        return holding(id).read(id);
+    }
+
+    @Override
+    public InputStream openStream(String id) {
+        return holding(id).openStream(id);
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        if (!has(id)) {
+            primary.write(id, contents);
+        }
+    }
+
+    @Override
+    public String write(InputStream in) {
+        return primary.write(in);
+    }
+
+    @Override
+    public File rawFile(String id) {
+        ObjectSource source = sourceHolding(id);
+        return source == null ? null : source.rawFile(id);
+    }
+
+    @Override
+    public File storeRaw(String id, InputStream in) {
+        return primary.storeRaw(id, in);
+    }
+
+    @Override
+    public Iterable<String> iterate() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (ObjectSource source : sources) {
+            for (String id : source.iterate()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the first source holding ID, or null. */
+    private ObjectSource sourceHolding(String id) {
+        for (ObjectSource source : sources) {
+            if (source.has(id)) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the first source holding ID, throwing IllegalArgumentException if there is none. */
+    private ObjectSource holding(String id) {
+        ObjectSource source = sourceHolding(id);
+        if (source == null) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        return source;
+    }
+
+    /** The store written to. */
+    private final ObjectStore primary;
+    /** The layered sources, the one written to first. */
+    private final List<ObjectSource> sources;
+}
@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A resident process serving the commands of one repository over a Unix domain socket, .gitlet/daemon.sock, so
+ * that they run in an already started JVM with warm compiled code and a cache of object contents.  Started by the
+ * daemon command and stopped by daemon --stop.
+ *
+ * Main forwards each command to the daemon when one is listening and runs it itself otherwise.  A client sends its
+ * arguments as a count followed by the strings, and then reads what the command prints until the daemon closes the
+ * connection.  Each client is served on a thread of its own, but the commands themselves run one at a time, since
+ * they read and write the same files under .gitlet.
+ * @author Lila Chalabi
+ */
+class Daemon {
+
+    /** Returns the socket file of the repository in the current directory. */
+    static File socketFile() {
+        return new File(System.getProperty("user.dir")
+                + "/.gitlet/daemon.sock");
+    }
+
+    /** Serves the repository in the current directory until stopped. */
+    static void serve() throws IOException {
+        File socket = socketFile();
+        if (forward(new String[] {"daemon", "--ping"},
+                OutputStream.nullOutputStream())) {
+            System.out.println("A daemon is already running.");
+            return;
+        }
+        socket.delete();
+        ServerSocketChannel server =
+            ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+        Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+
+        Utils.cacheObjects(CACHE_BYTES);
+        System.setOut(new PrintStream(new RoutingStream(System.out), true));
+        ExecutorService clients = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "gitlet-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("Serving on " + socket.getPath() + ".");
+        while (true) {
+            SocketChannel client = server.accept();
+            clients.execute(() -> handle(client));
+        }
+    }
+
+    /** Sends ARGS to the daemon of the repository in the current directory, if one is listening, and copies what
+     * the command prints to OUT.  Returns false if there is no daemon to send to, and true otherwise. */
+    static boolean forward(String[] args, OutputStream out) {
+        File socket = socketFile();
+        if (!socket.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            InputStream response = Channels.newInputStream(channel);
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = response.read(buf)) > 0) {
+                out.write(buf, 0, n);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            System.out.println("Lost connection to the daemon: "
+                    + excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Runs the command sent by CLIENT, sending back what it prints. */
+    private static void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream request =
+                new DataInputStream(Channels.newInputStream(client));
+            String[] args = new String[request.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = request.readUTF();
+            }
+            OutputStream response = new BufferedOutputStream(
+                    Channels.newOutputStream(client), BUFFER_SIZE);
+            RoutingStream.ROUTE.set(response);
+            try {
+                if (args.length == 2 && args[0].equals("daemon")) {
+                    control(args[1]);
+                    return;
+                }
+                synchronized (Daemon.class) {
+                    Main.run(args);
+                }
+            } catch (Exception excp) {
+                System.out.println(excp);
+            } finally {
+                System.out.flush();
+                RoutingStream.ROUTE.remove();
+                response.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Performs the daemon request OPTION: --ping does nothing, and --stop stops the daemon.  The daemon exits
+     * holding the lock the commands run under, so a command already running finishes first, and none starts after. */
+    private static void control(String option) {
+        if (option.equals("--stop")) {
+            System.out.println("Daemon stopped.");
+            System.out.flush();
+            RoutingStream.ROUTE.remove();
+            new Thread(() -> {
+                synchronized (Daemon.class) {
+                    System.exit(0);
+                }
+            }).start();
+        } else if (!option.equals("--ping")) {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** The standard output of the daemon: what a client's command prints goes to that client, and everything else to
+     * the daemon's own standard output. */
+    private static class RoutingStream extends OutputStream {
+
+        /** The stream where the current thread's output goes, if not to the default. */
+        static final ThreadLocal<OutputStream> ROUTE =
+            new ThreadLocal<OutputStream>();
+
+        /** A stream sending output from threads without a route to FALLBACK. */
+        RoutingStream(OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            target().write(buf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+
+        /** Returns the stream for the current thread. */
+        private OutputStream target() {
+            OutputStream route = ROUTE.get();
+            return route == null ? fallback : route;
+        }
+
+        /** Where output from threads without a route goes. */
+        private final OutputStream fallback;
+    }
+
+    /** Bytes of object contents the daemon keeps in memory. */
+    private static final long CACHE_BYTES = 64L << 20;
+    /** Size of the buffers used to stream output. */
+    private static final int BUFFER_SIZE = 8192;
+}
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Binary deltas between two versions of an object, in the same spirit as the deltas git keeps in its packfiles.  A
+ * delta starts with the lengths of the base and of the result, followed by a sequence of instructions that either
+ * copy a run of bytes out of the base or insert literal bytes.
+ * @author Lila Chalabi
+ */
+class Delta {
+
+    /** Size of the blocks of the base that are indexed when looking for matches. */
+    static final int BLOCK = 16;
+
+    /** Largest number of literal bytes in one insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+
+    /** Largest number of bytes in one copy instruction. */
+    private static final int MAX_COPY = 0xffffff;
+
+    /** Number of entries in the block index of the base. */
+    private static final int BUCKETS = 1 << 16;
+
+    /** Returns a delta that turns BASE into TARGET, or null if the delta would be no smaller than MAXSIZE bytes. */
+    static byte[] create(byte[] base, byte[] target, int maxSize) {
+        if (base.length < BLOCK || target.length < BLOCK) {
+            return null;
+        }
+
+        /* index the start of every block of the base by its hash; later blocks win so that copies prefer the end of
+        the base, which is where appended text lands. */
+        int[] index = new int[BUCKETS];
+        Arrays.fill(index, -1);
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index[hash(base, i)] = i;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int pending = 0;
+        int pos = 0;
+        while (pos < target.length) {
+            int matchStart = -1;
+            int matchLen = 0;
+            if (pos + BLOCK <= target.length) {
+                int candidate = index[hash(target, pos)];
+                if (candidate >= 0) {
+                    int len = 0;
+                    while (candidate + len < base.length
+                            && pos + len < target.length
+                            && len < MAX_COPY
+                            && base[candidate + len] == target[pos + len]) {
+                        len += 1;
+                    }
+                    if (len >= BLOCK) {
+                        matchStart = candidate;
+                        matchLen = len;
+                    }
+                }
+            }
+            if (matchLen == 0) {
+                pos += 1;
+                continue;
+            }
+
+            /* grow the match backwards into the bytes that are still waiting to be inserted. */
+            int back = 0;
+            while (back < pos - pending && matchStart - back > 0
+                    && matchLen + back < MAX_COPY
+                    && base[matchStart - back - 1] == target[pos - back - 1]) {
+                back += 1;
+            }
+            writeInsert(out, target, pending, pos - back);
+            writeCopy(out, matchStart - back, matchLen + back);
+            pos += matchLen;
+            pending = pos;
+            if (out.size() >= maxSize) {
+                return null;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        if (out.size() >= maxSize) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE.  Throws IllegalArgumentException if DELTA was not made against an
+     * object of BASE's length or is malformed. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        long baseLen = readVarint(delta, pos);
+        long resultLen = readVarint(delta, pos);
+        if (baseLen != base.length) {
+            throw new IllegalArgumentException("delta base length mismatch");
+        }
+        byte[] result = new byte[(int) resultLen];
+        int at = 0;
+        int p = pos[0];
+        while (p < delta.length) {
+            int op = delta[p++] & 0xff;
+            if ((op & 0x80) != 0) {
+                int offset = 0;
+                int size = 0;
+                for (int i = 0; i < 4; i += 1) {
+                    if ((op & (1 << i)) != 0) {
+                        offset |= (delta[p++] & 0xff) << (8 * i);
+                    }
+                }
+                for (int i = 0; i < 3; i += 1) {
+                    if ((op & (0x10 << i)) != 0) {
+                        size |= (delta[p++] & 0xff) << (8 * i);
+                    }
+                }
+                if (size == 0) {
+                    size = 0x10000;
+                }
+                System.arraycopy(base, offset, result, at, size);
+                at += size;
+            } else if (op != 0) {
+                System.arraycopy(delta, p, result, at, op);
+                p += op;
+                at += op;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (at != result.length) {
+            throw new IllegalArgumentException("delta result length mismatch");
+        }
+        return result;
+    }
+
+    /** Writes TARGET[FROM..TO) to OUT as insert instructions. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Writes an instruction copying SIZE bytes of the base starting at OFFSET to OUT.  Only the non-zero bytes of
+     * OFFSET and SIZE are stored; the low bits of the opcode say which ones are present. */
+    private static void writeCopy(ByteArrayOutputStream out, int offset,
+                                  int size) {
+        int op = 0x80;
+        byte[] args = new byte[7];
+        int n = 0;
+        for (int i = 0; i < 4; i += 1) {
+            int b = (offset >>> (8 * i)) & 0xff;
+            if (b != 0) {
+                op |= 1 << i;
+                args[n++] = (byte) b;
+            }
+        }
+        for (int i = 0; i < 3; i += 1) {
+            int b = (size >>> (8 * i)) & 0xff;
+            if (b != 0) {
+                op |= 0x10 << i;
+                args[n++] = (byte) b;
+            }
+        }
+        out.write(op);
+        out.write(args, 0, n);
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * 31 + (data[i] & 0xff);
+        }
+        return (h ^ (h >>> 16)) & (BUCKETS - 1);
+    }
+
+    /** Writes the non-negative VALUE to OUT seven bits at a time, least significant group first. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads a varint written by writeVarint from DATA at POS[0], advancing POS[0] past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
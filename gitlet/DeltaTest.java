@@ -0,0 +1,41 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+
+public class DeltaTest {
+
+    /** Returns the lines 1..N, one per line, with line CHANGED replaced. */
+    private static byte[] lines(int n, int changed) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= n; i += 1) {
+            sb.append(i == changed ? "changed" : Integer.toString(i));
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] base = lines(5000, -1);
+        byte[] target = lines(5000, 2500);
+        byte[] delta = Delta.create(base, target, target.length);
+        assertNotNull(delta);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta));
+    }
+
+    @Test
+    public void testUnrelated() {
+        byte[] base = lines(100, -1);
+        byte[] target = new byte[base.length];
+        for (int i = 0; i < target.length; i += 1) {
+            target[i] = (byte) (i * 7919);
+        }
+        assertNull(Delta.create(base, target, target.length / 2));
+    }
+}
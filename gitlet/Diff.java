@@ -0,0 +1,398 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line diffs of texts, for merge.  Each distinct line is given an integer token, shared between all the texts being
+ * compared, so that the diff compares ints rather than strings.  The longest common subsequence of two token
+ * sequences is found by Myers' O(ND) algorithm in its linear-space form, which finds the middle snake of the shortest
+ * edit script by searching from both ends at once and recurses on either side of it.  Before that, common prefixes and
+ * suffixes are matched directly and lines that appear in only one of the sequences, which can never match, are set
+ * aside.  Past a number of edits near the square root of the lengths, and at least MIN_COST_LIMIT, the search settles
+ * for the furthest point it has reached, so that two very different texts do not take time proportional to the
+ * square of their lengths; the script found is then short, but may not be the shortest.
+ * @author Lila Chalabi
+ */
+class Diff {
+
+    /** The lines of a text, each ending just after its newline, or at the end of the text for the last. */
+    static class Lines {
+
+        /** The lines of TEXT. */
+        Lines(byte[] text) {
+            this.text = text;
+            int count = 0;
+            for (byte b : text) {
+                if (b == '\n') {
+                    count += 1;
+                }
+            }
+            if (text.length > 0 && text[text.length - 1] != '\n') {
+                count += 1;
+            }
+            starts = new int[count + 1];
+            int line = 1;
+            for (int i = 0; i < text.length; i += 1) {
+                if (text[i] == '\n' && line < count) {
+                    starts[line] = i + 1;
+                    line += 1;
+                }
+            }
+            starts[count] = text.length;
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return starts.length - 1;
+        }
+
+        /** Returns the token of line I, as assigned by tokenize. */
+        int token(int i) {
+            return tokens[i];
+        }
+
+        /** Writes lines [FROM..TO) to OUT. */
+        void write(int from, int to, OutputStream out) throws IOException {
+            out.write(text, starts[from], starts[to] - starts[from]);
+        }
+
+        /** Returns true iff lines [FROM..TO) of this text are the same as lines [OFROM..OTO) of OTHER, tokenized
+         * together with this. */
+        boolean sameAs(int from, int to, Lines other, int oFrom, int oTo) {
+            return to - from == oTo - oFrom && Arrays.equals(tokens, from, to,
+                    other.tokens, oFrom, oTo);
+        }
+
+        /** Returns true iff line I ends with a newline. */
+        boolean terminated(int i) {
+            return text[starts[i + 1] - 1] == '\n';
+        }
+
+        /** Returns true iff the text looks binary: it holds a NUL byte. */
+        boolean isBinary() {
+            for (byte b : text) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** The text. */
+        private final byte[] text;
+        /** Offset of the start of each line, and then the length of the text. */
+        private final int[] starts;
+        /** Token of each line. */
+        private int[] tokens;
+    }
+
+    /** A run of lines [aStart..aEnd) of one text replaced by lines [bStart..bEnd) of another. */
+    static class Hunk {
+        /** A hunk replacing lines [ASTART..AEND) by [BSTART..BEND). */
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        /** First line replaced. */
+        final int aStart;
+        /** End of the lines replaced. */
+        final int aEnd;
+        /** First replacement line. */
+        final int bStart;
+        /** End of the replacement lines. */
+        final int bEnd;
+    }
+
+    /** Gives every line of TEXTS a token, the same for equal lines in any of them. */
+    static void tokenize(Lines... texts) {
+        Map<Line, Integer> tokens = new HashMap<Line, Integer>();
+        for (Lines text : texts) {
+            text.tokens = new int[text.size()];
+            for (int i = 0; i < text.size(); i += 1) {
+                Line line = new Line(text.text, text.starts[i],
+                        text.starts[i + 1]);
+                Integer token = tokens.get(line);
+                if (token == null) {
+                    token = tokens.size();
+                    tokens.put(line, token);
+                }
+                text.tokens[i] = token;
+            }
+        }
+    }
+
+    /** Returns the hunks that turn A into B, in order, which must have been tokenized together. */
+    static List<Hunk> diff(Lines a, Lines b) {
+        int[] match = match(a.tokens, b.tokens);
+        List<Hunk> result = new ArrayList<Hunk>();
+        int i = 0;
+        int j = 0;
+        while (i < match.length || j < b.size()) {
+            int i0 = i;
+            int j0 = j;
+            while (i < match.length && match[i] < 0) {
+                i += 1;
+            }
+            int next = i < match.length ? match[i] : b.size();
+            j = next;
+            if (i > i0 || j > j0) {
+                result.add(new Hunk(i0, i, j0, j));
+            }
+            if (i < match.length) {
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns, for each element of A, the index of the element of B it is matched with in a longest common
+     * subsequence of A and B, or -1 if it is not in it. */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+
+        /* lines only one side has cannot be matched, so the search runs on the others alone. */
+        int tokens = 0;
+        for (int t : a) {
+            tokens = Math.max(tokens, t + 1);
+        }
+        for (int t : b) {
+            tokens = Math.max(tokens, t + 1);
+        }
+        boolean[] inA = new boolean[tokens];
+        boolean[] inB = new boolean[tokens];
+        for (int t : a) {
+            inA[t] = true;
+        }
+        for (int t : b) {
+            inB[t] = true;
+        }
+        int[] aIndex = kept(a, inB);
+        int[] bIndex = kept(b, inA);
+        int[] aKept = new int[aIndex.length];
+        int[] bKept = new int[bIndex.length];
+        for (int i = 0; i < aKept.length; i += 1) {
+            aKept[i] = a[aIndex[i]];
+        }
+        for (int j = 0; j < bKept.length; j += 1) {
+            bKept[j] = b[bIndex[j]];
+        }
+
+        int[] keptMatch = new int[aKept.length];
+        Arrays.fill(keptMatch, -1);
+        new Diff(aKept, bKept, keptMatch).compare(0, aKept.length, 0,
+                bKept.length);
+        for (int i = 0; i < keptMatch.length; i += 1) {
+            if (keptMatch[i] >= 0) {
+                result[aIndex[i]] = bIndex[keptMatch[i]];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the indices of the elements of SEQ whose tokens are in PRESENT. */
+    private static int[] kept(int[] seq, boolean[] present) {
+        int n = 0;
+        for (int t : seq) {
+            if (present[t]) {
+                n += 1;
+            }
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int i = 0; i < seq.length; i += 1) {
+            if (present[seq[i]]) {
+                result[n++] = i;
+            }
+        }
+        return result;
+    }
+
+    /** A search for the longest common subsequence of A and B, recording it in MATCH. */
+    private Diff(int[] a, int[] b, int[] match) {
+        this.a = a;
+        this.b = b;
+        this.match = match;
+        int size = a.length + b.length + 3;
+        forward = new int[size];
+        backward = new int[size];
+        costLimit = Math.max(MIN_COST_LIMIT, (int) Math.sqrt(size));
+    }
+
+    /** Matches a longest common subsequence of A[ALO..AHI) and B[BLO..BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            match[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        long split = split(aLo, aHi, bLo, bHi);
+        int x = (int) (split >>> 32);
+        int y = (int) split;
+        if (split < 0 || x == aLo && y == bLo || x == aHi && y == bHi) {
+            return;
+        }
+        compare(aLo, x, bLo, y);
+        compare(x, aHi, y, bHi);
+    }
+
+    /** Returns a point (x, y), as x << 32 | y, at which a shortest edit script of A[ALO..AHI) into B[BLO..BHI), whose
+     * first and last elements differ, can be split in two: the end of the forward half of its middle snake.  Once the
+     * search has cost costLimit edits, returns the furthest point reached forward instead.  Returns -1 if there is no
+     * common element at all. */
+    private long split(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int off = maxD;
+        int length = 2 * maxD + 2;
+        Arrays.fill(forward, 0, length, -1);
+        Arrays.fill(backward, 0, length, -1);
+        forward[off + 1] = 0;
+        backward[off + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        long best = -1;
+        int bestReach = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = off + k1;
+                int x1;
+                if (k1 == -d || k1 != d && forward[i - 1] < forward[i + 1]) {
+                    x1 = forward[i + 1];
+                } else {
+                    x1 = forward[i - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else {
+                    if (x1 + y1 > bestReach) {
+                        bestReach = x1 + y1;
+                        best = (long) (aLo + x1) << 32 | (bLo + y1);
+                    }
+                    int j = off + delta - k1;
+                    if (odd && j >= 0 && j < length && backward[j] != -1
+                            && x1 >= n - backward[j]) {
+                        return (long) (aLo + x1) << 32 | (bLo + y1);
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = off + k2;
+                int x2;
+                if (k2 == -d
+                        || k2 != d && backward[i - 1] < backward[i + 1]) {
+                    x2 = backward[i + 1];
+                } else {
+                    x2 = backward[i - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && a[aHi - 1 - x2] == b[bHi - 1 - y2]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!odd) {
+                    int j = off + delta - k2;
+                    if (j >= 0 && j < length && forward[j] != -1) {
+                        int x1 = forward[j];
+                        int y1 = off + x1 - j;
+                        if (x1 >= n - x2) {
+                            return (long) (aLo + x1) << 32 | (bLo + y1);
+                        }
+                    }
+                }
+            }
+            if (d >= costLimit && bestReach > 0) {
+                return best;
+            }
+        }
+        return -1;
+    }
+
+    /** A line of a text, as a key of the table of tokens. */
+    private static class Line {
+        /** Bytes [START..END) of TEXT. */
+        Line(byte[] text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + text[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Line other = (Line) obj;
+            return hash == other.hash && Arrays.equals(text, start, end,
+                    other.text, other.start, other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /** The text holding the line. */
+        private final byte[] text;
+        /** Start of the line. */
+        private final int start;
+        /** End of the line. */
+        private final int end;
+        /** Hash of the line's bytes. */
+        private final int hash;
+    }
+
+    /** Fewest edits after which a search settles for an edit script that may not be the shortest. */
+    static final int MIN_COST_LIMIT = 256;
+
+    /** The first sequence. */
+    private final int[] a;
+    /** The second sequence. */
+    private final int[] b;
+    /** For each element of a, the element of b matched with it, or -1. */
+    private final int[] match;
+    /** Number of edits after which a search settles for an edit script that may not be the shortest. */
+    private final int costLimit;
+    /** Furthest x reached on each diagonal searching forward, offset so that the indices are not negative. */
+    private final int[] forward;
+    /** Furthest distance from the ends reached on each diagonal searching backward, offset in the same way. */
+    private final int[] backward;
+}
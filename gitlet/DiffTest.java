@@ -0,0 +1,94 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class DiffTest {
+
+    @Test
+    public void testMatchIsLongest() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round += 1) {
+            int[] a = randomSequence(random);
+            int[] b = randomSequence(random);
+            int[] match = Diff.match(a, b);
+            int matched = 0;
+            int last = -1;
+            for (int i = 0; i < a.length; i += 1) {
+                if (match[i] >= 0) {
+                    assertTrue(match[i] > last);
+                    assertEquals(a[i], b[match[i]]);
+                    last = match[i];
+                    matched += 1;
+                }
+            }
+            assertEquals(lcsLength(a, b), matched);
+        }
+    }
+
+    @Test
+    public void testMergeSeparateChanges() throws IOException {
+        String base = "one\ntwo\nthree\nfour\nfive\nsix\n";
+        String ours = "ONE\ntwo\nthree\nfour\nfive\nsix\n";
+        String theirs = "one\ntwo\nthree\nfour\nfive\nsix\nseven";
+        assertEquals("ONE\ntwo\nthree\nfour\nfive\nsix\nseven",
+                merge(base, ours, theirs, 0));
+        assertEquals(ours, merge(base, ours, ours, 0));
+        assertEquals(theirs, merge(base, base, theirs, 0));
+    }
+
+    @Test
+    public void testMergeConflict() throws IOException {
+        String base = "one\ntwo\nthree\nfour\n";
+        String ours = "one\nTWO\nthree\nfour\n";
+        String theirs = "one\n2\nthree\nFOUR\n";
+        assertEquals("one\n<<<<<<< HEAD\nTWO\n=======\n2\n>>>>>>>\n"
+                + "three\nFOUR\n", merge(base, ours, theirs, 1));
+
+        /* with nothing in common the whole files conflict, as they always did. */
+        assertEquals("<<<<<<< HEAD\na\n=======\nb\n>>>>>>>\n",
+                merge("", "a\n", "b\n", 1));
+    }
+
+    /** Returns the merge of OURS and THEIRS with BASE, checking that it has CONFLICTS conflicts. */
+    private static String merge(String base, String ours, String theirs,
+                                int conflicts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(conflicts, ThreeWayMerge.merge(bytes(base), bytes(ours),
+                bytes(theirs), out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the UTF-8 bytes of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns a short sequence of small numbers drawn from RANDOM. */
+    private static int[] randomSequence(Random random) {
+        int[] result = new int[random.nextInt(40)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = random.nextInt(6);
+        }
+        return result;
+    }
+
+    /** Returns the length of a longest common subsequence of A and B, by dynamic programming. */
+    private static int lcsLength(int[] a, int[] b) {
+        int[][] best = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                best[i][j] = a[i] == b[j] ? best[i + 1][j + 1] + 1
+                    : Math.max(best[i + 1][j], best[i][j + 1]);
+            }
+        }
+        return best[0][0];
+    }
+}
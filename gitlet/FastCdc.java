@@ -0,0 +1,63 @@
+package gitlet;
+
+/** Content-defined chunking in the manner of FastCDC, for chunked blobs.  A gear hash rolls over the bytes, each step
+ * shifting the hash left and adding a random value for the byte, so its high bits depend only on the last 64 bytes;
+ * a chunk ends where those bits are all zero.  Since cut points depend only on nearby contents, an edit changes the
+ * chunks around it and leaves the others, and their UIDs, as they were.  The first MIN_SIZE bytes of a chunk are
+ * never tested, a stricter mask is used before NORMAL_SIZE and a looser one after, which keeps most chunks near
+ * NORMAL_SIZE, and no chunk is longer than MAX_SIZE.
+ * @author Lila Chalabi
+ */
+class FastCdc {
+
+    /** Returns the length of the chunk that starts at START of BUF, whose bytes up to END are filled, which must be at
+     * least MAX_SIZE bytes on unless they are the last of the contents. */
+    static int cut(byte[] buf, int start, int end) {
+        int length = end - start;
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(length, NORMAL_SIZE);
+        int max = Math.min(length, MAX_SIZE);
+        long h = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            h = (h << 1) + GEAR[buf[start + i] & 0xff];
+            if ((h & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < max; i += 1) {
+            h = (h << 1) + GEAR[buf[start + i] & 0xff];
+            if ((h & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+
+    /** Fewest bytes in a chunk other than the last. */
+    static final int MIN_SIZE = 16 * 1024;
+    /** Length around which chunks are kept. */
+    static final int NORMAL_SIZE = 64 * 1024;
+    /** Most bytes in a chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Tested before NORMAL_SIZE: the top two bits more than log2(NORMAL_SIZE), so a cut is four times as rare. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    /** Tested from NORMAL_SIZE on: the top two bits fewer, so a cut is four times as likely. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+    /** The value added to the hash for each byte. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x2545f4914f6cdd1dL;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long x = seed;
+            x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+            x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = x ^ (x >>> 31);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Checks the integrity of a repository's objects, for fsck.  Every stored copy of every object, loose or packed, is
+ * hashed on a pool of a bounded number of threads, loose objects by streaming them through the digest in fixed-size
+ * buffers, and each pack's own checksum is checked too.  An object whose contents do not hash to its UID is corrupt,
+ * unless it is a commit made before Codec, which kept the UID it was given; such a commit is checked by decoding it.
+ * A chunked blob is checked by streaming its chunks, reassembled, through the digest.
+ * Connectivity is then checked from the given commits and blobs: every commit reachable from them must be present,
+ * and its parents, its tree and every tree and blob below it, and every chain of parents must end at the initial
+ * commit.  Trees shared by many commits are checked once.  Objects present that nothing reaches are dangling.
+ * @author Lila Chalabi
+ */
+class Fsck {
+
+    /** What a check found. */
+    static class Report {
+        /** Copies of objects hashed, counting an object both loose and packed twice. */
+        int checked;
+        /** Bytes hashed. */
+        long bytes;
+        /** Commits whose UIDs could only be checked by decoding them. */
+        int legacy;
+        /** Problems with objects that are present, by UID. */
+        final Map<String, String> corrupt = new TreeMap<String, String>();
+        /** Objects referred to but absent, by UID, each with what refers to it. */
+        final Map<String, String> missing = new TreeMap<String, String>();
+        /** Objects present that nothing reaches, by UID, each with its kind. */
+        final Map<String, String> dangling = new TreeMap<String, String>();
+        /** Commits without parents other than the initial commit. */
+        final Set<String> badRoots = new HashSet<String>();
+    }
+
+    /** A check of the objects directory OBJECTS using up to PARALLELISM threads. */
+    Fsck(File objects, int parallelism) {
+        this.objects = objects;
+        this.parallelism = parallelism;
+        this.chunks = new LooseObjectStore(new File(objects,
+                ChunkedObjectStore.CHUNKS));
+    }
+
+    /** A check of the objects directory OBJECTS using the default number of threads. */
+    Fsck(File objects) {
+        this(objects, RangeTask.defaultParallelism());
+    }
+
+    /** Checks every object, and the connectivity of the commits ROOTS and the blobs BLOBS, each mapped to a
+     * description of what refers to it, and returns what was found. */
+    Report check(Map<String, String> roots, Map<String, String> blobs) {
+        LooseObjectStore loose = new LooseObjectStore(objects);
+        List<String> ids = new ArrayList<String>();
+        List<PackFile> packOf = new ArrayList<PackFile>();
+        for (String id : loose.iterate()) {
+            ids.add(id);
+            packOf.add(null);
+        }
+        List<PackFile> packs = PackFile.packsIn(objects);
+        for (PackFile pack : packs) {
+            for (String id : pack.ids()) {
+                ids.add(id);
+                packOf.add(pack);
+            }
+        }
+
+        Report result = new Report();
+        String[] kinds = new String[ids.size()];
+        String[] problems = new String[ids.size()];
+        long[] sizes = new long[ids.size()];
+        boolean[] legacy = new boolean[ids.size()];
+        boolean[] packOk = new boolean[packs.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeTask(i -> packOk[i] = packs.get(i)
+                    .checksumMatches(), 0, packs.size(), BATCH));
+            pool.invoke(new RangeTask(i -> {
+                PackFile pack = packOf.get(i);
+                String id = ids.get(i);
+                byte[] head = new byte[HEAD];
+                try {
+                    sizes[i] = pack == null
+                        ? hash(loose.fileFor(id), id, head)
+                        : hash(pack.read(id), id, head);
+                } catch (IllegalArgumentException | IndexOutOfBoundsException
+                         | IOException excp) {
+                    problems[i] = "unreadable: " + excp.getMessage();
+                    return;
+                }
+                kinds[i] = kind(head, sizes[i]);
+                if (sizes[i] < 0) {
+                    sizes[i] = -sizes[i] - 1;
+                    byte[] contents = pack == null ? loose.read(id)
+                        : pack.read(id);
+                    if (ChunkedObjectStore.isChunkList(contents)) {
+                        problems[i] = checkChunks(contents, id, sizes, i);
+                        return;
+                    }
+                    legacy[i] = keptUid(contents, id);
+                    if (legacy[i]) {
+                        kinds[i] = "commit";
+                    } else {
+                        problems[i] = "hash mismatch";
+                    }
+                }
+            }, 0, ids.size(), BATCH));
+
+            Map<String, String> present = new ConcurrentHashMap<String,
+                String>();
+            for (int i = 0; i < ids.size(); i += 1) {
+                result.checked += 1;
+                result.bytes += sizes[i];
+                if (legacy[i]) {
+                    result.legacy += 1;
+                }
+                if (problems[i] == null) {
+                    present.putIfAbsent(ids.get(i), kinds[i]);
+                }
+            }
+            for (int i = 0; i < ids.size(); i += 1) {
+                if (problems[i] != null) {
+                    String where = packOf.get(i) == null ? "loose"
+                        : "in " + packOf.get(i).getPackFile().getName();
+                    result.corrupt.put(ids.get(i), problems[i] + ", " + where);
+                    present.put(ids.get(i), CORRUPT);
+                }
+            }
+            for (int i = 0; i < packs.size(); i += 1) {
+                if (!packOk[i]) {
+                    result.corrupt.put(packs.get(i).getPackFile().getName(),
+                            "pack checksum mismatch");
+                }
+            }
+
+            Set<String> reached = ConcurrentHashMap.newKeySet();
+            Map<String, String> missing = new ConcurrentHashMap<String,
+                String>();
+            Map<String, String> corrupt = new ConcurrentHashMap<String,
+                String>();
+            List<String> commits = commits(roots, present, reached, missing,
+                    corrupt, result.badRoots);
+            pool.invoke(new RangeTask(i -> checkCommit(commits.get(i),
+                    present, reached, missing, corrupt), 0, commits.size(),
+                    BATCH));
+            for (Map.Entry<String, String> e : blobs.entrySet()) {
+                reached.add(e.getKey());
+                if (!present.containsKey(e.getKey())) {
+                    missing.putIfAbsent(e.getKey(), "blob, " + e.getValue());
+                }
+            }
+            result.missing.putAll(missing);
+            result.corrupt.putAll(corrupt);
+            for (Map.Entry<String, String> e : present.entrySet()) {
+                if (!reached.contains(e.getKey())
+                        && !e.getValue().equals(CORRUPT)) {
+                    result.dangling.put(e.getKey(), e.getValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Returns the commits reachable from ROOTS, each mapped to what refers to it, that are in PRESENT, following
+     * parents, and adds them to REACHED.  Commits absent are added to MISSING and those that cannot be decoded to
+     * CORRUPT, with what refers to them; commits without parents other than the initial commit are added to
+     * BADROOTS. */
+    private static List<String> commits(Map<String, String> roots,
+                                        Map<String, String> present,
+                                        Set<String> reached,
+                                        Map<String, String> missing,
+                                        Map<String, String> corrupt,
+                                        Set<String> badRoots) {
+        List<String> result = new ArrayList<String>();
+        Deque<String[]> pending = new ArrayDeque<String[]>();
+        for (Map.Entry<String, String> e : roots.entrySet()) {
+            pending.push(new String[] {e.getKey(), e.getValue()});
+        }
+        while (!pending.isEmpty()) {
+            String[] next = pending.pop();
+            String id = next[0];
+            if (!reached.add(id)) {
+                continue;
+            } else if (!present.containsKey(id)) {
+                missing.putIfAbsent(id, "commit, " + next[1]);
+                continue;
+            } else if (present.get(id).equals(CORRUPT)) {
+                continue;
+            }
+            Commit commit;
+            try {
+                commit = Utils.readObject(id, Commit.class);
+            } catch (IllegalArgumentException | ClassCastException excp) {
+                corrupt.putIfAbsent(id, "not a commit, " + next[1]);
+                continue;
+            }
+            result.add(id);
+            List<String> parents = commit.getParents();
+            if (parents.isEmpty()
+                    && !commit.getLogMessage().equals("initial commit")) {
+                badRoots.add(id);
+            }
+            for (String parent : parents) {
+                pending.push(new String[] {parent, "parent of commit " + id});
+            }
+        }
+        return result;
+    }
+
+    /** Checks that the tree or, for a commit written before trees, the files of the commit with UID ID are present,
+     * adding what it refers to to REACHED, what is absent from PRESENT to MISSING and what cannot be decoded to
+     * CORRUPT. */
+    private void checkCommit(String id, Map<String, String> present,
+                             Set<String> reached, Map<String, String> missing,
+                             Map<String, String> corrupt) {
+        Commit commit = Utils.readObject(id, Commit.class);
+        String tree = commit.treeId();
+        String from = "in commit " + id;
+        if (tree != null) {
+            new TreeTask(tree, from, present, reached, missing, corrupt)
+                .invoke();
+            return;
+        }
+        String manifest = commit.getManifest();
+        if (manifest != null) {
+            reached.add(manifest);
+            if (!present.containsKey(manifest)) {
+                missing.putIfAbsent(manifest, "manifest, " + from);
+                return;
+            } else if (present.get(manifest).equals(CORRUPT)) {
+                return;
+            }
+        }
+        Map<String, String> files;
+        try {
+            files = commit.getBlobReference();
+        } catch (IllegalArgumentException | ClassCastException excp) {
+            corrupt.putIfAbsent(manifest, "not a manifest, " + from);
+            return;
+        }
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            reached.add(e.getValue());
+            if (!present.containsKey(e.getValue())) {
+                missing.putIfAbsent(e.getValue(), "blob, " + e.getKey() + " "
+                        + from);
+            }
+        }
+    }
+
+    /** Hashes CONTENTS, storing its first bytes in HEAD, and returns the number of bytes hashed, or minus one less
+     * that number if the contents do not hash to ID. */
+    private static long hash(byte[] contents, String id, byte[] head) {
+        MessageDigest md = DIGEST.get();
+        md.update(contents);
+        System.arraycopy(contents, 0, head, 0, Math.min(HEAD,
+                contents.length));
+        return Utils.toHex(md.digest()).equals(id) ? contents.length
+            : -contents.length - 1;
+    }
+
+    /** Streams the loose object FILE through a digest, storing its first bytes in HEAD, and returns the number of
+     * bytes hashed, or minus one less that number if the contents do not hash to ID. */
+    private static long hash(File file, String id, byte[] head)
+            throws IOException {
+        MessageDigest md = DIGEST.get();
+        byte[] buf = BUFFER.get();
+        long length = 0;
+        try (InputStream in = LooseObjectStore.open(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                if (length < HEAD) {
+                    System.arraycopy(buf, 0, head, (int) length,
+                            (int) Math.min(n, HEAD - length));
+                }
+                md.update(buf, 0, n);
+                length += n;
+            }
+        }
+        return Utils.toHex(md.digest()).equals(id) ? length : -length - 1;
+    }
+
+    /** Streams the chunks of the chunk list CONTENTS, named ID, through a digest, adding the number of bytes hashed
+     * to SIZES[I], and returns what is wrong with the blob, or null if its contents are as long as the list says and
+     * hash to ID. */
+    private String checkChunks(byte[] contents, String id, long[] sizes,
+                               int i) {
+        MessageDigest md = DIGEST.get();
+        byte[] buf = BUFFER.get();
+        ChunkedObjectStore.ChunkList list;
+        try {
+            list = ChunkedObjectStore.ChunkList.decode(contents);
+        } catch (IllegalArgumentException excp) {
+            return excp.getMessage();
+        }
+        long length = 0;
+        try (InputStream in = ChunkedObjectStore.chunkStream(chunks, list)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+                length += n;
+            }
+        } catch (IllegalArgumentException | IOException excp) {
+            return "bad chunk: " + excp.getMessage();
+        }
+        sizes[i] += length;
+        if (length != list.size) {
+            return "chunks do not add up to its size";
+        }
+        return Utils.toHex(md.digest()).equals(id) ? null
+            : "chunks do not hash to it";
+    }
+
+    /** Returns true iff CONTENTS are a commit made before Codec that keeps the UID ID it was given. */
+    private static boolean keptUid(byte[] contents, String id) {
+        try {
+            return id.equals(Codec.decode(contents, Commit.class).getUid());
+        } catch (IllegalArgumentException | ClassCastException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the kind of an object of LENGTH bytes whose first bytes are HEAD, as far as they tell: commit, tree,
+     * staged area, object, for other Java serializations, or blob. */
+    private static String kind(byte[] head, long length) {
+        if (length >= HEAD && Codec.isEncoded(head)) {
+            switch (head[2]) {
+            case Codec.COMMIT:
+                return "commit";
+            case Codec.TREE:
+                return "tree";
+            case Codec.STAGED_AREA:
+                return "staged area";
+            default:
+                break;
+            }
+        }
+        if (length >= 2 && (head[0] & 0xff) == 0xac
+                && (head[1] & 0xff) == 0xed) {
+            return "object";
+        }
+        return "blob";
+    }
+
+    /** Checks a tree and what it refers to. */
+    private static class TreeTask extends RecursiveAction {
+        /** A task checking the tree with UID ID, which FROM describes what refers to, and everything below it, unless
+         * it is in REACHED already, adding what it finds to REACHED, what is absent from PRESENT to MISSING and what
+         * cannot be decoded to CORRUPT. */
+        TreeTask(String id, String from, Map<String, String> present,
+                 Set<String> reached, Map<String, String> missing,
+                 Map<String, String> corrupt) {
+            this.id = id;
+            this.from = from;
+            this.present = present;
+            this.reached = reached;
+            this.missing = missing;
+            this.corrupt = corrupt;
+        }
+
+        @Override
+        protected void compute() {
+            if (!reached.add(id)) {
+                return;
+            } else if (!present.containsKey(id)) {
+                missing.putIfAbsent(id, "tree, " + from);
+                return;
+            } else if (present.get(id).equals(CORRUPT)) {
+                return;
+            }
+            Tree tree;
+            try {
+                tree = Tree.read(id);
+            } catch (IllegalArgumentException | ClassCastException excp) {
+                corrupt.putIfAbsent(id, "not a tree, " + from);
+                return;
+            }
+            for (Map.Entry<String, String> e : tree.files().entrySet()) {
+                reached.add(e.getValue());
+                if (!present.containsKey(e.getValue())) {
+                    missing.putIfAbsent(e.getValue(), "blob, " + e.getKey()
+                            + " in tree " + id);
+                }
+            }
+            List<TreeTask> subtrees = new ArrayList<TreeTask>();
+            for (Map.Entry<String, String> e : tree.trees().entrySet()) {
+                if (!reached.contains(e.getValue())) {
+                    subtrees.add(new TreeTask(e.getValue(), e.getKey()
+                            + "/ in tree " + id, present, reached, missing,
+                            corrupt));
+                }
+            }
+            invokeAll(subtrees);
+        }
+
+        /** The tree. */
+        private final String id;
+        /** What refers to the tree. */
+        private final String from;
+        /** The kinds of the objects present, by UID, CORRUPT for those that are not sound. */
+        private final Map<String, String> present;
+        /** The UIDs reached so far. */
+        private final Set<String> reached;
+        /** What refers to each object found absent, by UID. */
+        private final Map<String, String> missing;
+        /** What is wrong with each object that could not be decoded, by UID. */
+        private final Map<String, String> corrupt;
+    }
+
+    /** Each thread's digest, reset by every digest() call. */
+    private static final ThreadLocal<MessageDigest> DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                        "System does not support SHA-1");
+            }
+        });
+    /** Each thread's buffer for streaming loose objects. */
+    private static final ThreadLocal<byte[]> BUFFER =
+        ThreadLocal.withInitial(() ->
+                new byte[LooseObjectStore.BUFFER_SIZE]);
+    /** The kind recorded for objects present but corrupt. */
+    private static final String CORRUPT = "corrupt";
+    /** Number of leading bytes kept to tell the kind of an object. */
+    private static final int HEAD = 4;
+    /** Most objects handled by one task without splitting. */
+    private static final int BATCH = 16;
+
+    /** The objects directory. */
+    private final File objects;
+    /** Most threads working at once. */
+    private final int parallelism;
+    /** The chunks of chunked blobs. */
+    private final LooseObjectStore chunks;
+}
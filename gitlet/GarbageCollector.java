@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Deletes the objects of a repository that nothing refers to any more, for gc.  Marking starts from the commits the
+ * branches and HEAD name and the blobs of the staging area.  The commits reachable from those are found by following
+ * parents in the commit graph, without reading the commits; then each reachable commit is read and its tree marked,
+ * by tasks on a pool of a bounded number of threads.  Trees are recorded as they are marked, so a tree shared by many
+ * commits, as most are, is read once.  Sweeping deletes every unmarked loose object last modified more than the grace
+ * period ago, so that objects written by a command still running, which nothing refers to yet, survive.  As in git,
+ * the commits and trees that are that recent are marked from too, before sweeping, so that what they refer to
+ * survives with them even when it is older.  A pack holding unmarked objects at least that old is replaced by a pack
+ * of its marked objects.  Chunks of chunked blobs are swept last, keeping those a remaining blob lists.
+ * @author Lila Chalabi
+ */
+class GarbageCollector {
+
+    /** What a sweep deleted, or would delete in a dry run. */
+    static class Result {
+        /** Objects marked. */
+        int reachable;
+        /** Loose objects deleted. */
+        int loose;
+        /** Packed objects dropped. */
+        int packed;
+        /** Unmarked objects kept because they are too recent. */
+        int recent;
+        /** Bytes freed. */
+        long bytes;
+        /** The UIDs of the objects deleted. */
+        final Set<String> deleted = new HashSet<String>();
+    }
+
+    /** A collector for the objects directory OBJECTS that keeps unmarked objects modified less than GRACE
+     * milliseconds ago, using up to PARALLELISM threads to mark. */
+    GarbageCollector(File objects, long grace, int parallelism) {
+        this.objects = objects;
+        this.cutoff = System.currentTimeMillis() - grace;
+        this.parallelism = parallelism;
+    }
+
+    /** A collector for the objects directory OBJECTS that keeps unmarked objects modified less than GRACE
+     * milliseconds ago, using the default number of threads. */
+    GarbageCollector(File objects, long grace) {
+        this(objects, grace, RangeTask.defaultParallelism());
+    }
+
+    /** Marks the commits COMMITS and everything they refer to, and the blobs BLOBS, and then the unmarked commits and
+     * trees within the grace period and everything they refer to, and returns the UIDs marked. */
+    Set<String> mark(Collection<String> commits, Collection<String> blobs) {
+        Set<String> result = ConcurrentHashMap.newKeySet();
+        result.addAll(blobs);
+        markFrom(commits, new ArrayList<String>(), result);
+
+        List<String> recentCommits = new ArrayList<String>();
+        List<String> recentTrees = new ArrayList<String>();
+        LooseObjectStore loose = new LooseObjectStore(objects);
+        for (String id : loose.iterate()) {
+            if (!result.contains(id)
+                    && loose.fileFor(id).lastModified() > cutoff) {
+                addRoot(loose, id, recentCommits, recentTrees);
+            }
+        }
+        PackedObjectStore packed = new PackedObjectStore(objects);
+        for (PackFile pack : PackFile.packsIn(objects)) {
+            if (pack.getPackFile().lastModified() <= cutoff) {
+                continue;
+            }
+            for (String id : pack.ids()) {
+                if (!result.contains(id)) {
+                    addRoot(packed, id, recentCommits, recentTrees);
+                }
+            }
+        }
+        markFrom(recentCommits, recentTrees, result);
+        return result;
+    }
+
+    /** Marks the commits COMMITS and the trees TREES and everything they refer to in MARKED, which holds the UIDs
+     * marked so far. */
+    private void markFrom(Collection<String> commits, Collection<String> trees,
+                          Set<String> marked) {
+        CommitGraph graph = CommitGraph.load();
+        List<String> reachable = new ArrayList<String>();
+        Deque<String> pending = new ArrayDeque<String>(commits);
+        while (!pending.isEmpty()) {
+            String id = pending.pop();
+            if (id == null || id.isEmpty() || !marked.add(id)) {
+                continue;
+            }
+            reachable.add(id);
+            int pos = graph.position(id);
+            if (pos == CommitGraph.NONE) {
+                pending.addAll(Utils.readObject(id, Commit.class)
+                        .getParents());
+                continue;
+            }
+            for (int parent : new int[] {graph.parent(pos),
+                    graph.secondParent(pos)}) {
+                if (parent != CommitGraph.NONE) {
+                    pending.push(graph.id(parent));
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+            for (String id : reachable) {
+                tasks.add(new CommitTask(id, marked));
+            }
+            for (String id : trees) {
+                tasks.add(new TreeTask(id, marked));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Adds the object with UID ID in SOURCE to COMMITS if it is a commit, or to TREES if it is a tree, going by its
+     * header; objects that cannot be read are left to fsck. */
+    private static void addRoot(ObjectSource source, String id,
+                                List<String> commits, List<String> trees) {
+        byte[] head;
+        try (InputStream in = source.openStream(id)) {
+            head = in.readNBytes(HEAD);
+        } catch (IOException | IllegalArgumentException excp) {
+            return;
+        }
+        if (!Codec.isEncoded(head)) {
+            return;
+        } else if (head[2] == Codec.COMMIT) {
+            commits.add(id);
+        } else if (head[2] == Codec.TREE) {
+            trees.add(id);
+        }
+    }
+
+    /** Deletes the objects not in REACHABLE that are older than the grace period, unless DRYRUN, and returns what was
+     * or would have been deleted.  NAMEHINTS are passed on to any pack that is rewritten. */
+    Result sweep(Set<String> reachable, Map<String, String> nameHints,
+                 boolean dryRun) throws IOException {
+        Result result = new Result();
+        result.reachable = reachable.size();
+
+        LooseObjectStore loose = new LooseObjectStore(objects);
+        for (String id : loose.iterate()) {
+            if (reachable.contains(id)) {
+                continue;
+            }
+            File file = loose.fileFor(id);
+            if (file.lastModified() > cutoff) {
+                result.recent += 1;
+                continue;
+            }
+            result.loose += 1;
+            result.bytes += file.length();
+            result.deleted.add(id);
+            if (!dryRun) {
+                loose.delete(id);
+            }
+        }
+
+        for (PackFile pack : PackFile.packsIn(objects)) {
+            Set<String> dropped = new HashSet<String>();
+            for (String id : pack.ids()) {
+                if (!reachable.contains(id)) {
+                    dropped.add(id);
+                }
+            }
+            if (dropped.isEmpty()) {
+                continue;
+            } else if (pack.getPackFile().lastModified() > cutoff) {
+                result.recent += dropped.size();
+                continue;
+            }
+            result.deleted.addAll(dropped);
+            result.packed += dropped.size();
+            long before = pack.getPackFile().length() + idxFile(pack).length();
+            if (dryRun) {
+                result.bytes += before * dropped.size() / pack.size();
+                continue;
+            }
+            List<String> kept = new ArrayList<String>();
+            for (String id : pack.ids()) {
+                if (!dropped.contains(id)) {
+                    kept.add(id);
+                }
+            }
+            long after = 0;
+            if (!kept.isEmpty()) {
+                PackFile replacement = PackFile.write(objects, kept,
+                        new PackedObjectStore(objects), nameHints);
+                after = replacement.getPackFile().length()
+                    + idxFile(replacement).length();
+            }
+            pack.delete();
+            result.bytes += before - after;
+        }
+
+        sweepChunks(cutoff, result, dryRun);
+        return result;
+    }
+
+    /** Deletes the chunks that no chunked blob kept by a sweep whose results so far are RESULT refers to and that
+     * were last modified before CUTOFF, unless DRYRUN, counting them in RESULT as loose objects.  Only a repository
+     * that has chunks pays for reading every object kept to find the chunked blobs. */
+    private void sweepChunks(long cutoff, Result result, boolean dryRun) {
+        File dir = new File(objects, ChunkedObjectStore.CHUNKS);
+        if (!dir.isDirectory()) {
+            return;
+        }
+        ChunkedObjectStore store = ChunkedObjectStore.open(objects);
+        Set<String> live = new HashSet<String>();
+        for (String id : store.iterate()) {
+            if (!result.deleted.contains(id)) {
+                ChunkedObjectStore.ChunkList list = store.chunkList(id);
+                if (list != null) {
+                    live.addAll(list.ids);
+                }
+            }
+        }
+        LooseObjectStore chunks = new LooseObjectStore(dir);
+        for (String id : chunks.iterate()) {
+            File file = chunks.fileFor(id);
+            if (live.contains(id)) {
+                continue;
+            } else if (file.lastModified() > cutoff) {
+                result.recent += 1;
+                continue;
+            }
+            result.loose += 1;
+            result.bytes += file.length();
+            if (!dryRun) {
+                chunks.delete(id);
+            }
+        }
+    }
+
+    /** Returns the index file of PACK. */
+    private static File idxFile(PackFile pack) {
+        String path = pack.getPackFile().getPath();
+        return new File(path.substring(0, path.length() - ".pack".length())
+                + ".idx");
+    }
+
+    /** Marks what a commit refers to. */
+    private static class CommitTask extends RecursiveAction {
+        /** A task marking the tree, manifest or files of the commit with UID ID in MARKED. */
+        CommitTask(String id, Set<String> marked) {
+            this.id = id;
+            this.marked = marked;
+        }
+
+        @Override
+        protected void compute() {
+            Commit commit = Utils.readObject(id, Commit.class);
+            String tree = commit.treeId();
+            if (tree != null) {
+                new TreeTask(tree, marked).compute();
+                return;
+            }
+            /* commits written before trees name a manifest, or carry their files inline. */
+            if (commit.getManifest() != null) {
+                marked.add(commit.getManifest());
+            }
+            marked.addAll(commit.getBlobReference().values());
+        }
+
+        /** The commit. */
+        private final String id;
+        /** The UIDs marked so far. */
+        private final Set<String> marked;
+    }
+
+    /** Marks a tree and what it refers to. */
+    private static class TreeTask extends RecursiveAction {
+        /** A task marking the tree with UID ID and everything below it in MARKED, unless it is marked already. */
+        TreeTask(String id, Set<String> marked) {
+            this.id = id;
+            this.marked = marked;
+        }
+
+        @Override
+        protected void compute() {
+            if (!marked.add(id)) {
+                return;
+            }
+            Tree tree = Tree.read(id);
+            marked.addAll(tree.files().values());
+            List<TreeTask> subtrees = new ArrayList<TreeTask>();
+            for (String subtree : tree.trees().values()) {
+                if (!marked.contains(subtree)) {
+                    subtrees.add(new TreeTask(subtree, marked));
+                }
+            }
+            invokeAll(subtrees);
+        }
+
+        /** The tree. */
+        private final String id;
+        /** The UIDs marked so far. */
+        private final Set<String> marked;
+    }
+
+    /** Bytes of an object read to tell its kind. */
+    private static final int HEAD = 4;
+
+    /** The objects directory. */
+    private final File objects;
+    /** The time, in milliseconds since the epoch, after which unmarked objects modified are kept. */
+    private final long cutoff;
+    /** Most threads marking at once. */
+    private final int parallelism;
+}
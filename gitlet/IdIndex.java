@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/** A sorted index of the ids of all committed commits and blobs, kept in .gitlet/id-index, so that abbreviated ids
+ * can be resolved by binary search instead of by scanning every commit id.  Each record is a 20-byte id followed by a
+ * byte saying whether it names a commit or a blob.  Each commit adds its own id and the ids of the blobs it
+ * introduced.  The index is rebuilt from the commits if it is missing or damaged, and one holding fewer commits than
+ * the commit journal gets the commits it lacks, with all their blobs.
+ * @author Lila Chalabi
+ */
+class IdIndex {
+
+    /** Kind of a commit id. */
+    static final int COMMIT = 1;
+    /** Kind of a blob id. */
+    static final int BLOB = 2;
+
+    /** Returns the id index of the repository in the current directory, building it from the commits in the
+     * commit journal if there is none yet or it is damaged, and adding the commits of the journal it lacks. */
+    static IdIndex load() {
+        IdIndex index = new IdIndex(new File(System.getProperty("user.dir")
+                + "/.gitlet/id-index"));
+        CommitJournal journal = CommitJournal.load();
+        if (index.records.isValid()) {
+            long behind = journal.size()
+                - index.records.count(ID_BYTES, (byte) COMMIT);
+            if (behind > 0) {
+                for (String id : journal.missing(behind, i -> index.records
+                        .contains(record(i, COMMIT)))) {
+                    index.add(id, Utils.readObject(id, Commit.class)
+                            .getBlobReference().values());
+                }
+            }
+        } else {
+            List<byte[]> all = new ArrayList<byte[]>();
+            for (String id : journal) {
+                Commit commit = Utils.readObject(id, Commit.class);
+                all.add(record(id, COMMIT));
+                for (String blob : commit.getBlobReference().values()) {
+                    all.add(record(blob, BLOB));
+                }
+            }
+            index.records.rebuild(all);
+        }
+        return index;
+    }
+
+    /** The index stored in FILE. */
+    private IdIndex(File file) {
+        this.records = new SortedRecordFile(file, MAGIC, RECORD);
+    }
+
+    /** Returns up to LIMIT ids of kind KIND that start with the hexadecimal PREFIX, in sorted order. */
+    List<String> resolve(String prefix, int kind, int limit) {
+        String hex = prefix.toLowerCase();
+        if (!hex.matches("[0-9a-f]*") || hex.length() > Utils.UID_LENGTH) {
+            return new ArrayList<String>();
+        }
+        byte[] bytes = PackFile.toBytes(hex.substring(0,
+                hex.length() - hex.length() % 2));
+        List<String> result = new ArrayList<String>();
+        for (byte[] r : records.range(bytes, r -> r[ID_BYTES] == kind
+                && Utils.toHex(Arrays.copyOf(r, ID_BYTES)).startsWith(hex),
+                limit)) {
+            result.add(Utils.toHex(Arrays.copyOf(r, ID_BYTES)));
+        }
+        return result;
+    }
+
+    /** Adds the commit with id COMMITID and the blobs with ids BLOBS, and writes the index. */
+    void add(String commitID, Collection<String> blobs) {
+        List<byte[]> added = new ArrayList<byte[]>();
+        added.add(record(commitID, COMMIT));
+        for (String blob : blobs) {
+            added.add(record(blob, BLOB));
+        }
+        records.add(added);
+    }
+
+    /** Returns the record for ID of kind KIND. */
+    private static byte[] record(String id, int kind) {
+        byte[] result = Arrays.copyOf(PackFile.toBytes(id), RECORD);
+        result[ID_BYTES] = (byte) kind;
+        return result;
+    }
+
+    /** Layer magic. */
+    private static final byte[] MAGIC = {'G', 'I', 'D', 'L'};
+    /** Bytes in a binary id. */
+    private static final int ID_BYTES = 20;
+    /** Bytes in a record: the id and its kind. */
+    private static final int RECORD = ID_BYTES + 1;
+
+    /** The records. */
+    private final SortedRecordFile records;
+}
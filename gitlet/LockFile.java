@@ -0,0 +1,47 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/** The lock on a file under .gitlet that several processes update in place, such as the commit journal and the
+ * commit graph.  As with a ref, the lock is a file named after the one it guards with ".lock" added, held by whoever
+ * created it and released by deleting it.  Unlike a ref's compare-and-swap, which fails at once, taking one of these
+ * waits for the process holding it, since the update it guards has to happen.
+ * @author Lila Chalabi
+ */
+class LockFile {
+
+    /** Takes the lock on FILE, described as WHAT in errors, waiting up to TIMEOUT milliseconds for another process
+     * holding it, and returns the lock file, which the caller deletes to release it. */
+    static File acquire(File file, String what) {
+        File lock = new File(file.getPath() + ".lock");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            try {
+                Files.createFile(lock.toPath());
+                return lock;
+            } catch (FileAlreadyExistsException excp) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalArgumentException(what + " is locked; "
+                            + "remove " + lock + " if no gitlet command is "
+                            + "running");
+                }
+                try {
+                    Thread.sleep(RETRY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalArgumentException("interrupted");
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Milliseconds to wait for a lock before giving up. */
+    private static final long TIMEOUT = 10_000;
+    /** Milliseconds between attempts to take a lock. */
+    private static final long RETRY = 5;
+}
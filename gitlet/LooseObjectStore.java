@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** An ObjectStore keeping each object in its own compressed file, fanned out over 256 subdirectories by the first two
+ * hexadecimal digits of its id (objects/ab/cdef...), so that no directory grows past a manageable size.
+ *
+ * Repositories made before fan-out kept every object directly in the objects directory, some of them uncompressed;
+ * such objects are moved into their subdirectories the first time the store is opened, and uncompressed ones are still
+ * read as they are.
+ * @author Lila Chalabi
+ */
+class LooseObjectStore implements ObjectStore {
+
+    /** Marks the start of a compressed loose object.  The NUL keeps it from looking like the start of a text file or a
+     * serialized object. */
+    static final byte[] MAGIC = {0, 'G', 'L', 'Z'};
+
+    /** Size of the buffers used to stream object contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** A store over the objects directory OBJECTS, migrating any objects that are not yet fanned out. */
+    LooseObjectStore(File objects) {
+        this.objects = objects;
+        migrate();
+    }
+
+    @Override
+    public boolean has(String id) {
+        return id.length() == Utils.UID_LENGTH && fileFor(id).isFile();
+    }
+
+    @Override
+    public byte[] read(String id) {
+        try (InputStream in = openStream(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public InputStream openStream(String id) {
+        if (!has(id)) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        try {
+            return open(fileFor(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        if (has(id)) {
+            return;
+        }
+        File tmp = null;
+        try {
+            /* a store of chunks has no directory until its first chunk. */
+            objects.mkdirs();
+            tmp = File.createTempFile("tmp_obj_", null, objects);
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                deflateTo(new ByteArrayInputStream(contents), out, null);
+            }
+            install(tmp, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Reads IN once through a fixed-size buffer that feeds both the digest and the deflater; the deflated bytes go to
+     * a temporary file that is renamed into place only if the store does not already hold the object. */
+    @Override
+    public String write(InputStream in) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp_obj_", null, objects);
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                deflateTo(in, out, md);
+            }
+            String id = Utils.toHex(md.digest());
+            if (!has(id)) {
+                install(tmp, id);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** An object written before loose objects were compressed, or by storeRaw, is its own raw file. */
+    @Override
+    public File rawFile(String id) {
+        if (!has(id)) {
+            return null;
+        }
+        File file = fileFor(id);
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            return Arrays.equals(magic, MAGIC) ? null : file;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The uncompressed contents replace the loose object, if any, in one rename, so readers see one version or the
+     * other.  Contents that start with MAGIC would be taken for a compressed object, and are left as they are. */
+    @Override
+    public File storeRaw(String id, InputStream in) {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp_obj_", null, objects);
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (InputStream check = new FileInputStream(tmp)) {
+                if (Arrays.equals(check.readNBytes(MAGIC.length), MAGIC)) {
+                    return null;
+                }
+            }
+            tmp.setWritable(false, false);
+            File target = fileFor(id);
+            target.getParentFile().mkdirs();
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    @Override
+    public Iterable<String> iterate() {
+        List<String> result = new ArrayList<String>();
+        String[] shards = objects.list();
+        if (shards == null) {
+            return result;
+        }
+        Arrays.sort(shards);
+        for (String shard : shards) {
+            if (!isShard(shard)) {
+                continue;
+            }
+            List<String> names = Utils.plainFilenamesIn(new File(objects,
+                    shard));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH - 2) {
+                    result.add(shard + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Deletes the loose object with id ID, if there is one. */
+    void delete(String id) {
+        if (has(id)) {
+            File file = fileFor(id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+    }
+
+    /** Returns the file holding the object with id ID. */
+    File fileFor(String id) {
+        return new File(new File(objects, id.substring(0, 2)),
+                id.substring(2));
+    }
+
+    /** Moves the finished temporary file TMP into place as the object with id ID.  Another writer may have stored the
+     * same object in the meantime, which is fine: both wrote the same contents. */
+    private void install(File tmp, String id) throws IOException {
+        File target = fileFor(id);
+        target.getParentFile().mkdirs();
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException excp) {
+            return;
+        }
+    }
+
+    /** Writes MAGIC and then the deflated contents of IN to OUT, also feeding the uncompressed bytes to MD unless it is
+     * null. */
+    private static void deflateTo(InputStream in, OutputStream out,
+                                  MessageDigest md) throws IOException {
+        out.write(MAGIC);
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream zout =
+                new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                if (md != null) {
+                    md.update(buf, 0, n);
+                }
+                zout.write(buf, 0, n);
+            }
+            zout.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Returns a stream over the contents of the loose object FILE, inflating it if it was written compressed. */
+    static InputStream open(File file) throws IOException {
+        BufferedInputStream in =
+            new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        in.mark(MAGIC.length);
+        byte[] magic = new byte[MAGIC.length];
+        int n = in.readNBytes(magic, 0, magic.length);
+        if (n == magic.length && Arrays.equals(magic, MAGIC)) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                /** Frees the inflater's native memory too, which a stream given its own inflater leaves to the
+                 * garbage collector. */
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+        in.reset();
+        return in;
+    }
+
+    /** Moves objects kept directly in the objects directory, as repositories did before fan-out, into their
+     * subdirectories. */
+    private void migrate() {
+        List<String> names = Utils.plainFilenamesIn(objects);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.length() != Utils.UID_LENGTH
+                    || !name.matches("[0-9a-f]+")) {
+                continue;
+            }
+            File target = fileFor(name);
+            target.getParentFile().mkdirs();
+            try {
+                Files.move(new File(objects, name).toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns true iff NAME is the name of a fan-out subdirectory. */
+    private static boolean isShard(String name) {
+        return name.length() == 2 && Character.digit(name.charAt(0), 16) >= 0
+                && Character.digit(name.charAt(1), 16) >= 0;
+    }
+
+    /** The objects directory. */
+    private final File objects;
+}
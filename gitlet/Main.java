@@ -3,6 +3,7 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.lang.System;
+import java.util.Arrays;
 
 
 /** Driver class for Gitlet, the tiny version-control system.
@@ -11,10 +12,22 @@ import java.lang.System;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  The command is sent to the
+     *  repository's daemon if one is running. */
 
     public static void main(String... args)
             throws IOException, ClassNotFoundException {
+        if (args.length > 0 && !args[0].equals("init")
+                && !(args[0].equals("daemon") && args.length == 1)
+                && Daemon.forward(args, System.out)) {
+            return;
+        }
+        run(args);
+    }
+
+    /** Runs the command in ARGS in this process. */
+    static void run(String... args)
+            throws IOException, ClassNotFoundException {
 
         File gitlet = new File(".gitlet");
         Commands commands = new Commands();
@@ -25,6 +38,11 @@ public class Main {
         } else if (!args[0].equals("init") && !gitlet.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
+        } else if (!args[0].equals("init")) {
+            /* moves the branches and the list of commits out of the staging area of a repository written by an
+            earlier version before any command reads it. */
+            Refs.load();
+            CommitJournal.load();
         }
         switch (args[0]) {
         case "init":
@@ -35,11 +53,11 @@ public class Main {
             commands.init();
             break;
         case "add":
-            if (args.length != 2) {
+            if (args.length < 2) {
                 System.out.println("Incorrect operands.");
                 break;
             }
-            commands.add(args[1]);
+            commands.add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
             if (args.length < 2) {
@@ -67,6 +85,10 @@ public class Main {
             commands.globalLog();
             break;
         case "find":
+            if (args.length == 3 && args[1].equals("--grep")) {
+                commands.findContaining(args[2]);
+                break;
+            }
             if (args.length != 2) {
                 System.out.println("Incorrect operands.");
                 break;
@@ -74,21 +96,24 @@ public class Main {
             commands.find(args[1]);
             break;
         case "rm":
-            if (args.length != 2) {
+            if (args.length < 2) {
                 System.out.println("Incorrect operands.");
                 break;
             }
-            commands.rm(args[1]);
+            commands.rm(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "status":
-            if (args.length != 1) {
-                System.out.println("Incorrect operands.");
-                break;
-            }
-            commands.status();
+            status(commands, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "diff":
+            diff(commands, Arrays.copyOfRange(args, 1, args.length));
             break;
         case "checkout":
-            if (args.length == 3) {
+            if (args.length == 3 && args[2].equals("--stat")
+                    && !args[1].equals("--")) {
+                commands.branchCheckout(args[1], true);
+                break;
+            } else if (args.length == 3) {
                 if (!args[1].equals("--")) {
                     System.out.println("Incorrect operands.");
                     break;
@@ -124,18 +149,53 @@ public class Main {
             commands.rmbranch(args[1]);
             break;
         case "reset":
-            if (args.length != 2) {
+            if (args.length == 3 && args[2].equals("--stat")) {
+                commands.reset(args[1], true);
+                break;
+            } else if (args.length != 2) {
                 System.out.println("Incorrect operands.");
                 break;
             }
             commands.reset(args[1]);
             break;
         case "merge":
-            if (args.length != 2) {
+            merge(commands, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "repack":
+            if (args.length != 1) {
                 System.out.println("Incorrect operands.");
                 break;
             }
-            commands.merge(args[1]);
+            commands.repack();
+            break;
+        case "gc":
+            gc(commands, Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "chunk-stats":
+            if (args.length != 1) {
+                System.out.println("Incorrect operands.");
+                break;
+            }
+            commands.chunkStats();
+            break;
+        case "fsck":
+            if (args.length == 3 && args[1].equals("-j")
+                    && args[2].matches("[1-9][0-9]*")) {
+                commands.fsck(Integer.parseInt(args[2]));
+            } else if (args.length == 1) {
+                commands.fsck(0);
+            } else {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "daemon":
+            if (args.length == 1) {
+                Daemon.serve();
+            } else if (args.length == 2 && args[1].equals("--stop")) {
+                System.out.println("No daemon is running.");
+            } else {
+                System.out.println("Incorrect operands.");
+            }
             break;
         default :
             System.out.println("No command with that name exists.");
@@ -143,4 +203,105 @@ public class Main {
         }
     }
 
+    /** Runs merge with OPERANDS, which are BRANCH [--timings] [--renames=PERCENT | --no-renames]. */
+    private static void merge(Commands commands, String[] operands)
+            throws IOException, ClassNotFoundException {
+        if (operands.length == 0) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        boolean timings = false;
+        RenameDetector renames = new RenameDetector();
+        for (int i = 1; i < operands.length; i += 1) {
+            if (operands[i].equals("--timings")) {
+                timings = true;
+            } else if (operands[i].equals("--no-renames")) {
+                renames = null;
+            } else if (renames(operands[i]) != null) {
+                renames = renames(operands[i]);
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        commands.merge(operands[0], renames, timings);
+    }
+
+    /** Runs gc with OPERANDS, which are [--dry-run] [--grace=SECONDS]. */
+    private static void gc(Commands commands, String[] operands)
+            throws IOException {
+        boolean dryRun = false;
+        long grace = DEFAULT_GRACE;
+        for (String operand : operands) {
+            if (operand.equals("--dry-run")) {
+                dryRun = true;
+            } else if (operand.matches("--grace=[0-9]{1,9}")) {
+                grace = Long.parseLong(operand.substring("--grace=".length()))
+                    * 1000;
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        commands.gc(dryRun, grace);
+    }
+
+    /** Runs status with OPERANDS, which are [-j THREADS] [--renames[=PERCENT]]. */
+    private static void status(Commands commands, String[] operands) {
+        int parallelism = 0;
+        RenameDetector renames = null;
+        for (int i = 0; i < operands.length; i += 1) {
+            if (operands[i].equals("-j") && i + 1 < operands.length
+                    && operands[i + 1].matches("[1-9][0-9]*")) {
+                i += 1;
+                parallelism = Integer.parseInt(operands[i]);
+            } else if (renames(operands[i]) != null) {
+                renames = renames(operands[i]);
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        commands.status(parallelism, renames);
+    }
+
+    /** Returns the rename detector OPERAND asks for, if it is --renames or --renames=PERCENT, and null otherwise. */
+    private static RenameDetector renames(String operand) {
+        if (operand.equals("--renames")) {
+            return new RenameDetector();
+        } else if (operand.matches("--renames=(100|[1-9]?[0-9])")) {
+            return new RenameDetector(Integer.parseInt(
+                    operand.substring("--renames=".length())),
+                    RenameDetector.MAX_CANDIDATES);
+        }
+        return null;
+    }
+
+    /** Runs diff with OPERANDS, which are [--stat] [COMMIT [COMMIT]] [-- PATH...]. */
+    private static void diff(Commands commands, String[] operands)
+            throws IOException {
+        boolean stat = false;
+        int i = 0;
+        if (i < operands.length && operands[i].equals("--stat")) {
+            stat = true;
+            i += 1;
+        }
+        int commitsStart = i;
+        while (i < operands.length && !operands[i].equals("--")) {
+            i += 1;
+        }
+        String[] commits = Arrays.copyOfRange(operands, commitsStart, i);
+        String[] paths = i < operands.length
+            ? Arrays.copyOfRange(operands, i + 1, operands.length)
+            : new String[0];
+        if (commits.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        commands.diff(commits, paths, stat);
+    }
+
+    /** Milliseconds an unreachable object is kept by gc unless --grace says otherwise: two weeks. */
+    private static final long DEFAULT_GRACE = 14L * 24 * 60 * 60 * 1000;
+
 }
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** An ObjectStore held entirely in memory, for tests and benchmarks that should not touch the disk.
+ * @author Lila Chalabi
+ */
+class MemoryObjectStore implements ObjectStore {
+
+    @Override
+    public synchronized boolean has(String id) {
+        return objects.containsKey(id);
+    }
+
+    @Override
+    public synchronized byte[] read(String id) {
+        byte[] contents = objects.get(id);
+        if (contents == null) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        return contents.clone();
+    }
+
+    @Override
+    public InputStream openStream(String id) {
+        return new ByteArrayInputStream(read(id));
+    }
+
+    @Override
+    public synchronized void write(String id, byte[] contents) {
+        objects.putIfAbsent(id, contents.clone());
+    }
+
+    @Override
+    public String write(InputStream in) {
+        try {
+            byte[] contents = in.readAllBytes();
+            String id = Utils.sha1(contents);
+            write(id, contents);
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized Iterable<String> iterate() {
+        return new ArrayList<String>(objects.keySet());
+    }
+
+    /** The objects, by id. */
+    private final Map<String, byte[]> objects = new HashMap<String, byte[]>();
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Times CommitGraph.mergeBase on synthetic histories of growing size, next to the list-scanning split point search it
+ * replaced.  Run with java gitlet.MergeBaseBenchmark [MAXCOMMITS]; the time per search should double with the size of
+ * the history for mergeBase, and quadruple for the old search.
+ * @author Lila Chalabi
+ */
+public class MergeBaseBenchmark {
+
+    /** Runs the benchmark on histories of up to ARGS[0] commits. */
+    public static void main(String... args) throws IOException {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 16000;
+        System.out.println("shape    commits  mergeBase(ms)  old(ms)");
+        run("warmup", deep(max));
+        for (int n = 1000; n <= max; n *= 2) {
+            run("deep", deep(n));
+            run("branchy", branchy(n));
+        }
+    }
+
+    /** Times both searches on GRAPH, whose two heads are its last two commits, and prints a line labeled SHAPE. */
+    private static void run(String shape, Built graph) {
+        int a = graph.graph.position(graph.headA);
+        int b = graph.graph.position(graph.headB);
+        long start = System.nanoTime();
+        int base = CommitGraph.NONE;
+        for (int i = 0; i < REPEAT; i += 1) {
+            base = graph.graph.mergeBase(a, b);
+        }
+        double fast = (System.nanoTime() - start) / 1e6 / REPEAT;
+
+        start = System.nanoTime();
+        int old = oldSplitPoint(graph.graph, a, b);
+        double slow = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-8s %7d %14.3f %8.1f  %s%n", shape,
+                graph.graph.size(), fast, slow,
+                old == base ? "" : "(old search found a stale split point)");
+    }
+
+    /** The split point search used before the commit graph had generation numbers: the whole first-parent history
+     * of A in a list, then each ancestor of B looked up in it. */
+    private static int oldSplitPoint(CommitGraph graph, int a, int b) {
+        List<Integer> history = new ArrayList<Integer>();
+        for (int p = a; p != CommitGraph.NONE; p = graph.parent(p)) {
+            history.add(p);
+        }
+        for (int p = b; p != CommitGraph.NONE; p = graph.parent(p)) {
+            if (history.contains(p)) {
+                return p;
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** A linear history of N/2 commits followed by two branches of N/4 commits each. */
+    private static Built deep(int n) throws IOException {
+        Built result = new Built();
+        String trunk = result.commit();
+        for (int i = 1; i < n / 2; i += 1) {
+            trunk = result.commit(trunk);
+        }
+        String a = trunk;
+        String b = trunk;
+        for (int i = 0; i < n / 4; i += 1) {
+            a = result.commit(a);
+            b = result.commit(b);
+        }
+        result.headA = a;
+        result.headB = b;
+        return result;
+    }
+
+    /** A history of N commits on two branches that are merged into each other every ten commits, so that the best
+     * common ancestor of the two heads is recent but both histories are long. */
+    private static Built branchy(int n) throws IOException {
+        Built result = new Built();
+        String a = result.commit();
+        String b = result.commit(a);
+        for (int i = 2; i < n; i += 2) {
+            if (i % 20 == 0) {
+                a = result.commit(a, b);
+            } else {
+                a = result.commit(a);
+            }
+            b = result.commit(b);
+        }
+        result.headA = a;
+        result.headB = b;
+        return result;
+    }
+
+    /** A commit graph under construction in a temporary file. */
+    private static class Built {
+        /** An empty graph. */
+        Built() throws IOException {
+            File file = File.createTempFile("commit-graph", null);
+            file.delete();
+            file.deleteOnExit();
+            graph = CommitGraph.open(file);
+        }
+
+        /** Adds a commit with parents PARENTS and returns its id. */
+        String commit(String... parents) {
+            String id = Utils.sha1("commit", Integer.toString(count));
+            count += 1;
+            graph.add(id, new ArrayList<String>(Arrays.asList(parents)),
+                    count, "");
+            return id;
+        }
+
+        /** The graph. */
+        final CommitGraph graph;
+        /** Number of commits made. */
+        int count;
+        /** The two heads searched from. */
+        String headA, headB;
+    }
+
+    /** Number of times each mergeBase search is repeated. */
+    private static final int REPEAT = 20;
+}
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Times ThreeWayMerge.merge on synthetic files.  Run with java gitlet.MergeBenchmark [LINES]; each merge is of a
+ * file of LINES lines (200000 by default) with two versions: one with a few hundred scattered edits on each side, which
+ * merge cleanly, one where each side appends its own lines, which conflict at the end, and one where each side has
+ * the base's lines in a different random order, which is the worst case of the diff.
+ * @author Lila Chalabi
+ */
+public class MergeBenchmark {
+
+    /** Runs the benchmark on files of ARGS[0] lines. */
+    public static void main(String... args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(1);
+        String[] base = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            base[i] = "line " + i + " of the base " + random.nextInt() + "\n";
+        }
+        byte[] o = join(base);
+
+        String[] ours = base.clone();
+        String[] theirs = base.clone();
+        for (int i = 0; i < EDITS; i += 1) {
+            int at = (2 * i * lines) / (2 * EDITS);
+            ours[at] = "ours " + at + "\n";
+            theirs[at + lines / (2 * EDITS)] = "theirs " + at + "\n";
+        }
+        System.out.println("case        lines  conflicts  ms");
+        run("warmup", o, join(ours), join(theirs));
+        run("scattered", o, join(ours), join(theirs));
+        run("appended", o, join(base, "ours\n"), join(base, "theirs\n"));
+
+        run("shuffled", o, join(shuffle(base, random)),
+                join(shuffle(base, random)));
+    }
+
+    /** Returns a copy of LINES in an order chosen by RANDOM. */
+    private static String[] shuffle(String[] lines, Random random) {
+        List<String> result = new ArrayList<String>(Arrays.asList(lines));
+        Collections.shuffle(result, random);
+        return result.toArray(new String[0]);
+    }
+
+    /** Merges OURS and THEIRS with BASE and prints a line labeled NAME with the time it took. */
+    private static void run(String name, byte[] base, byte[] ours,
+                            byte[] theirs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        int conflicts = ThreeWayMerge.merge(base, ours, theirs, out);
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-10s %7d %10d  %.1f%n", name,
+                new Diff.Lines(base).size(), conflicts, ms);
+    }
+
+    /** Returns the UTF-8 bytes of LINES, followed by EXTRA. */
+    private static byte[] join(String[] lines, String... extra) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line);
+        }
+        for (String line : extra) {
+            result.append(line);
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Number of lines changed on each side in the scattered case. */
+    private static final int EDITS = 300;
+}
@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/** The result of merging one commit into another, worked out in memory before anything on disk changes.  Planning
+ * lists the files either branch changed since the split point, by comparing trees.  Resolving decides the outcome for
+ * each of those files independently, in parallel: keep the current version, take the given one, delete the file, or
+ * merge the two versions line by line, storing the merged contents as a blob.  Applying then deletes and writes the
+ * working files, again in parallel, and stages the outcome in a staging area held in memory, which the merge commit
+ * reads; the staging file is written once, by that commit.  When one branch renamed a file the other changed in
+ * place, the change is merged into the file at its new name rather than conflicting with its removal.  If the commit
+ * then cannot move the branch, because another process moved it first, rollback puts back the current commit's
+ * versions of the files written.  The time spent in each phase is kept for --timings.
+ * @author Lila Chalabi
+ */
+class MergeTransaction {
+
+    /** The outcome for one file. */
+    private static class Outcome {
+        /** The UID of the file's new contents, or null if it is deleted. */
+        String id;
+        /** The merged contents, if they are not a version either branch has. */
+        byte[] merged;
+        /** True iff the file is deleted. */
+        boolean delete;
+        /** True iff the merged contents hold a conflict. */
+        boolean conflict;
+    }
+
+    /** A merge of GIVEN into CURR, whose split point is SPLIT, following the renames RENAMES finds unless it is
+     * null, using up to PARALLELISM threads. */
+    MergeTransaction(Commit split, Commit curr, Commit given,
+                     RenameDetector renames, int parallelism) {
+        this.split = split;
+        this.curr = curr;
+        this.given = given;
+        this.renames = renames;
+        this.parallelism = parallelism;
+    }
+
+    /** A merge of GIVEN into CURR, whose split point is SPLIT, following the renames RENAMES finds unless it is
+     * null, using the default number of threads. */
+    MergeTransaction(Commit split, Commit curr, Commit given,
+                     RenameDetector renames) {
+        this(split, curr, given, renames, RangeTask.defaultParallelism());
+    }
+
+    /** Works out the merge and applies it to the working directory and to SA, the staging area of the next commit,
+     * recording the files written in CACHE and then writing CACHE.  Returns true iff there was a conflict. */
+    boolean apply(StagedArea sA, StatCache cache) {
+        long start = System.nanoTime();
+        Map<String, String[]> currChanges = new TreeMap<String, String[]>();
+        Map<String, String[]> givenChanges = new TreeMap<String, String[]>();
+        Tree.diff(split.getTree(), curr.getTree(), "", currChanges);
+        Tree.diff(split.getTree(), given.getTree(), "", givenChanges);
+        Set<String> all = new TreeSet<String>(currChanges.keySet());
+        all.addAll(givenChanges.keySet());
+        Map<String, String[]> planned = new TreeMap<String, String[]>();
+        for (String path : all) {
+            String[] c = currChanges.get(path);
+            String[] g = givenChanges.get(path);
+            String sID = c != null ? c[0] : g[0];
+            String cID = c != null ? c[1] : sID;
+            planned.put(path, new String[] {sID, cID,
+                g != null ? g[1] : sID, cID});
+        }
+        if (renames != null) {
+            followRenames(currChanges, givenChanges, planned, CURR);
+            followRenames(givenChanges, currChanges, planned, GIVEN);
+        }
+        paths = new ArrayList<String>(planned.keySet());
+        versions = planned.values().toArray(new String[0][]);
+        outcomes = new Outcome[paths.size()];
+        long plannedAt = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeTask(i -> outcomes[i] = outcome(versions[i]),
+                    0, outcomes.length, BATCH));
+            long resolved = System.nanoTime();
+
+            for (int i = 0; i < outcomes.length; i += 1) {
+                if (outcomes[i] != null && outcomes[i].delete) {
+                    Utils.deleteWorkingFile(paths.get(i));
+                }
+            }
+            pool.invoke(new RangeTask(i -> write(paths.get(i), outcomes[i]),
+                    0, outcomes.length, BATCH));
+
+            boolean conflict = false;
+            for (int i = 0; i < outcomes.length; i += 1) {
+                Outcome outcome = outcomes[i];
+                String path = paths.get(i);
+                if (outcome == null) {
+                    continue;
+                } else if (outcome.delete) {
+                    if (!sA.toDelete.contains(path)) {
+                        sA.toDelete.add(path);
+                    }
+                } else {
+                    if (!outcome.id.equals(versions[i][CURRENT])) {
+                        sA.stagedMap.put(path, outcome.id);
+                    }
+                    StatCache.Stat stat = StatCache.stat(path);
+                    if (stat != null) {
+                        cache.record(path, stat, outcome.id);
+                    }
+                }
+                conflict |= outcome.conflict;
+            }
+            cache.save();
+            long applied = System.nanoTime();
+            timings = String.format("plan %.1f ms, resolve %.1f ms, "
+                    + "apply %.1f ms", (plannedAt - start) / 1e6,
+                    (resolved - plannedAt) / 1e6, (applied - resolved) / 1e6);
+            return conflict;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Undoes the changes the last apply made to the working directory, giving each file it deleted or wrote its
+     * version in the current commit again.  The staging area it changed is the caller's to drop. */
+    void rollback() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeTask(i -> {
+                if (outcomes[i] == null) {
+                    return;
+                } else if (versions[i][CURRENT] == null) {
+                    Utils.deleteWorkingFile(paths.get(i));
+                } else {
+                    Utils.copyObject(versions[i][CURRENT],
+                            new File(paths.get(i)));
+                }
+            }, 0, outcomes.length, BATCH));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Returns the time spent in each phase of the last apply. */
+    String timings() {
+        return timings;
+    }
+
+    /** Makes each file that the branch of CHANGES, the changes of one branch since the split point, renamed and
+     * that OTHER, the other branch's, changed in place be merged at its new path: in PLANNED, the versions of each
+     * file to merge, the new path gets the split point's and the other branch's versions of the old path, and the
+     * old path the split point's version on the other branch's side, which makes its removal stand.  SIDE is the
+     * index of the branch of CHANGES in PLANNED. */
+    private void followRenames(Map<String, String[]> changes,
+                               Map<String, String[]> other,
+                               Map<String, String[]> planned, int side) {
+        Map<String, String> removed = new TreeMap<String, String>();
+        Map<String, String> added = new TreeMap<String, String>();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String[] ids = e.getValue();
+            String[] theirs = other.get(e.getKey());
+            if (ids[1] == null && theirs != null && theirs[1] != null) {
+                removed.put(e.getKey(), ids[0]);
+            } else if (ids[0] == null && theirs == null) {
+                added.put(e.getKey(), ids[1]);
+            }
+        }
+        if (removed.isEmpty() || added.isEmpty()) {
+            return;
+        }
+        int otherSide = side == CURR ? GIVEN : CURR;
+        for (RenameDetector.Rename rename : renames.detect(removed, added,
+                new TreeMap<String, String>())) {
+            String[] from = planned.get(rename.source);
+            String[] to = planned.get(rename.target);
+            to[BASE] = from[BASE];
+            to[otherSide] = from[otherSide];
+            from[otherSide] = from[BASE];
+        }
+    }
+
+    /** Returns the outcome for a file whose versions in the split point, the current commit and the given commit
+     * and whose version in the current commit at its own path, which differs if the file was renamed, are IDS, any of
+     * which are null where the commit does not track the file, or null if the file is left as it is. */
+    private static Outcome outcome(String[] ids) {
+        Outcome result = resolve(ids);
+        if (result != null || Objects.equals(ids[CURR], ids[CURRENT])) {
+            return result;
+        }
+        result = new Outcome();
+        result.id = ids[CURR];
+        result.delete = ids[CURR] == null;
+        return result;
+    }
+
+    /** Returns the outcome for a file whose versions in the split point, the current commit and the given commit
+     * have UIDS, any of which are null where the commit does not track the file, or null if the current version is
+     * kept. */
+    private static Outcome resolve(String[] ids) {
+        String sID = ids[0];
+        String cID = ids[1];
+        String gID = ids[2];
+        Outcome result = new Outcome();
+        if (Objects.equals(sID, cID)) {
+            /* only the given branch changed the file, so its version is taken. */
+            if (gID == null) {
+                result.delete = true;
+            } else {
+                result.id = gID;
+            }
+            return result;
+        } else if (Objects.equals(sID, gID) || Objects.equals(cID, gID)) {
+            /* only the current branch changed the file, or both changed it in the same way. */
+            return null;
+        }
+
+        /* both branches changed the file: their changes are merged line by line and only the regions they changed
+        differently are conflicts; a file deleted in one branch is a conflict as a whole. */
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        try {
+            if (cID != null && gID != null) {
+                result.conflict = ThreeWayMerge.merge(contents(sID),
+                        contents(cID), contents(gID), merged) > 0;
+            } else {
+                ThreeWayMerge.conflict(contents(cID), contents(gID), merged);
+                result.conflict = true;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        result.merged = merged.toByteArray();
+        result.id = Utils.objectStore().write(
+                new ByteArrayInputStream(result.merged));
+        return result;
+    }
+
+    /** Gives the working file at PATH the contents OUTCOME calls for, if it is not null or a deletion. */
+    private static void write(String path, Outcome outcome) {
+        if (outcome == null || outcome.delete) {
+            return;
+        }
+        File file = new File(path);
+        if (outcome.merged == null) {
+            Utils.copyObject(outcome.id, file);
+            return;
+        }
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        /* a checked-out file may be a link to its blob, so it is replaced rather than written into. */
+        file.delete();
+        Utils.writeContents(file, (Object) outcome.merged);
+    }
+
+    /** Returns the contents of the blob with UID ID, or no bytes if ID is null or the blob is missing. */
+    private static byte[] contents(String id) {
+        if (id == null || !Utils.objectExists(id)) {
+            return new byte[0];
+        }
+        return Utils.readObjectContents(id);
+    }
+
+    /** Index of a file's version in the split point. */
+    private static final int BASE = 0;
+    /** Index of a file's version in the current commit, the one merged, which may be at another path when the
+     * file was renamed. */
+    private static final int CURR = 1;
+    /** Index of a file's version in the given commit. */
+    private static final int GIVEN = 2;
+    /** Index of the version in the current commit at the file's own path, which the working file holds. */
+    private static final int CURRENT = 3;
+    /** Most files handled by one task without splitting. */
+    private static final int BATCH = 8;
+
+    /** The split point. */
+    private final Commit split;
+    /** The head of the current branch. */
+    private final Commit curr;
+    /** The head of the branch merged in. */
+    private final Commit given;
+    /** Finds the renames followed, or null. */
+    private final RenameDetector renames;
+    /** Most threads working at once. */
+    private final int parallelism;
+    /** The time spent in each phase, once applied. */
+    private String timings = "";
+    /** The files the last apply worked out an outcome for. */
+    private List<String> paths = new ArrayList<String>();
+    /** The versions of each of them, indexed as BASE, CURR, GIVEN and CURRENT. */
+    private String[][] versions = new String[0][];
+    /** The outcome for each of them, or null where a file was left as it was. */
+    private Outcome[] outcomes = new Outcome[0];
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** An index from log messages to the commits that have them, kept in .gitlet/message-index, so that find looks up a
+ * message instead of reading the message of every commit.
+ *
+ * Each record is an eight-byte key followed by a 20-byte commit id.  Every commit gets one record keyed by a hash of
+ * its whole message, and one for each distinct three-character run (trigram) of its lower-cased message, which answers
+ * substring searches: a message containing a text contains every trigram of it.  A key is the kind of the record, 'm'
+ * or 't', followed by a hash, so a hit is only a candidate and callers check it against the real message, which the
+ * commit graph holds.  The index is rebuilt from the commit graph if it is missing or damaged, and one with fewer
+ * message records than the graph has commits gets the commits it lacks.
+ * @author Lila Chalabi
+ */
+class MessageIndex {
+
+    /** Length of the runs of characters indexed for substring search. */
+    static final int GRAM = 3;
+
+    /** Returns the message index of the repository in the current directory, building it from the commit graph if
+     * there is none yet or it is damaged, and adding the commits of the graph it lacks. */
+    static MessageIndex load() {
+        MessageIndex index = new MessageIndex(new File(System.getProperty(
+                "user.dir") + "/.gitlet/message-index"));
+        CommitGraph graph = CommitGraph.load();
+        if (index.records.isValid()) {
+            long behind = graph.size()
+                - index.records.count(0, (byte) MESSAGE.charAt(0));
+            if (behind > 0) {
+                /* the graph has every commit of the journal, so the journal lists those the index lacks. */
+                for (String id : CommitJournal.load().missing(behind,
+                        i -> index.has(i, graph))) {
+                    index.add(id, graph.message(graph.position(id)));
+                }
+            }
+        } else {
+            List<byte[]> all = new ArrayList<byte[]>();
+            for (int pos = 0; pos < graph.size(); pos += 1) {
+                all.addAll(records(graph.id(pos), graph.message(pos)));
+            }
+            index.records.rebuild(all);
+        }
+        return index;
+    }
+
+    /** The index stored in FILE. */
+    private MessageIndex(File file) {
+        this.records = new SortedRecordFile(file, MAGIC, RECORD);
+    }
+
+    /** Returns the ids of the commits that may have the log message MESSAGE. */
+    List<String> exact(String message) {
+        return ids(key(MESSAGE, message));
+    }
+
+    /** Returns the ids of the commits whose log messages may contain TEXT, ignoring case, or null if TEXT is shorter
+     * than GRAM and so cannot be looked up. */
+    List<String> containing(String text) {
+        Set<String> grams = grams(text);
+        if (grams.isEmpty()) {
+            return null;
+        }
+        Set<String> result = null;
+        for (String gram : grams) {
+            List<String> ids = ids(key(GRAM_KIND, gram));
+            if (result == null) {
+                result = new LinkedHashSet<String>(ids);
+            } else {
+                result.retainAll(ids);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return new ArrayList<String>(result);
+    }
+
+    /** Adds the commit with id ID and log message MESSAGE, and writes the index. */
+    void add(String id, String message) {
+        records.add(records(id, message));
+    }
+
+    /** Returns true iff the index holds the commit with id ID, whose message GRAPH holds. */
+    private boolean has(String id, CommitGraph graph) {
+        int pos = graph.position(id);
+        return pos == CommitGraph.NONE || records.contains(record(
+                key(MESSAGE, graph.message(pos)), PackFile.toBytes(id)));
+    }
+
+    /** Returns the ids in the records with key KEY. */
+    private List<String> ids(byte[] key) {
+        List<String> result = new ArrayList<String>();
+        for (byte[] r : records.range(key, Integer.MAX_VALUE)) {
+            result.add(Utils.toHex(Arrays.copyOfRange(r, KEY_BYTES, RECORD)));
+        }
+        return result;
+    }
+
+    /** Returns the records for the commit with id ID and log message MESSAGE. */
+    private static Collection<byte[]> records(String id, String message) {
+        byte[] rawID = PackFile.toBytes(id);
+        List<byte[]> result = new ArrayList<byte[]>();
+        result.add(record(key(MESSAGE, message), rawID));
+        for (String gram : grams(message)) {
+            result.add(record(key(GRAM_KIND, gram), rawID));
+        }
+        return result;
+    }
+
+    /** Returns the distinct runs of GRAM characters of TEXT, lower-cased. */
+    private static Set<String> grams(String text) {
+        String lower = text.toLowerCase();
+        Set<String> result = new LinkedHashSet<String>();
+        for (int i = 0; i + GRAM <= lower.length(); i += 1) {
+            result.add(lower.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /** Returns the record with key KEY for the commit with binary id RAWID. */
+    private static byte[] record(byte[] key, byte[] rawID) {
+        byte[] result = Arrays.copyOf(key, RECORD);
+        System.arraycopy(rawID, 0, result, KEY_BYTES, rawID.length);
+        return result;
+    }
+
+    /** Returns the key for TEXT of kind KIND: KIND followed by the leading bytes of a SHA-1 hash of both. */
+    private static byte[] key(String kind, String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(kind.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(text.getBytes(StandardCharsets.UTF_8));
+            byte[] result = new byte[KEY_BYTES];
+            result[0] = (byte) kind.charAt(0);
+            System.arraycopy(md.digest(), 0, result, 1, KEY_BYTES - 1);
+            return result;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Kind of the record keyed by a whole message. */
+    private static final String MESSAGE = "m";
+    /** Kind of a record keyed by a trigram. */
+    private static final String GRAM_KIND = "t";
+    /** Layer magic.  Indices written before keys started with their kind had the magic GMSG, and are rebuilt. */
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'I'};
+    /** Bytes in a key. */
+    private static final int KEY_BYTES = 8;
+    /** Bytes in a record: a key and a binary commit id. */
+    private static final int RECORD = KEY_BYTES + 20;
+
+    /** The records. */
+    private final SortedRecordFile records;
+}
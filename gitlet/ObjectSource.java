@@ -0,0 +1,31 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+
+/** A read-only source of content-addressed objects, each named by a 40-character hexadecimal SHA-1 id.  Sources that
+ * can also be written to are ObjectStores; those that cannot, such as packs, which only the repack command writes,
+ * implement this alone, so that no write can reach them.
+ * @author Lila Chalabi
+ */
+interface ObjectSource {
+
+    /** Returns true iff this source holds an object with id ID. */
+    boolean has(String id);
+
+    /** Returns the contents of the object with id ID.  Throws IllegalArgumentException if there is no such object. */
+    byte[] read(String id);
+
+    /** Returns a stream over the contents of the object with id ID, which the caller must close.  Throws
+     * IllegalArgumentException if there is no such object. */
+    InputStream openStream(String id);
+
+    /** Returns a file holding exactly the contents of the object with id ID, which callers must not change, or null
+     * if this source does not keep the object that way. */
+    default File rawFile(String id) {
+        return null;
+    }
+
+    /** Returns the ids of all objects in this source. */
+    Iterable<String> iterate();
+}
@@ -0,0 +1,31 @@
+package gitlet;
+
+import java.io.File;
+import java.io.InputStream;
+
+/** A store of content-addressed objects (blobs and commits), each named by a 40-character hexadecimal SHA-1 id.  All
+ * reads and writes of objects go through an ObjectStore, so that where and how the objects are kept (loose files,
+ * packs, memory) is invisible to the commands.
+ * @author Lila Chalabi
+ */
+interface ObjectStore extends ObjectSource {
+
+    /** Stores CONTENTS as the object with id ID, unless an object with that id is already stored. */
+    void write(String id, byte[] contents);
+
+    /** Stores everything remaining in IN as an object named by the SHA-1 of those bytes, unless that object is already
+     * stored, and returns its id.  Does not close IN. */
+    String write(InputStream in);
+
+    /** Keeps the object with id ID, whose contents are everything remaining in IN, uncompressed in a read-only file
+     * from now on, and returns the file, or returns null if this store cannot.  Does not close IN. */
+    default File storeRaw(String id, InputStream in) {
+        return null;
+    }
+
+    /** Returns the store for the objects directory OBJECTS of a repository: loose objects, falling back to packs,
+     * with large blobs kept as chunks if the repository asks for it. */
+    static ObjectStore open(File objects) {
+        return ChunkedObjectStore.open(objects);
+    }
+}
@@ -0,0 +1,216 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class ObjectStoreTest {
+
+    /** Checks the behavior every ObjectStore must share on STORE. */
+    private void checkStore(ObjectStore store) {
+        byte[] contents = "hello, gitlet\n".getBytes(StandardCharsets.UTF_8);
+        String id = store.write(new ByteArrayInputStream(contents));
+        assertEquals(Utils.sha1(contents), id);
+        assertTrue(store.has(id));
+        assertArrayEquals(contents, store.read(id));
+        assertEquals(id, store.write(new ByteArrayInputStream(contents)));
+
+        String other = Utils.sha1("other");
+        assertFalse(store.has(other));
+        store.write(other, contents);
+        assertTrue(store.has(other));
+
+        int count = 0;
+        for (String ignored : store.iterate()) {
+            count += 1;
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testMemoryStore() {
+        checkStore(new MemoryObjectStore());
+    }
+
+    @Test
+    public void testCachingStore() throws IOException {
+        checkStore(new CachingObjectStore(new MemoryObjectStore(), 1 << 20));
+
+        int[] reads = new int[1];
+        MemoryObjectStore backing = new MemoryObjectStore() {
+            @Override
+            public byte[] read(String id) {
+                reads[0] += 1;
+                return super.read(id);
+            }
+        };
+        ObjectStore store = new CachingObjectStore(backing, 1600);
+        String small = store.write(new ByteArrayInputStream(new byte[50]));
+        String large = store.write(new ByteArrayInputStream(new byte[200]));
+        assertEquals(50, store.openStream(small).readAllBytes().length);
+        assertEquals(50, store.read(small).length);
+        store.read(small)[0] = 1;
+        assertEquals(0, store.read(small)[0]);
+        assertEquals(1, reads[0]);
+        store.read(large);
+        store.read(large);
+        assertEquals(3, reads[0]);
+
+        for (int i = 0; i < 40; i += 1) {
+            store.read(store.write(new ByteArrayInputStream(
+                    new byte[] {(byte) i})));
+        }
+        store.read(small);
+        assertEquals(43, reads[0]);
+        for (int i = 0; i < 20; i += 1) {
+            byte[] contents = new byte[99];
+            contents[0] = (byte) i;
+            store.read(store.write(new ByteArrayInputStream(contents)));
+        }
+        store.read(small);
+        assertEquals(64, reads[0]);
+    }
+
+    @Test
+    public void testLooseStore() throws IOException {
+        File objects = Files.createTempDirectory("objects").toFile();
+        checkStore(new LooseObjectStore(objects));
+    }
+
+    @Test
+    public void testLooseMigration() throws IOException {
+        File objects = Files.createTempDirectory("objects").toFile();
+        byte[] contents = "old\n".getBytes(StandardCharsets.UTF_8);
+        String id = Utils.sha1(contents);
+        Files.write(new File(objects, id).toPath(), contents);
+        LooseObjectStore store = new LooseObjectStore(objects);
+        assertFalse(new File(objects, id).exists());
+        assertTrue(store.fileFor(id).isFile());
+        assertArrayEquals(contents, store.read(id));
+    }
+
+    @Test
+    public void testRawFile() throws IOException {
+        File objects = Files.createTempDirectory("objects").toFile();
+        LooseObjectStore store = new LooseObjectStore(objects);
+        byte[] contents = "raw\n".getBytes(StandardCharsets.UTF_8);
+        String id = store.write(new ByteArrayInputStream(contents));
+        assertNull(store.rawFile(id));
+
+        /* expanding the object keeps it readable, and uncompressed. */
+        File raw = store.storeRaw(id, store.openStream(id));
+        assertEquals(store.fileFor(id), raw);
+        assertEquals(raw, store.rawFile(id));
+        assertFalse(Files.getPosixFilePermissions(raw.toPath())
+                .contains(PosixFilePermission.OWNER_WRITE));
+        assertArrayEquals(contents, Files.readAllBytes(raw.toPath()));
+        assertArrayEquals(contents, store.read(id));
+
+        /* contents that look compressed cannot be kept raw. */
+        byte[] tricky = {0, 'G', 'L', 'Z', 1};
+        String other = store.write(new ByteArrayInputStream(tricky));
+        assertNull(store.storeRaw(other, new ByteArrayInputStream(tricky)));
+        assertArrayEquals(tricky, store.read(other));
+    }
+
+    @Test
+    public void testChunkedStore() throws IOException {
+        File settings = File.createTempFile("chunked-blobs", null);
+        settings.delete();
+        checkStore(new ChunkedObjectStore(new MemoryObjectStore(),
+                new MemoryObjectStore(), settings));
+
+        MemoryObjectStore whole = new MemoryObjectStore();
+        MemoryObjectStore chunks = new MemoryObjectStore();
+        ObjectStore store = new ChunkedObjectStore(whole, chunks, settings);
+        byte[] contents = new byte[1 << 20];
+        new Random(42).nextBytes(contents);
+        String plain = store.write(new ByteArrayInputStream(contents));
+        assertEquals(Utils.sha1(contents), plain);
+        assertEquals(0, count(chunks));
+
+        /* with the setting, a large blob is stored as chunks and read back whole, under the same UID. */
+        Utils.writeContents(settings, "65536");
+        contents[0] += 1;
+        String id = store.write(new ByteArrayInputStream(contents));
+        assertEquals(Utils.sha1(contents), id);
+        assertTrue(ChunkedObjectStore.isChunkList(whole.read(id)));
+        assertArrayEquals(contents, store.read(id));
+        assertArrayEquals(contents, store.openStream(id).readAllBytes());
+        int before = count(chunks);
+        assertTrue(before >= contents.length / FastCdc.MAX_SIZE);
+        assertTrue(before <= contents.length / FastCdc.MIN_SIZE);
+
+        /* one changed byte in the middle changes only the chunk holding it, and perhaps the next. */
+        contents[contents.length / 2] += 1;
+        String edited = store.write(new ByteArrayInputStream(contents));
+        assertArrayEquals(contents, store.read(edited));
+        assertTrue(count(chunks) - before <= 2);
+
+        /* small blobs are kept whole, and chunked blobs are not expanded into raw copies. */
+        byte[] small = "small\n".getBytes(StandardCharsets.UTF_8);
+        String smallId = store.write(new ByteArrayInputStream(small));
+        assertArrayEquals(small, whole.read(smallId));
+        assertNull(store.storeRaw(id, store.openStream(id)));
+        settings.delete();
+    }
+
+    @Test
+    public void testBlobLikeChunkList() throws IOException {
+        File settings = File.createTempFile("chunked-blobs", null);
+        settings.delete();
+        MemoryObjectStore whole = new MemoryObjectStore();
+        MemoryObjectStore chunks = new MemoryObjectStore();
+        ObjectStore store = new ChunkedObjectStore(whole, chunks, settings);
+
+        /* without the setting, contents that start like a chunk list are still chunked, and read back as they were. */
+        byte[] tricky = "\0GCL, but not a chunk list\n"
+            .getBytes(StandardCharsets.UTF_8);
+        String id = store.write(new ByteArrayInputStream(tricky));
+        assertEquals(Utils.sha1(tricky), id);
+        assertFalse(Utils.sha1(whole.read(id)).equals(id));
+        assertArrayEquals(tricky, store.read(id));
+        assertArrayEquals(tricky, store.openStream(id).readAllBytes());
+
+        /* such contents stored whole, as they once were, hash to their UID and are read as they are. */
+        byte[] old = "\0GCL stored whole\n".getBytes(StandardCharsets.UTF_8);
+        String oldId = Utils.sha1(old);
+        whole.write(oldId, old);
+        assertArrayEquals(old, store.read(oldId));
+        assertArrayEquals(old, store.openStream(oldId).readAllBytes());
+
+        /* a chunk list whose chunks are not the blob it names is an error, not other contents. */
+        String wrong = Utils.sha1("wrong");
+        whole.write(wrong, whole.read(id));
+        try {
+            store.read(wrong);
+            fail("read chunks that do not match their blob");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains(wrong));
+        }
+        try {
+            store.openStream(wrong).readAllBytes();
+            fail("streamed chunks that do not match their blob");
+        } catch (IOException excp) {
+            assertTrue(excp.getMessage().contains(wrong));
+        }
+    }
+
+    /** Returns the number of objects in STORE. */
+    private static int count(ObjectStore store) {
+        int result = 0;
+        for (String ignored : store.iterate()) {
+            result += 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,501 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A packfile: many objects stored in one file, each either whole or as a delta against another object of the same
+ * pack, with a sorted index beside it mapping object ids to offsets in the pack.
+ *
+ * The pack (objects/pack/pack-SHA.pack) is the magic "GPAK", a version and an object count, followed by one entry per
+ * object: a type byte, for deltas the distance back to the base entry, the inflated length, and the deflated data.  It
+ * ends with the SHA-1 of everything before it, which also names the pack.  The index (pack-SHA.idx) is the magic
+ * "GIDX", a version, a 256-entry fan-out table of cumulative counts by first id byte, the sorted 20-byte ids and their
+ * 8-byte offsets.  Both are memory-mapped when read.
+ * @author Lila Chalabi
+ */
+class PackFile {
+
+    /** Entry holding a whole object. */
+    static final int FULL = 0;
+    /** Entry holding a delta against an earlier entry. */
+    static final int DELTA = 1;
+
+    /** Number of earlier objects each object is tried as a delta against. */
+    static final int WINDOW = 10;
+    /** Longest allowed chain of deltas. */
+    static final int MAX_DEPTH = 50;
+    /** Least size of a pack too large to write or read: a pack is mapped whole, so its offsets must fit in an int. */
+    static final long MAX_PACK = Integer.MAX_VALUE;
+
+    /** Opens the pack whose index is IDXFILE. */
+    PackFile(File idxFile) throws IOException {
+        String name = idxFile.getName();
+        this.packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (FileChannel idx = FileChannel.open(idxFile.toPath());
+             FileChannel pack = FileChannel.open(packFile.toPath())) {
+            if (pack.size() >= MAX_PACK) {
+                throw new IOException("pack larger than 2 GiB " + packFile);
+            }
+            this.index = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+            this.data = pack.map(FileChannel.MapMode.READ_ONLY, 0,
+                    pack.size());
+        }
+        byte[] magic = new byte[4];
+        index.get(0, magic, 0, 4);
+        if (!new String(magic, StandardCharsets.US_ASCII).equals("GIDX")
+                || index.getInt(4) != VERSION) {
+            throw new IOException("bad pack index " + idxFile);
+        }
+        this.count = index.getInt(FANOUT + 255 * 4);
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Returns true iff this pack holds the object with id ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the contents of the object with id ID, or null if it is not in this pack. */
+    byte[] read(String id) {
+        int i = find(id);
+        if (i < 0) {
+            return null;
+        }
+        return readAt(offset(i));
+    }
+
+    /** Returns the ids of all objects in this pack, in sorted order. */
+    List<String> ids() {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; i += 1) {
+            result.add(idAt(i));
+        }
+        return result;
+    }
+
+    /** Returns the number of objects stored as deltas in this pack. */
+    int deltas() {
+        int result = 0;
+        for (int i = 0; i < count; i += 1) {
+            if (data.get((int) offset(i)) == DELTA) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff the pack ends with the SHA-1 of everything before it and is named by that SHA-1, hashing the
+     * mapped file in place. */
+    boolean checksumMatches() {
+        int length = data.capacity() - ID_BYTES;
+        if (length < 0) {
+            return false;
+        }
+        MessageDigest md = sha1Digest();
+        ByteBuffer body = data.duplicate();
+        body.position(0).limit(length);
+        md.update(body);
+        byte[] trailer = new byte[ID_BYTES];
+        data.get(length, trailer, 0, ID_BYTES);
+        String name = packFile.getName();
+        return Arrays.equals(md.digest(), trailer)
+            && name.equals("pack-" + Utils.toHex(trailer) + ".pack");
+    }
+
+    /** Returns the pack file itself. */
+    File getPackFile() {
+        return packFile;
+    }
+
+    /** Deletes this pack and its index. */
+    void delete() {
+        String base = packFile.getPath();
+        base = base.substring(0, base.length() - ".pack".length());
+        synchronized (PackFile.class) {
+            OPEN.remove(base + ".idx");
+        }
+        new File(base + ".idx").delete();
+        packFile.delete();
+    }
+
+    /** Returns the position of ID in the sorted id table, or -1.  The fan-out table narrows the binary search to ids
+     * sharing the first byte. */
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(FANOUT + (first - 1) * 4);
+        int hi = index.getInt(FANOUT + first * 4) - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(idsStart() + mid * ID_BYTES, probe, 0, ID_BYTES);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the id at position I of the sorted id table. */
+    private String idAt(int i) {
+        byte[] raw = new byte[ID_BYTES];
+        index.get(idsStart() + i * ID_BYTES, raw, 0, ID_BYTES);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the pack offset of the object at position I of the id table. */
+    private long offset(int i) {
+        return index.getLong(idsStart() + count * ID_BYTES + i * 8);
+    }
+
+    /** Returns the start of the id table in the index. */
+    private int idsStart() {
+        return FANOUT + 256 * 4;
+    }
+
+    /** Returns the contents of the entry at OFFSET in the pack, resolving delta chains. */
+    private byte[] readAt(long offset) {
+        int pos = (int) offset;
+        int type = data.get(pos++);
+        long baseOffset = 0;
+        if (type == DELTA) {
+            long[] v = readVarint(data, pos);
+            baseOffset = offset - v[0];
+            pos = (int) v[1];
+        }
+        long[] len = readVarint(data, pos);
+        pos = (int) len[1];
+        byte[] raw = inflate(data, pos, (int) len[0]);
+        if (type == DELTA) {
+            return Delta.apply(readAt(baseOffset), raw);
+        }
+        return raw;
+    }
+
+    /** Inflates LENGTH bytes from the deflated stream starting at POS of BUF. */
+    private static byte[] inflate(ByteBuffer buf, int pos, int length) {
+        ByteBuffer in = buf.duplicate();
+        in.position(pos);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in);
+            byte[] out = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int k = inflater.inflate(out, n, length - n);
+                if (k == 0 && (inflater.finished()
+                        || inflater.needsInput())) {
+                    throw new IllegalArgumentException("truncated pack entry");
+                }
+                n += k;
+            }
+            return out;
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Reads a varint at POS of BUF, returning it and the position after it. */
+    private static long[] readVarint(ByteBuffer buf, int pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = buf.get(pos++) & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return new long[] {value, pos};
+            }
+            shift += 7;
+        }
+    }
+
+    /* LOOKUP ACROSS PACKS */
+
+    /** Returns the packs in the pack directory of the objects directory OBJECTS, opening them the first time. */
+    static synchronized List<PackFile> packsIn(File objects) {
+        File dir = new File(objects, "pack");
+        String[] names = dir.list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(names);
+        List<PackFile> result = new ArrayList<PackFile>();
+        for (String name : names) {
+            if (!name.endsWith(".idx")) {
+                continue;
+            }
+            File idx = new File(dir, name);
+            PackFile pack = OPEN.get(idx.getPath());
+            if (pack == null || !pack.packFile.exists()) {
+                try {
+                    pack = new PackFile(idx);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                OPEN.put(idx.getPath(), pack);
+            }
+            result.add(pack);
+        }
+        return result;
+    }
+
+    /** Returns the contents of the object with id ID from any pack of the objects directory OBJECTS, or null. */
+    static byte[] readPacked(File objects, String id) {
+        for (PackFile pack : packsIn(objects)) {
+            byte[] contents = pack.read(id);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        return null;
+    }
+
+    /* WRITING */
+
+    /** Writes a new pack and index into the pack directory of OBJECTS holding the objects with ids IDS, read from
+     * SOURCE.  NAMEHINTS maps blob ids to a file name they were committed under; objects are grouped by name, larger
+     * versions first, and tried as deltas against the WINDOW objects before them.  Each object is read once to learn
+     * its size and once more as it is written, so only the window is held in memory.  Returns the new pack.  The index
+     * is written last and renamed into place, so readers never see a pack without its entries.  Throws a
+     * GitletException if the pack would be MAX_PACK bytes or more. */
+    static PackFile write(File objects, Collection<String> ids,
+                          ObjectSource source, Map<String, String> nameHints)
+        throws IOException {
+        Map<String, Long> sizes = new HashMap<String, Long>();
+        for (String id : ids) {
+            try (InputStream in = source.openStream(id)) {
+                sizes.put(id, in.transferTo(OutputStream.nullOutputStream()));
+            }
+        }
+        List<String> order = new ArrayList<String>(sizes.keySet());
+        Collections.sort(order, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int cmp = hint(a).compareTo(hint(b));
+                if (cmp != 0) {
+                    return cmp;
+                }
+                return Long.compare(sizes.get(b), sizes.get(a));
+            }
+
+            private String hint(String id) {
+                String name = nameHints.get(id);
+                return name == null ? "" : name;
+            }
+        });
+
+        File dir = new File(objects, "pack");
+        dir.mkdirs();
+        File tmpPack = File.createTempFile("tmp_pack_", ".pack", dir);
+        Map<String, Long> offsets = new HashMap<String, Long>();
+        String name;
+        try {
+            name = writeEntries(tmpPack, order, source, offsets);
+            Files.move(tmpPack.toPath(), new File(dir, name + ".pack")
+                    .toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmpPack.delete();
+        }
+
+        List<String> sorted = new ArrayList<String>(order);
+        Collections.sort(sorted);
+        ByteBuffer idx = ByteBuffer.allocate(FANOUT + 256 * 4
+                + sorted.size() * (ID_BYTES + 8));
+        idx.put("GIDX".getBytes(StandardCharsets.US_ASCII));
+        idx.putInt(VERSION);
+        int[] fanout = new int[256];
+        for (String id : sorted) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int i = 0; i < 256; i += 1) {
+            total += fanout[i];
+            idx.putInt(total);
+        }
+        for (String id : sorted) {
+            idx.put(toBytes(id));
+        }
+        for (String id : sorted) {
+            idx.putLong(offsets.get(id));
+        }
+        File tmpIdx = File.createTempFile("tmp_idx_", ".idx", dir);
+        try {
+            Files.write(tmpIdx.toPath(), idx.array());
+            File idxFile = new File(dir, name + ".idx");
+            Files.move(tmpIdx.toPath(), idxFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            synchronized (PackFile.class) {
+                OPEN.remove(idxFile.getPath());
+            }
+            return new PackFile(idxFile);
+        } finally {
+            tmpIdx.delete();
+        }
+    }
+
+    /** Writes the entries of the objects with ids ORDER, in that order and read from SOURCE, to the pack file TMPPACK,
+     * recording their offsets in OFFSETS, and returns the name of the pack. */
+    private static String writeEntries(File tmpPack, List<String> order,
+                                       ObjectSource source,
+                                       Map<String, Long> offsets)
+        throws IOException {
+        MessageDigest md = sha1Digest();
+        Map<String, Integer> depth = new HashMap<String, Integer>();
+        LinkedHashMap<String, byte[]> window =
+            new LinkedHashMap<String, byte[]>();
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        try (RandomAccessFile out = new RandomAccessFile(tmpPack, "rw")) {
+            out.setLength(0);
+            entry.write("GPAK".getBytes(StandardCharsets.US_ASCII));
+            entry.write(ByteBuffer.allocate(8).putInt(VERSION)
+                    .putInt(order.size()).array());
+            md.update(entry.toByteArray());
+            out.write(entry.toByteArray());
+            long pos = entry.size();
+
+            for (String id : order) {
+                /* choose a base: bigger versions of a file come first, so later ones are stored as deltas against
+                them. */
+                byte[] target = source.read(id);
+                byte[] best = null;
+                String bestBase = null;
+                for (Map.Entry<String, byte[]> candidate : window.entrySet()) {
+                    if (depth.getOrDefault(candidate.getKey(), 0)
+                            >= MAX_DEPTH) {
+                        continue;
+                    }
+                    int limit = best == null ? target.length / 2 : best.length;
+                    byte[] delta = Delta.create(candidate.getValue(), target,
+                            limit);
+                    if (delta != null) {
+                        best = delta;
+                        bestBase = candidate.getKey();
+                    }
+                }
+
+                entry.reset();
+                byte[] raw;
+                if (best != null) {
+                    entry.write(DELTA);
+                    Delta.writeVarint(entry, pos - offsets.get(bestBase));
+                    raw = best;
+                    depth.put(id, depth.getOrDefault(bestBase, 0) + 1);
+                } else {
+                    entry.write(FULL);
+                    raw = target;
+                }
+                Delta.writeVarint(entry, raw.length);
+                entry.write(deflate(raw));
+                byte[] bytes = entry.toByteArray();
+                if (pos + bytes.length + ID_BYTES >= MAX_PACK) {
+                    throw Utils.error("Pack would be larger than 2 GiB.");
+                }
+                md.update(bytes);
+                out.write(bytes);
+                offsets.put(id, pos);
+                pos += bytes.length;
+
+                window.put(id, target);
+                if (window.size() > WINDOW) {
+                    window.remove(window.keySet().iterator().next());
+                }
+            }
+            byte[] checksum = md.digest();
+            out.write(checksum);
+            return "pack-" + Utils.toHex(checksum);
+        }
+    }
+
+    /** Returns the deflated form of RAW. */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Returns a fresh SHA-1 digest. */
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the 20 bytes denoted by the hexadecimal id ID. */
+    static byte[] toBytes(String id) {
+        byte[] result = new byte[id.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Format version of packs and indices. */
+    private static final int VERSION = 1;
+    /** Bytes in a binary object id. */
+    private static final int ID_BYTES = 20;
+    /** Offset of the fan-out table in an index. */
+    private static final int FANOUT = 8;
+    /** Packs opened so far, by index path. */
+    private static final Map<String, PackFile> OPEN =
+            new HashMap<String, PackFile>();
+
+    /** The pack file. */
+    private final File packFile;
+    /** The memory-mapped index. */
+    private final MappedByteBuffer index;
+    /** The memory-mapped pack. */
+    private final MappedByteBuffer data;
+    /** Number of objects in the pack. */
+    private final int count;
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A read-only ObjectSource over the packfiles of an objects directory.  New objects are always written loose; they
+ * only reach a pack through the repack command.
+ * @author Lila Chalabi
+ */
+class PackedObjectStore implements ObjectSource {
+
+    /** A store over the packs in the pack directory of OBJECTS. */
+    PackedObjectStore(File objects) {
+        this.objects = objects;
+    }
+
+    @Override
+    public boolean has(String id) {
+        for (PackFile pack : PackFile.packsIn(objects)) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] read(String id) {
+        byte[] contents = PackFile.readPacked(objects, id);
+        if (contents == null) {
+            throw new IllegalArgumentException("no object " + id);
+        }
+        return contents;
+    }
+
+    @Override
+    public InputStream openStream(String id) {
+        return new ByteArrayInputStream(read(id));
+    }
+
+    @Override
+    public Iterable<String> iterate() {
+        List<String> result = new ArrayList<String>();
+        for (PackFile pack : PackFile.packsIn(objects)) {
+            result.addAll(pack.ids());
+        }
+        return result;
+    }
+
+    /** The objects directory whose packs are read. */
+    private final File objects;
+}
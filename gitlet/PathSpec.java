@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/** An operand of add or rm naming files in the working directory: the path of a file, a directory standing for every
+ * file below it (. for the whole working directory), or a glob such as *.txt or src/**.java, in which * does not match
+ * a '/' and ** does.  Paths are relative to the working directory, with '/' between names; an operand that is
+ * absolute or leads out of the working directory names nothing, and commands reject it.
+ * @author Lila Chalabi
+ */
+class PathSpec {
+
+    /** The files named by OPERAND. */
+    PathSpec(String operand) {
+        Path normal = Paths.get(operand).normalize();
+        inside = !normal.isAbsolute() && !normal.startsWith("..");
+        path = normal.toString();
+        if (GLOB_CHARS.matcher(path).find()) {
+            glob = FileSystems.getDefault().getPathMatcher("glob:" + path);
+        } else {
+            glob = null;
+        }
+    }
+
+    /** Returns the operand as a path, without any "." or ".." names or trailing '/'; it is empty for the whole
+     * working directory. */
+    String path() {
+        return path;
+    }
+
+    /** Returns true iff the operand is a relative path that stays within the working directory. */
+    boolean inWorkingTree() {
+        return inside;
+    }
+
+    /** Returns true iff the operand is a glob rather than a path. */
+    boolean isGlob() {
+        return glob != null;
+    }
+
+    /** Returns true iff the file at FILE is one of those named. */
+    boolean matches(String file) {
+        if (glob != null) {
+            return glob.matches(Paths.get(file));
+        }
+        return path.isEmpty() || file.equals(path)
+                || file.startsWith(path + "/");
+    }
+
+    /** Characters that make an operand a glob. */
+    private static final Pattern GLOB_CHARS = Pattern.compile("[*?\\[{]");
+
+    /** True iff the operand stays within the working directory. */
+    private final boolean inside;
+    /** The operand, normalized. */
+    private final String path;
+    /** Matcher of the glob, or null if the operand is a path. */
+    private final PathMatcher glob;
+}
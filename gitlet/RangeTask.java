@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/** Work on each index of a range, such as the files of a merge or the objects of a repository, split in halves until
+ * a part is small enough to run on one thread.  The commands that run such work on a pool of their own size it with
+ * defaultParallelism unless told otherwise.
+ * @author Lila Chalabi
+ */
+class RangeTask extends RecursiveAction {
+
+    /** Returns the number of threads work runs on by default: one per processor, and at least MIN_THREADS, since the
+     * threads mostly wait on the file system. */
+    static int defaultParallelism() {
+        return Math.max(MIN_THREADS,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /** A task running BODY on each I in [FROM..TO), in parts of at most BATCH indices. */
+    RangeTask(IntConsumer body, int from, int to, int batch) {
+        this.body = body;
+        this.from = from;
+        this.to = to;
+        this.batch = batch;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= batch) {
+            for (int i = from; i < to; i += 1) {
+                body.accept(i);
+            }
+        } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(body, from, mid, batch),
+                    new RangeTask(body, mid, to, batch));
+        }
+    }
+
+    /** Fewest threads used by default. */
+    private static final int MIN_THREADS = 4;
+
+    /** The work for one index. */
+    private final IntConsumer body;
+    /** Start of the range. */
+    private final int from;
+    /** End of the range. */
+    private final int to;
+    /** Most indices run without splitting. */
+    private final int batch;
+}
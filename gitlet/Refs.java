@@ -0,0 +1,366 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** The branches of a repository and which of them is current.  .gitlet/HEAD holds "ref: refs/heads/NAME" for the
+ * current branch NAME, and each branch's head commit UID is in its own file, .gitlet/refs/heads/NAME, or, once packed
+ * by repack, on a line "UID refs/heads/NAME" of .gitlet/packed-refs.  A loose ref takes precedence over a packed one,
+ * so a repository with many branches reads one file to list them and writes one small file to move one.
+ *
+ * Every change is a compare-and-swap: the ref is locked by creating NAME.lock next to it, which fails if another
+ * process holds the lock; the ref must still have the value the caller expects; and the new value is written to the
+ * lock file and renamed over the ref, so readers see either the old value or the new one.  Repositories whose HEAD
+ * still holds a serialized commit, with the branches in the staging area, are converted when their refs are loaded.
+ * @author Lila Chalabi
+ */
+class Refs {
+
+    /** Returns the refs of the repository in the current directory, converting it to refs first if need be. */
+    static Refs load() {
+        Refs refs = new Refs(new File(System.getProperty("user.dir"),
+                ".gitlet"));
+        refs.migrate();
+        return refs;
+    }
+
+    /** The refs of the repository whose .gitlet directory is GITLET. */
+    Refs(File gitlet) {
+        this.headFile = new File(gitlet, "HEAD");
+        this.headsDir = new File(gitlet, "refs/heads");
+        this.packedFile = new File(gitlet, "packed-refs");
+        this.stagedFile = new File(gitlet, "staged");
+    }
+
+    /** Returns the name of the current branch. */
+    String currentBranch() {
+        String contents = readText(headFile);
+        if (contents == null || !contents.startsWith(SYMREF)) {
+            throw new IllegalArgumentException("HEAD is not a branch");
+        }
+        return contents.substring(SYMREF.length()).trim();
+    }
+
+    /** Makes the branch NAME the current branch. */
+    void setCurrentBranch(String name) {
+        if (!replace(headFile, SYMREF + name + "\n")) {
+            throw new IllegalArgumentException("HEAD is locked");
+        }
+    }
+
+    /** Returns the UID of the head commit of the current branch. */
+    String head() {
+        String id = get(currentBranch());
+        if (id == null) {
+            throw new IllegalArgumentException("current branch has no commit");
+        }
+        return id;
+    }
+
+    /** Returns true iff NAME can name a branch: it is not empty, not absolute, and made of names separated by single
+     * '/'s, none of them "." or "..", ending in LOCK, or holding a control character, so that its ref file is
+     * always below the directory of refs and never taken for a lock. */
+    static boolean isValidName(String name) {
+        if (name.isEmpty() || name.startsWith("/")) {
+            return false;
+        }
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")
+                    || part.endsWith(LOCK)
+                    || part.chars().anyMatch(Character::isISOControl)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the name of a branch whose ref would have to be a directory for the branch NAME to exist, or that
+     * would have to be below the ref of NAME, such as a/b for a, or a for a/b; or null if there is none. */
+    String conflict(String name) {
+        for (String other : branches().keySet()) {
+            if (other.startsWith(name + "/") || name.startsWith(other + "/")) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the UID of the head commit of the branch NAME, or null if there is no such branch or NAME cannot name
+     * one. */
+    String get(String name) {
+        if (!isValidName(name)) {
+            return null;
+        }
+        String loose = readText(refFile(name));
+        if (loose != null) {
+            return loose.trim();
+        }
+        return readPacked().get(name);
+    }
+
+    /** Returns the UIDs of the heads of all branches, by branch name. */
+    Map<String, String> branches() {
+        Map<String, String> result = readPacked();
+        addLoose(headsDir, "", result);
+        return result;
+    }
+
+    /** Sets the branch NAME to ID if it is still EXPECTED, creating it if EXPECTED is null and deleting it if ID is
+     * null.  Returns false, changing nothing, if the branch had another value, another process was changing it, or,
+     * when creating it, another branch conflicts with it.  NAME must be valid. */
+    boolean update(String name, String expected, String id) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("invalid branch name " + name);
+        } else if (expected == null && conflict(name) != null) {
+            return false;
+        }
+        File ref = refFile(name);
+        File lock = lockFor(ref);
+        if (!lock(lock)) {
+            return false;
+        }
+        try {
+            if (!Objects.equals(get(name), expected)
+                    || ref.isDirectory()) {
+                return false;
+            }
+            if (id != null) {
+                Utils.writeContents(lock, id + "\n");
+                move(lock, ref);
+                return true;
+            }
+            if (readPacked().containsKey(name) && !rewritePacked(name)) {
+                return false;
+            }
+            ref.delete();
+            return true;
+        } finally {
+            lock.delete();
+            if (id == null) {
+                pruneDirectories(ref.getParentFile());
+            }
+        }
+    }
+
+    /** Moves every loose ref into packed-refs, leaving alone any that another process holds the lock of.  As in git,
+     * each loose ref is locked before its value is read and stays locked until its file is deleted, so that a branch
+     * deleted or moved meanwhile is neither packed nor brought back. */
+    void pack() {
+        File lock = lockFor(packedFile);
+        if (!lock(lock)) {
+            return;
+        }
+        Map<String, String> loose = new TreeMap<String, String>();
+        addLoose(headsDir, "", loose);
+        Map<String, File> held = new TreeMap<String, File>();
+        try {
+            Map<String, String> refs = readPacked();
+            for (String name : loose.keySet()) {
+                File refLock = lockFor(refFile(name));
+                if (!lock(refLock)) {
+                    continue;
+                }
+                held.put(name, refLock);
+                String id = readText(refFile(name));
+                if (id != null) {
+                    refs.put(name, id.trim());
+                }
+            }
+            writePacked(lock, refs);
+            move(lock, packedFile);
+            for (String name : held.keySet()) {
+                refFile(name).delete();
+            }
+        } finally {
+            lock.delete();
+            for (Map.Entry<String, File> e : held.entrySet()) {
+                e.getValue().delete();
+                pruneDirectories(refFile(e.getKey()).getParentFile());
+            }
+        }
+    }
+
+    /** Converts a repository whose HEAD holds a serialized head commit and whose branches are kept in the staging
+     * area to refs, doing nothing if it has refs already. */
+    private void migrate() {
+        byte[] head = headFile.isFile() ? Utils.readContents(headFile) : null;
+        if (head == null || new String(head, 0,
+                Math.min(head.length, SYMREF.length()),
+                StandardCharsets.UTF_8).equals(SYMREF)) {
+            return;
+        }
+        StagedArea sA = Utils.readObject(stagedFile, StagedArea.class);
+        for (Map.Entry<String, String> e : sA._branches.entrySet()) {
+            File ref = refFile(e.getKey());
+            ref.getParentFile().mkdirs();
+            Utils.writeContents(ref, e.getValue() + "\n");
+        }
+        setCurrentBranch(sA.current_branch_name);
+        sA._branches.clear();
+        sA.current_branch_name = null;
+        Utils.writeObject(stagedFile, sA);
+    }
+
+    /** Returns the loose ref file of the branch NAME. */
+    private File refFile(String name) {
+        return new File(headsDir, name);
+    }
+
+    /** Deletes DIR and the directories above it, up to the directory of refs, as long as they are empty, so that a
+     * deleted branch a/b leaves nothing in the way of a branch a. */
+    private void pruneDirectories(File dir) {
+        while (!dir.equals(headsDir) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Adds the loose refs in DIR, whose names start with PREFIX, to INTO. */
+    private static void addLoose(File dir, String prefix,
+                                 Map<String, String> into) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String name = prefix + entry.getName();
+            if (entry.isDirectory()) {
+                addLoose(entry, name + "/", into);
+            } else if (!name.endsWith(LOCK)) {
+                String id = readText(entry);
+                if (id != null) {
+                    into.put(name, id.trim());
+                }
+            }
+        }
+    }
+
+    /** Returns the packed refs, by branch name. */
+    private Map<String, String> readPacked() {
+        Map<String, String> result = new TreeMap<String, String>();
+        String contents = readText(packedFile);
+        if (contents == null) {
+            return result;
+        }
+        for (String line : contents.split("\n")) {
+            if (line.startsWith("#") || line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0 || !line.startsWith(HEADS, space + 1)) {
+                throw new IllegalArgumentException("corrupt packed-refs");
+            }
+            result.put(line.substring(space + 1 + HEADS.length()),
+                    line.substring(0, space));
+        }
+        return result;
+    }
+
+    /** Rewrites packed-refs without the branch NAME, returning false if it is locked. */
+    private boolean rewritePacked(String name) {
+        File lock = lockFor(packedFile);
+        if (!lock(lock)) {
+            return false;
+        }
+        try {
+            Map<String, String> refs = readPacked();
+            refs.remove(name);
+            writePacked(lock, refs);
+            move(lock, packedFile);
+            return true;
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Writes REFS to FILE in the format of packed-refs. */
+    private static void writePacked(File file, Map<String, String> refs) {
+        StringBuilder out = new StringBuilder(PACKED_HEADER);
+        for (Map.Entry<String, String> e : refs.entrySet()) {
+            out.append(e.getValue()).append(' ').append(HEADS)
+                .append(e.getKey()).append('\n');
+        }
+        Utils.writeContents(file, out.toString());
+    }
+
+    /** Replaces the contents of FILE by CONTENTS through its lock file, returning false if it is locked. */
+    private static boolean replace(File file, String contents) {
+        File lock = lockFor(file);
+        if (!lock(lock)) {
+            return false;
+        }
+        try {
+            Utils.writeContents(lock, contents);
+            move(lock, file);
+            return true;
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Returns the lock file of FILE. */
+    private static File lockFor(File file) {
+        return new File(file.getPath() + LOCK);
+    }
+
+    /** Takes the lock LOCK by creating it, returning false if it already exists or its directory cannot be made,
+     * because a file is in the way or another process has just removed it. */
+    private static boolean lock(File lock) {
+        lock.getParentFile().mkdirs();
+        if (!lock.getParentFile().isDirectory()) {
+            return false;
+        }
+        try {
+            Files.createFile(lock.toPath());
+            return true;
+        } catch (FileAlreadyExistsException | NoSuchFileException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames FROM over TO in one step. */
+    private static void move(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of FILE as text, or null if it does not exist. */
+    private static String readText(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        return new String(Utils.readContents(file), StandardCharsets.UTF_8);
+    }
+
+    /** Start of a HEAD naming a branch. */
+    private static final String SYMREF = "ref: refs/heads/";
+    /** Prefix of the names of branch refs in packed-refs. */
+    private static final String HEADS = "refs/heads/";
+    /** First line of packed-refs. */
+    private static final String PACKED_HEADER = "# pack-refs\n";
+    /** Suffix of lock files. */
+    private static final String LOCK = ".lock";
+
+    /** .gitlet/HEAD. */
+    private final File headFile;
+    /** The directory of loose branch refs. */
+    private final File headsDir;
+    /** .gitlet/packed-refs. */
+    private final File packedFile;
+    /** .gitlet/staged, read when migrating. */
+    private final File stagedFile;
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+
+public class RefsTest {
+
+    @Test
+    public void testCompareAndSwap() throws IOException {
+        File gitlet = Files.createTempDirectory("gitlet-refs").toFile();
+        Refs refs = new Refs(gitlet);
+        String one = Utils.sha1("one");
+        String two = Utils.sha1("two");
+
+        assertTrue(refs.update("master", null, one));
+        assertFalse(refs.update("master", null, two));
+        refs.setCurrentBranch("master");
+        assertEquals("master", refs.currentBranch());
+        assertEquals(one, refs.head());
+
+        assertFalse(refs.update("master", two, two));
+        assertTrue(refs.update("master", one, two));
+        assertEquals(two, refs.get("master"));
+
+        /* a ref locked by another process cannot be changed. */
+        File lock = new File(gitlet, "refs/heads/master.lock");
+        assertTrue(lock.createNewFile());
+        assertFalse(refs.update("master", two, one));
+        lock.delete();
+        assertEquals(two, refs.get("master"));
+    }
+
+    @Test
+    public void testPackedRefs() throws IOException {
+        File gitlet = Files.createTempDirectory("gitlet-refs").toFile();
+        Refs refs = new Refs(gitlet);
+        String one = Utils.sha1("one");
+        String two = Utils.sha1("two");
+        refs.update("master", null, one);
+        refs.update("topic/a", null, one);
+        refs.update("b", null, two);
+        refs.pack();
+        assertFalse(new File(gitlet, "refs/heads/master").exists());
+        assertEquals(one, refs.get("topic/a"));
+        assertEquals(3, refs.branches().size());
+
+        /* a loose ref overrides its packed value, and deleting a branch removes both. */
+        assertTrue(refs.update("master", one, two));
+        assertEquals(two, refs.branches().get("master"));
+        assertTrue(refs.update("master", two, null));
+        assertNull(refs.get("master"));
+        assertTrue(refs.update("b", two, null));
+        assertEquals(1, refs.branches().size());
+    }
+
+    @Test
+    public void testPackLockedRef() throws IOException {
+        File gitlet = Files.createTempDirectory("gitlet-refs").toFile();
+        Refs refs = new Refs(gitlet);
+        String one = Utils.sha1("one");
+        refs.update("a", null, one);
+        refs.update("b", null, one);
+
+        /* a ref another process holds the lock of, say to delete it, is neither packed nor deleted by pack. */
+        File lock = new File(gitlet, "refs/heads/a.lock");
+        assertTrue(lock.createNewFile());
+        refs.pack();
+        assertTrue(new File(gitlet, "refs/heads/a").isFile());
+        assertFalse(new File(gitlet, "refs/heads/b").exists());
+        lock.delete();
+        assertTrue(refs.update("a", one, null));
+        assertNull(refs.get("a"));
+        assertEquals(1, refs.branches().size());
+    }
+
+    @Test
+    public void testBranchNames() throws IOException {
+        File gitlet = Files.createTempDirectory("gitlet-refs").toFile();
+        Refs refs = new Refs(gitlet);
+        String one = Utils.sha1("one");
+        for (String name : new String[] {"", "/x", "../../staged", "a/../b",
+                "./a", "a//b", "a/", "x.lock", "a.lock/b"}) {
+            assertFalse(Refs.isValidName(name));
+            assertNull(refs.get(name));
+        }
+        assertTrue(Refs.isValidName("topic/a.b"));
+
+        /* a branch cannot be a directory of another, in either order, and deleting a/b leaves room for a. */
+        assertTrue(refs.update("a", null, one));
+        assertEquals("a", refs.conflict("a/b"));
+        assertFalse(refs.update("a/b", null, one));
+        assertTrue(refs.update("c/d", null, one));
+        assertEquals("c/d", refs.conflict("c"));
+        assertFalse(refs.update("c", null, one));
+        assertTrue(refs.update("c/d", one, null));
+        assertNull(refs.conflict("c"));
+        assertTrue(refs.update("c", null, one));
+        assertEquals(2, refs.branches().size());
+    }
+}
@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Pairs files that were removed with files that were added, as renames, and added files with files still present,
+ * as copies.  Files with the same blob UID are paired first.  The remaining removed and added files are then compared
+ * by the similarity of their sets of lines, estimated from MinHash signatures: SIGNATURE hashes of each file, each the
+ * least of one hash function over its lines, agree in a fraction of places that estimates the Jaccard similarity of
+ * the two sets.  Rather than comparing every removed file with every added one, the signatures are cut into bands and
+ * only files sharing a whole band are compared, with as many rows per band as still make a pair at the threshold
+ * almost sure to share one; at most maxCandidates pairs are compared in all.  Pairs at or above the threshold are
+ * taken best first, each file in at most one rename.  Copies are found only by UID, from the files present.
+ * @author Lila Chalabi
+ */
+class RenameDetector {
+
+    /** A file paired with the one it came from. */
+    static class Rename {
+        /** SOURCE renamed, or copied if COPY, to TARGET, with contents SCORE percent alike. */
+        Rename(String source, String target, int score, boolean copy) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+            this.copy = copy;
+        }
+
+        @Override
+        public String toString() {
+            return source + " -> " + target
+                + (copy ? " (copy)" : score < 100 ? " (" + score + "%)" : "");
+        }
+
+        /** The path the file came from. */
+        final String source;
+        /** The path it is at now. */
+        final String target;
+        /** Estimated percentage of lines in common, 100 for the same contents. */
+        final int score;
+        /** True iff the source is still present. */
+        final boolean copy;
+    }
+
+    /** A detector pairing files at least THRESHOLD percent alike and comparing at most MAXCANDIDATES pairs. */
+    RenameDetector(int threshold, int maxCandidates) {
+        this.threshold = threshold;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /** A detector with the default threshold and limit. */
+    RenameDetector() {
+        this(DEFAULT_THRESHOLD, MAX_CANDIDATES);
+    }
+
+    /** Returns the renames of the files REMOVED to the files ADDED, and the copies of the files PRESENT among the
+     * rest of ADDED, each map taking paths to blob UIDs, in order of target. */
+    List<Rename> detect(Map<String, String> removed, Map<String, String> added,
+                        Map<String, String> present) {
+        Map<String, Rename> result = new TreeMap<String, Rename>();
+        Map<String, List<String>> byId = new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> e
+                : new TreeMap<String, String>(removed).entrySet()) {
+            byId.computeIfAbsent(e.getValue(), k -> new ArrayList<String>())
+                .add(e.getKey());
+        }
+        Set<String> sources = new HashSet<String>(removed.keySet());
+        for (Map.Entry<String, String> e
+                : new TreeMap<String, String>(added).entrySet()) {
+            List<String> same = byId.get(e.getValue());
+            if (same != null && !same.isEmpty()) {
+                String source = closest(same, e.getKey());
+                same.remove(source);
+                sources.remove(source);
+                result.put(e.getKey(), new Rename(source, e.getKey(), 100,
+                        false));
+            }
+        }
+
+        List<String> from = new ArrayList<String>(sources);
+        List<String> to = new ArrayList<String>();
+        for (String path : added.keySet()) {
+            if (!result.containsKey(path)) {
+                to.add(path);
+            }
+        }
+        Collections.sort(from);
+        Collections.sort(to);
+        for (Rename rename : similar(from, removed, to, added)) {
+            result.put(rename.target, rename);
+        }
+
+        Map<String, String> copied = new HashMap<String, String>();
+        for (Map.Entry<String, String> e
+                : new TreeMap<String, String>(present).entrySet()) {
+            copied.putIfAbsent(e.getValue(), e.getKey());
+        }
+        for (Map.Entry<String, String> e : added.entrySet()) {
+            String source = copied.get(e.getValue());
+            if (source != null && !result.containsKey(e.getKey())) {
+                result.put(e.getKey(), new Rename(source, e.getKey(), 100,
+                        true));
+            }
+        }
+        return new ArrayList<Rename>(result.values());
+    }
+
+    /** Returns the renames of the files FROM, whose UIDs are in FROMIDS, to the files TO, whose UIDs are in TOIDS,
+     * found by comparing their MinHash signatures. */
+    private List<Rename> similar(List<String> from, Map<String, String> fromIds,
+                                 List<String> to, Map<String, String> toIds) {
+        List<Rename> result = new ArrayList<Rename>();
+        if (from.isEmpty() || to.isEmpty()) {
+            return result;
+        }
+        long[][] fromSigs = new long[from.size()][];
+        long[][] toSigs = new long[to.size()][];
+        Arrays.parallelSetAll(fromSigs,
+            i -> signature(fromIds.get(from.get(i))));
+        Arrays.parallelSetAll(toSigs, i -> signature(toIds.get(to.get(i))));
+
+        int rows = rows(threshold / 100.0);
+        Map<Long, List<Integer>> buckets = new HashMap<Long, List<Integer>>();
+        for (int i = 0; i < fromSigs.length; i += 1) {
+            if (fromSigs[i] == null) {
+                continue;
+            }
+            for (int band = 0; band < SIGNATURE / rows; band += 1) {
+                buckets.computeIfAbsent(bandKey(fromSigs[i], band, rows),
+                    k -> new ArrayList<Integer>()).add(i);
+            }
+        }
+
+        /* each candidate pair is scored once, however many bands the two files share. */
+        List<long[]> scored = new ArrayList<long[]>();
+        Set<Long> seen = new HashSet<Long>();
+        int compared = 0;
+        for (int j = 0; j < toSigs.length && compared < maxCandidates;
+             j += 1) {
+            if (toSigs[j] == null) {
+                continue;
+            }
+            for (int band = 0; band < SIGNATURE / rows; band += 1) {
+                List<Integer> bucket = buckets.get(bandKey(toSigs[j], band,
+                        rows));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i : bucket) {
+                    if (compared >= maxCandidates
+                            || !seen.add((long) i << 32 | j)) {
+                        continue;
+                    }
+                    compared += 1;
+                    int score = score(fromSigs[i], toSigs[j]);
+                    if (score >= threshold) {
+                        scored.add(new long[] {score, i, j});
+                    }
+                }
+            }
+        }
+
+        /* the best pairs are taken first; of equally good ones, those whose names are alike. */
+        scored.sort(Comparator.<long[]>comparingLong(p -> -p[0])
+            .thenComparing(p -> !baseName(from.get((int) p[1]))
+                           .equals(baseName(to.get((int) p[2]))))
+            .thenComparingLong(p -> p[1]).thenComparingLong(p -> p[2]));
+        boolean[] fromUsed = new boolean[from.size()];
+        boolean[] toUsed = new boolean[to.size()];
+        for (long[] pair : scored) {
+            int i = (int) pair[1];
+            int j = (int) pair[2];
+            if (!fromUsed[i] && !toUsed[j]) {
+                fromUsed[i] = true;
+                toUsed[j] = true;
+                result.add(new Rename(from.get(i), to.get(j), (int) pair[0],
+                        false));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the MinHash signature of the lines of the blob with UID ID, or null if it has no lines or is too large
+     * to read.  The blob is streamed, and given up on once it is past UnifiedDiff.MAX_SIZE bytes. */
+    static long[] signature(String id) {
+        if (id == null || !Utils.objectExists(id)) {
+            return null;
+        }
+        long[] result = new long[SIGNATURE];
+        Arrays.fill(result, Long.MAX_VALUE);
+        long size = 0;
+        long h = FNV_OFFSET;
+        boolean partial = false;
+        try (InputStream in = Utils.objectStore().openStream(id)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                size += n;
+                if (size > UnifiedDiff.MAX_SIZE) {
+                    return null;
+                }
+                for (int k = 0; k < n; k += 1) {
+                    if (buf[k] == '\n') {
+                        addLine(result, h);
+                        h = FNV_OFFSET;
+                        partial = false;
+                    } else {
+                        h = (h ^ buf[k]) * FNV_PRIME;
+                        partial = true;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (size == 0) {
+            return null;
+        } else if (partial) {
+            addLine(result, h);
+        }
+        return result;
+    }
+
+    /** Adds the line whose hash is H to the signature SIG. */
+    private static void addLine(long[] sig, long h) {
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            long v = mix(h + SEEDS[i]);
+            if (v < sig[i]) {
+                sig[i] = v;
+            }
+        }
+    }
+
+    /** Returns the percentage of places in which signatures A and B agree. */
+    static int score(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SIGNATURE;
+    }
+
+    /** Returns the most rows per band with which two files of similarity T share a band with probability at least
+     * BAND_CONFIDENCE. */
+    static int rows(double t) {
+        int result = 1;
+        for (int r = 2; r <= SIGNATURE / 4; r *= 2) {
+            double miss = Math.pow(1 - Math.pow(t, r), SIGNATURE / r);
+            if (1 - miss < BAND_CONFIDENCE) {
+                break;
+            }
+            result = r;
+        }
+        return result;
+    }
+
+    /** Returns the hash of rows [BAND * ROWS .. (BAND + 1) * ROWS) of SIG, which also depends on BAND. */
+    private static long bandKey(long[] sig, int band, int rows) {
+        long h = band;
+        for (int i = band * rows; i < (band + 1) * rows; i += 1) {
+            h = mix(h * FNV_PRIME + sig[i]);
+        }
+        return h;
+    }
+
+    /** Returns the path among PATHS most like PATH: the first with the same last name, or else the first. */
+    private static String closest(List<String> paths, String path) {
+        for (String p : paths) {
+            if (baseName(p).equals(baseName(path))) {
+                return p;
+            }
+        }
+        return paths.get(0);
+    }
+
+    /** Returns the last name of PATH. */
+    private static String baseName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /** Returns X with its bits well mixed (the finalizer of SplitMix64). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Percentage of lines in common at or above which files are paired by default. */
+    static final int DEFAULT_THRESHOLD = 50;
+    /** Most pairs of files compared by default. */
+    static final int MAX_CANDIDATES = 100000;
+    /** Number of hashes in a signature. */
+    static final int SIGNATURE = 64;
+    /** Least probability that a pair at the threshold shares a band. */
+    private static final double BAND_CONFIDENCE = 0.99;
+    /** FNV-1a offset basis, the hash of an empty line. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** FNV-1a prime, by which the hash is multiplied after each byte. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Size of the buffer blobs are read through. */
+    private static final int BUFFER_SIZE = 8192;
+    /** The constant distinguishing each hash function of a signature. */
+    private static final long[] SEEDS = new long[SIGNATURE];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < SIGNATURE; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** Least percentage of lines in common of a rename that is not exact. */
+    private final int threshold;
+    /** Most pairs of files compared. */
+    private final int maxCandidates;
+}
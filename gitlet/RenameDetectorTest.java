@@ -0,0 +1,50 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class RenameDetectorTest {
+
+    @Test
+    public void testExactRenamesAndCopies() {
+        Map<String, String> removed = new HashMap<String, String>();
+        removed.put("a/x.txt", ID1);
+        removed.put("b/y.txt", ID1);
+        Map<String, String> added = new HashMap<String, String>();
+        added.put("c/y.txt", ID1);
+        added.put("copy.txt", ID2);
+        Map<String, String> present = new HashMap<String, String>();
+        present.put("kept.txt", ID2);
+
+        List<RenameDetector.Rename> found =
+            new RenameDetector().detect(removed, added, present);
+        assertEquals(2, found.size());
+        assertEquals("b/y.txt -> c/y.txt", found.get(0).toString());
+        assertEquals("kept.txt -> copy.txt (copy)", found.get(1).toString());
+    }
+
+    @Test
+    public void testScoreAndRows() {
+        long[] a = new long[RenameDetector.SIGNATURE];
+        long[] b = new long[RenameDetector.SIGNATURE];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = i;
+            b[i] = i < a.length / 4 ? i : -i;
+        }
+        assertEquals(100, RenameDetector.score(a, a));
+        assertEquals(25, RenameDetector.score(a, b));
+
+        /* stricter thresholds allow longer bands, so fewer pairs are compared. */
+        assertTrue(RenameDetector.rows(0.5) < RenameDetector.rows(0.9));
+        assertEquals(1, RenameDetector.rows(0.1));
+    }
+
+    /** Blob UIDs, which detect does not read when files match exactly. */
+    private static final String ID1 = Utils.sha1("one"), ID2 = Utils.sha1("two");
+}
@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/** A file of fixed-width binary records kept in sorted order, for the indices under .gitlet that are updated a little
+ * at every commit and searched by binary search.
+ *
+ * The file is a stack of layers, each a header (a four-byte magic naming the index, a version and a count) followed
+ * by that many records sorted as unsigned bytes.  New records are appended as a layer of their own, and the last two
+ * layers are merged whenever the last is more than half the size of the one before it, so a file of N records has
+ * O(log N) layers and each update rewrites O(log N) records on average.  The file is memory-mapped for reading.
+ * Writers hold a LockFile next to the file and map it again once they have it, so that processes committing at once
+ * each add their records to the file as the other left it.
+ * @author Lila Chalabi
+ */
+class SortedRecordFile {
+
+    /** The file FILE of records of RECORDSIZE bytes whose layers start with MAGIC. */
+    SortedRecordFile(File file, byte[] magic, int recordSize) {
+        this.file = file;
+        this.magic = magic;
+        this.recordSize = recordSize;
+        this.valid = map();
+    }
+
+    /** Returns true iff the file exists and is undamaged. */
+    boolean isValid() {
+        return valid;
+    }
+
+    /** Returns the number of records, counting duplicates in different layers. */
+    long size() {
+        long result = 0;
+        for (Layer layer : layers) {
+            result += layer.count;
+        }
+        return result;
+    }
+
+    /** Returns up to LIMIT records that start with PREFIX, without duplicates. */
+    List<byte[]> range(byte[] prefix, int limit) {
+        return range(prefix, r -> true, limit);
+    }
+
+    /** Returns up to LIMIT records that start with PREFIX and satisfy ACCEPT, without duplicates.  Each layer is
+     * searched by binary search for the first record not less than PREFIX and then scanned only while records still
+     * start with it. */
+    List<byte[]> range(byte[] prefix, Predicate<byte[]> accept, int limit) {
+        TreeSet<byte[]> result = new TreeSet<byte[]>(Arrays::compareUnsigned);
+        byte[] probe = new byte[prefix.length];
+        for (Layer layer : layers) {
+            int lo = 0;
+            int hi = layer.count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                buf.get(offset(layer, mid), probe, 0, probe.length);
+                if (Arrays.compareUnsigned(probe, prefix) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < layer.count && result.size() < limit;
+                 i += 1) {
+                buf.get(offset(layer, i), probe, 0, probe.length);
+                if (!Arrays.equals(probe, prefix)) {
+                    break;
+                }
+                byte[] record = record(layer, i);
+                if (accept.test(record)) {
+                    result.add(record);
+                }
+            }
+        }
+        return new ArrayList<byte[]>(result);
+    }
+
+    /** Returns the number of records whose byte AT is VALUE. */
+    long count(int at, byte value) {
+        long result = 0;
+        for (Layer layer : layers) {
+            for (int i = 0; i < layer.count; i += 1) {
+                if (buf.get(offset(layer, i) + at) == value) {
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff RECORD is in the file. */
+    boolean contains(byte[] record) {
+        return !range(record, 1).isEmpty();
+    }
+
+    /** Returns every record, in sorted order and without duplicates. */
+    List<byte[]> all() {
+        TreeSet<byte[]> result = new TreeSet<byte[]>(Arrays::compareUnsigned);
+        for (Layer layer : layers) {
+            for (int i = 0; i < layer.count; i += 1) {
+                result.add(record(layer, i));
+            }
+        }
+        return new ArrayList<byte[]>(result);
+    }
+
+    /** Adds RECORDS that are not already present and writes the file. */
+    void add(Collection<byte[]> records) {
+        File lock = LockFile.acquire(file, file.getName());
+        try {
+            valid = map();
+            insert(records);
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Adds RECORDS that are not already present and writes the file, holding the lock. */
+    private void insert(Collection<byte[]> records) {
+        TreeSet<byte[]> added = new TreeSet<byte[]>(Arrays::compareUnsigned);
+        for (byte[] record : records) {
+            if (!contains(record)) {
+                added.add(record);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        int keep = layers.size();
+        long size = added.size();
+        while (keep > 0 && size * 2 > layers.get(keep - 1).count) {
+            keep -= 1;
+            size += layers.get(keep).count;
+        }
+        for (int l = keep; l < layers.size(); l += 1) {
+            Layer layer = layers.get(l);
+            for (int i = 0; i < layer.count; i += 1) {
+                added.add(record(layer, i));
+            }
+        }
+        long start = keep == layers.size() ? end() : layers.get(keep).start;
+        write(start, added);
+    }
+
+    /** Replaces the contents of the file by RECORDS. */
+    void rebuild(Collection<byte[]> records) {
+        TreeSet<byte[]> sorted = new TreeSet<byte[]>(Arrays::compareUnsigned);
+        sorted.addAll(records);
+        File lock = LockFile.acquire(file, file.getName());
+        try {
+            write(0, sorted);
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Writes RECORDS, which are sorted, as one layer at byte START of the file, dropping everything after. */
+    private void write(long start, Collection<byte[]> records) {
+        ByteBuffer out = ByteBuffer.allocate(HEADER
+                + records.size() * recordSize);
+        out.put(magic);
+        out.putInt(VERSION);
+        out.putInt(records.size());
+        for (byte[] record : records) {
+            out.put(record);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(start);
+            raf.seek(start);
+            raf.write(out.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        valid = map();
+        if (!valid) {
+            throw new IllegalArgumentException("could not write "
+                    + file.getName());
+        }
+    }
+
+    /** A layer of the file. */
+    private static class Layer {
+        /** Byte offset of the layer's header. */
+        long start;
+        /** Number of records in the layer. */
+        int count;
+    }
+
+    /** Maps the file and reads its layer headers, returning false if the file is missing or damaged. */
+    private boolean map() {
+        layers = new ArrayList<Layer>();
+        if (!file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            return false;
+        }
+        long at = 0;
+        byte[] found = new byte[magic.length];
+        while (at < buf.limit()) {
+            if (at + HEADER > buf.limit()) {
+                return false;
+            }
+            buf.get((int) at, found, 0, found.length);
+            Layer layer = new Layer();
+            layer.start = at;
+            layer.count = buf.getInt((int) at + 8);
+            long end = at + HEADER + (long) layer.count * recordSize;
+            if (!Arrays.equals(found, magic)
+                    || buf.getInt((int) at + 4) != VERSION
+                    || end > buf.limit()) {
+                return false;
+            }
+            layers.add(layer);
+            at = end;
+        }
+        return !layers.isEmpty();
+    }
+
+    /** Returns the byte offset of record I of LAYER. */
+    private int offset(Layer layer, int i) {
+        return (int) layer.start + HEADER + i * recordSize;
+    }
+
+    /** Returns a copy of record I of LAYER. */
+    private byte[] record(Layer layer, int i) {
+        byte[] result = new byte[recordSize];
+        buf.get(offset(layer, i), result, 0, recordSize);
+        return result;
+    }
+
+    /** Returns the byte offset just past the last layer. */
+    private long end() {
+        if (layers.isEmpty()) {
+            return 0;
+        }
+        Layer last = layers.get(layers.size() - 1);
+        return last.start + HEADER + (long) last.count * recordSize;
+    }
+
+    /** Format version. */
+    private static final int VERSION = 1;
+    /** Bytes in a layer header. */
+    private static final int HEADER = 12;
+
+    /** The file. */
+    private final File file;
+    /** Magic starting every layer. */
+    private final byte[] magic;
+    /** Bytes in a record. */
+    private final int recordSize;
+    /** The mapped file. */
+    private MappedByteBuffer buf;
+    /** The layers, oldest first. */
+    private List<Layer> layers;
+    /** True iff the file was read successfully. */
+    private boolean valid;
+}
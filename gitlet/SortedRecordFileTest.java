@@ -0,0 +1,63 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class SortedRecordFileTest {
+
+    /** Layer magic of the files tested. */
+    private static final byte[] MAGIC = {'T', 'E', 'S', 'T'};
+
+    @Test
+    public void testAdd() throws IOException {
+        File file = new File(Files.createTempDirectory("gitlet-records")
+                .toFile(), "records");
+        SortedRecordFile records = new SortedRecordFile(file, MAGIC, 2);
+        assertFalse(records.isValid());
+        for (int i = 0; i < 100; i += 1) {
+            records.add(List.of(new byte[] {(byte) i, (byte) (i % 3)}));
+        }
+        records.add(List.of(new byte[] {5, 2}));
+        assertTrue(records.isValid());
+        assertEquals(100, records.size());
+        assertEquals(34, records.count(1, (byte) 0));
+        assertTrue(records.contains(new byte[] {42, 0}));
+        assertFalse(records.contains(new byte[] {42, 1}));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        File file = new File(Files.createTempDirectory("gitlet-records")
+                .toFile(), "records");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t += 1) {
+            byte first = (byte) t;
+            threads.add(new Thread(() -> {
+                /* a file of its own, mapped before the others wrote, as another process would have. */
+                SortedRecordFile records = new SortedRecordFile(file, MAGIC,
+                        2);
+                for (int i = 0; i < 50; i += 1) {
+                    records.add(List.of(new byte[] {first, (byte) i}));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        SortedRecordFile records = new SortedRecordFile(file, MAGIC, 2);
+        assertEquals(200, records.all().size());
+        assertEquals(200, records.size());
+        assertFalse(new File(file.getPath() + ".lock").exists());
+    }
+}
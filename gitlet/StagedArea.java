@@ -2,6 +2,7 @@ package gitlet;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Map;
 
 /** add array list for to be removed files. */
 class StagedArea implements Serializable {
@@ -15,18 +16,84 @@ class StagedArea implements Serializable {
 
     }
 
+    /** Returns the format version to encode the staging area in: Codec.STAGED_AREA_VERSION, or 1 while it still holds
+     * the commits or branches of a repository that has not been migrated to CommitJournal and Refs. */
+    byte formatVersion() {
+        boolean legacy = !commitList.isEmpty() || !_branches.isEmpty()
+                || current_branch_name != null
+                && !current_branch_name.isEmpty();
+        return legacy ? 1 : Codec.STAGED_AREA_VERSION;
+    }
+
+    /** Writes the fields of the staging area to OUT: the staged files and the files to be deleted, and in version 1
+     * then the commits, the branches and the current branch.  Nothing is named by the sha-1 of a staging area, so its
+     * maps are written in whatever order they are in rather than sorted. */
+    void encode(Codec.Writer out) {
+        encodeMap(stagedMap, out);
+        out.varint(toDelete.size());
+        for (String filename : toDelete) {
+            out.string(filename);
+        }
+        if (formatVersion() != 1) {
+            return;
+        }
+        out.varint(commitList.size());
+        for (String id : commitList) {
+            out.id(id);
+        }
+        encodeMap(_branches, out);
+        out.string(current_branch_name == null ? "" : current_branch_name);
+    }
+
+    /** Writes MAP, from names to UIDs, to OUT as a count and then its entries. */
+    private static void encodeMap(Map<String, String> map,
+                                  Codec.Writer out) {
+        out.varint(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            out.string(e.getKey());
+            out.id(e.getValue());
+        }
+    }
+
+    /** Returns the staging area whose fields IN holds, as written by encode. */
+    static StagedArea decode(Codec.Reader in) {
+        StagedArea sA = new StagedArea();
+        for (int n = in.count(); n > 0; n -= 1) {
+            sA.stagedMap.put(in.string(), in.id());
+        }
+        for (int n = in.count(); n > 0; n -= 1) {
+            sA.toDelete.add(in.string());
+        }
+        if (in.version() != 1) {
+            return sA;
+        }
+        for (int n = in.count(); n > 0; n -= 1) {
+            sA.commitList.add(in.id());
+        }
+        for (int n = in.count(); n > 0; n -= 1) {
+            sA._branches.put(in.string(), in.id());
+        }
+        sA.current_branch_name = in.string();
+        return sA;
+    }
+
+    /** Fixed so that staging areas serialized by earlier versions of this class can still be read. */
+    private static final long serialVersionUID = 5797099053133809970L;
+
     /** map of staged files, between file name and SHA-1 name. */
     public HashMap<String, String> stagedMap;
 
     /** array list of filenames to  be deleted. */
     public ArrayList<String> toDelete;
 
-    /** array list of all commit sha-1 UIDs to-date. */
+    /** array list of all commit sha-1 UIDs to-date; only read from staging areas written before CommitJournal, by
+     * CommitJournal.load, and empty otherwise. */
     public ArrayList<String> commitList;
 
-    /** maps the branch name to the head sha-1 commit UID of a branch. */
+    /** maps the branch name to the head sha-1 commit UID of a branch; only read from staging areas written before
+     * Refs, by Refs.migrate, and empty otherwise. */
     public HashMap<String, String> _branches = new HashMap<String, String>();
 
-    /** current branch. */
+    /** current branch, only in staging areas written before Refs. */
     public String current_branch_name;
 }
@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** A cache of the blob UIDs of working files, kept in .gitlet/index next to the staging area, so that status and add
+ * hash only the files that changed since they were last hashed; WorkingTreeScanner gathers the stat data.  For each
+ * path it records the modification time, size and file key (the inode, on Unix) the file had when it was hashed, and
+ * the UID of its contents; a file whose stat data still match is taken to have the same contents.
+ *
+ * A file modified within the same clock tick as the cache was last written may have the same stat data before and
+ * after the change, so, as in git, an entry is only trusted if its modification time is earlier than that of the
+ * cache file; racily clean entries are hashed again, and become trusted once the cache is written later on.
+ * @author Lila Chalabi
+ */
+class StatCache {
+
+    /** The stat data of a working file, as recorded by the cache. */
+    static class Stat {
+        /** The stat data in ATTRS. */
+        Stat(BasicFileAttributes attrs) {
+            this(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    attrs.size(), attrs.fileKey() == null ? 0
+                        : attrs.fileKey().hashCode());
+        }
+
+        /** Stat data with modification time MTIME in nanoseconds, SIZE in bytes and file key KEY. */
+        Stat(long mtime, long size, long key) {
+            this.mtime = mtime;
+            this.size = size;
+            this.key = key;
+        }
+
+        /** Returns true iff this is the same stat data as OTHER. */
+        boolean matches(Stat other) {
+            return mtime == other.mtime && size == other.size
+                    && key == other.key;
+        }
+
+        /** Modification time, in nanoseconds. */
+        final long mtime;
+        /** Size, in bytes. */
+        final long size;
+        /** File key. */
+        final long key;
+    }
+
+    /** Returns the cache of the repository in the current directory; it is empty if there is none yet or it is
+     * damaged. */
+    static StatCache load() {
+        StatCache cache = new StatCache(new File(System.getProperty(
+                "user.dir") + "/.gitlet/index"));
+        cache.read();
+        return cache;
+    }
+
+    /** Returns the stat data of the working file at PATH, or null if it is not a plain file. */
+    static Stat stat(String path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                    new File(path).toPath(), BasicFileAttributes.class);
+            return attrs.isRegularFile() ? new Stat(attrs) : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The cache stored in FILE. */
+    private StatCache(File file) {
+        this.file = file;
+    }
+
+    /** Returns the UID of the contents of the working file at PATH, whose stat data are STAT, if the cache holds one
+     * that can be trusted, and null otherwise. */
+    String cached(String path, Stat stat) {
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.stat.matches(stat)
+                || entry.stat.mtime >= written) {
+            return null;
+        }
+        return entry.id;
+    }
+
+    /** Returns the UID last recorded for the working file at PATH, whether or not it can still be trusted, or null
+     * if there is none. */
+    String recorded(String path) {
+        Entry entry = entries.get(path);
+        return entry == null ? null : entry.id;
+    }
+
+    /** Returns the UID of the contents of the working file at PATH, whose stat data are STAT, hashing the file unless
+     * the cache holds a trusted UID for it. */
+    String hash(String path, Stat stat) {
+        String id = cached(path, stat);
+        if (id == null) {
+            id = Utils.sha1(new File(path));
+            record(path, stat, id);
+        }
+        return id;
+    }
+
+    /** Records that the working file at PATH, whose stat data are STAT, has contents with UID ID.  A racily clean
+     * entry counts as a change, so that writing the cache again makes it trusted. */
+    void record(String path, Stat stat, String id) {
+        Entry old = entries.get(path);
+        if (old == null || !old.stat.matches(stat) || !old.id.equals(id)
+                || old.stat.mtime >= written) {
+            entries.put(path, new Entry(stat, id));
+            changed = true;
+        }
+    }
+
+    /** Forgets the entries for paths not in PATHS, the files now in the working directory. */
+    void retain(Map<String, Stat> paths) {
+        changed |= entries.keySet().retainAll(paths.keySet());
+    }
+
+    /** Writes the cache, if it has changed, replacing the old one in a single rename. */
+    void save() {
+        if (!changed) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.stat.mtime);
+                out.writeLong(entry.stat.size);
+                out.writeLong(entry.stat.key);
+                out.write(PackFile.toBytes(entry.id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        changed = false;
+    }
+
+    /** A cached UID and the stat data of the file it was computed from. */
+    private static class Entry {
+        /** An entry for a file with stat data STAT and contents with UID ID. */
+        Entry(Stat stat, String id) {
+            this.stat = stat;
+            this.id = id;
+        }
+
+        /** Stat data. */
+        final Stat stat;
+        /** UID of the contents. */
+        final String id;
+    }
+
+    /** Reads the cache file, leaving the cache empty if it is missing or damaged. */
+    private void read() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file.toPath())))) {
+            written = Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            byte[] raw = new byte[ID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String path = in.readUTF();
+                Stat stat = new Stat(in.readLong(), in.readLong(),
+                        in.readLong());
+                in.readFully(raw);
+                entries.put(path, new Entry(stat, Utils.toHex(raw)));
+            }
+        } catch (IOException excp) {
+            entries.clear();
+        }
+    }
+
+    /** File magic. */
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'C'};
+    /** Format version. */
+    private static final int VERSION = 1;
+    /** Bytes in a binary UID. */
+    private static final int ID_BYTES = 20;
+
+    /** The cache file. */
+    private final File file;
+    /** The entries, by path. */
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+    /** Modification time of the cache file when it was read, in nanoseconds; entries modified at or after it are
+     * not trusted. */
+    private long written;
+    /** True iff the entries differ from those in the file. */
+    private boolean changed;
+}
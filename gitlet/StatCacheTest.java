@@ -0,0 +1,50 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+
+
+public class StatCacheTest {
+
+    @Test
+    public void testRacilyCleanEntries() throws IOException {
+        String oldDir = System.getProperty("user.dir");
+        File dir = Files.createTempDirectory("gitlet-stat").toFile();
+        new File(dir, ".gitlet").mkdirs();
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            File file = new File(dir, "f.txt");
+            Utils.writeContents(file, "one");
+            file.setLastModified(System.currentTimeMillis() - 10000);
+            String path = file.getPath();
+
+            StatCache cache = StatCache.load();
+            StatCache.Stat stat = StatCache.stat(path);
+            assertNull(cache.cached(path, stat));
+            assertEquals(Utils.sha1("one"), cache.hash(path, stat));
+            cache.save();
+
+            cache = StatCache.load();
+            assertEquals(Utils.sha1("one"), cache.cached(path, stat));
+
+            /* a file changed in the same tick as the cache was written has
+               stat data that cannot be told apart, so it is not trusted. */
+            FileTime written = Files.getLastModifiedTime(
+                    new File(dir, ".gitlet/index").toPath());
+            Utils.writeContents(file, "two");
+            Files.setLastModifiedTime(file.toPath(), written);
+            stat = StatCache.stat(path);
+            cache = StatCache.load();
+            assertNull(cache.cached(path, stat));
+            assertEquals(Utils.sha1("two"), cache.hash(path, stat));
+        } finally {
+            System.setProperty("user.dir", oldDir);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+/** Times the working-tree scan and hash behind status on a synthetic tree with growing numbers of threads.  Run with
+ * java gitlet.StatusBenchmark [FILES [MAXTHREADS]]; by default 100000 files of 4 KiB in directories of 100, and up to
+ * as many threads as there are processors.  Each line shows the best of three cold runs, in which every file is hashed,
+ * and the speedup over one thread, which should stay close to the number of threads up to the core count.  The last
+ * line is a warm run, in which the stat cache spares every file from being hashed.
+ * @author Lila Chalabi
+ */
+public class StatusBenchmark {
+
+    /** Runs the benchmark on a tree of ARGS[0] files with up to ARGS[1] threads. */
+    public static void main(String... args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        File dir = Files.createTempDirectory("gitlet-status").toFile();
+        String oldDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", dir.getPath());
+        try {
+            build(dir, count);
+            System.out.printf("%d files, %d processors%n", count,
+                    Runtime.getRuntime().availableProcessors());
+            System.out.println("threads  cold(ms)  speedup");
+            coldRun(dir, 1);
+            double base = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double best = Double.MAX_VALUE;
+                for (int i = 0; i < REPEAT; i += 1) {
+                    best = Math.min(best, coldRun(dir, threads));
+                }
+                if (threads == 1) {
+                    base = best;
+                }
+                System.out.printf("%7d %9.0f %8.2f%n", threads, best,
+                        base / best);
+            }
+
+            WorkingTreeScanner scanner = new WorkingTreeScanner(dir);
+            StatCache cache = StatCache.load();
+            Map<String, StatCache.Stat> files = scanner.scan();
+            scanner.hash(files.keySet(), files, cache);
+            cache.save();
+            long start = System.nanoTime();
+            cache = StatCache.load();
+            files = scanner.scan();
+            scanner.hash(files.keySet(), files, cache);
+            System.out.printf("warm, common pool: %.0f ms%n",
+                    (System.nanoTime() - start) / 1e6);
+        } finally {
+            System.setProperty("user.dir", oldDir);
+            delete(dir);
+        }
+    }
+
+    /** Scans and hashes every file below DIR with THREADS threads and no stat cache, returning the time taken in
+     * milliseconds. */
+    private static double coldRun(File dir, int threads) {
+        new File(dir, ".gitlet/index").delete();
+        long start = System.nanoTime();
+        WorkingTreeScanner scanner = new WorkingTreeScanner(dir, threads);
+        Map<String, StatCache.Stat> files = scanner.scan();
+        scanner.hash(files.keySet(), files, StatCache.load());
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Fills DIR with COUNT files in subdirectories of DIR_SIZE files each, and an empty .gitlet. */
+    private static void build(File dir, int count) {
+        new File(dir, ".gitlet").mkdir();
+        byte[] contents = new byte[FILE_SIZE];
+        for (int i = 0; i < count; i += 1) {
+            File sub = new File(dir, "d" + (i / DIR_SIZE));
+            if (i % DIR_SIZE == 0) {
+                sub.mkdir();
+            }
+            contents[0] = (byte) i;
+            contents[1] = (byte) (i >> 8);
+            contents[2] = (byte) (i >> 16);
+            Utils.writeContents(new File(sub, "f" + i), (Object) contents);
+        }
+    }
+
+    /** Deletes FILE and everything below it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Cold runs per thread count. */
+    private static final int REPEAT = 3;
+    /** Files per directory. */
+    private static final int DIR_SIZE = 100;
+    /** Bytes per file. */
+    private static final int FILE_SIZE = 4096;
+}
@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Line-by-line three-way merges of two versions of a file with the version they came from, in the manner of diff3.
+ * Each version is diffed against the base; the hunks of the two diffs are taken in order of their position in the
+ * base, and hunks that overlap or touch form one region.  A region only one side changed takes that side's lines, one
+ * both sides changed in the same way takes them once, and any other is a conflict, written between the markers Gitlet
+ * has always used.  Lines outside every region are the base's.  Binary files are not merged by line: the two versions
+ * are written whole as one conflict.
+ * @author Lila Chalabi
+ */
+class ThreeWayMerge {
+
+    /** Writes the merge of OURS and THEIRS, two versions of BASE, to OUT, and returns the number of conflicts. */
+    static int merge(byte[] base, byte[] ours, byte[] theirs,
+                     OutputStream out) throws IOException {
+        Diff.Lines o = new Diff.Lines(base);
+        Diff.Lines a = new Diff.Lines(ours);
+        Diff.Lines b = new Diff.Lines(theirs);
+        if (o.isBinary() || a.isBinary() || b.isBinary()) {
+            conflict(ours, theirs, out);
+            return 1;
+        }
+        Diff.tokenize(o, a, b);
+        List<Diff.Hunk> ha = Diff.diff(o, a);
+        List<Diff.Hunk> hb = Diff.diff(o, b);
+
+        int conflicts = 0;
+        int pos = 0;
+        int ia = 0;
+        int ib = 0;
+        while (ia < ha.size() || ib < hb.size()) {
+            /* gathers the next region: the first hunk of either side and every hunk that overlaps or touches it. */
+            List<Diff.Hunk> ra = new ArrayList<Diff.Hunk>();
+            List<Diff.Hunk> rb = new ArrayList<Diff.Hunk>();
+            boolean fromA = ib == hb.size() || ia < ha.size()
+                    && ha.get(ia).aStart <= hb.get(ib).aStart;
+            Diff.Hunk first = fromA ? ha.get(ia++) : hb.get(ib++);
+            (fromA ? ra : rb).add(first);
+            int lo = first.aStart;
+            int hi = first.aEnd;
+            while (true) {
+                if (ia < ha.size() && ha.get(ia).aStart <= hi) {
+                    hi = Math.max(hi, ha.get(ia).aEnd);
+                    ra.add(ha.get(ia++));
+                } else if (ib < hb.size() && hb.get(ib).aStart <= hi) {
+                    hi = Math.max(hi, hb.get(ib).aEnd);
+                    rb.add(hb.get(ib++));
+                } else {
+                    break;
+                }
+            }
+
+            o.write(pos, lo, out);
+            pos = hi;
+            if (rb.isEmpty()) {
+                a.write(start(ra, lo), end(ra, hi), out);
+            } else if (ra.isEmpty()) {
+                b.write(start(rb, lo), end(rb, hi), out);
+            } else {
+                int aFrom = start(ra, lo);
+                int aTo = end(ra, hi);
+                int bFrom = start(rb, lo);
+                int bTo = end(rb, hi);
+                if (a.sameAs(aFrom, aTo, b, bFrom, bTo)) {
+                    a.write(aFrom, aTo, out);
+                } else {
+                    out.write(OURS);
+                    a.write(aFrom, aTo, out);
+                    out.write(SEPARATOR);
+                    b.write(bFrom, bTo, out);
+                    out.write(THEIRS);
+                    conflicts += 1;
+                }
+            }
+        }
+        o.write(pos, o.size(), out);
+        return conflicts;
+    }
+
+    /** Writes OURS and THEIRS whole to OUT, as one conflict. */
+    static void conflict(byte[] ours, byte[] theirs, OutputStream out)
+        throws IOException {
+        out.write(OURS);
+        out.write(ours);
+        out.write(SEPARATOR);
+        out.write(theirs);
+        out.write(THEIRS);
+    }
+
+    /** Returns the first line of one side in the region of the base starting at LO, whose hunks from that side are
+     * HUNKS: the base lines before the first hunk are unchanged on that side. */
+    private static int start(List<Diff.Hunk> hunks, int lo) {
+        Diff.Hunk first = hunks.get(0);
+        return first.bStart - (first.aStart - lo);
+    }
+
+    /** Returns the end of the lines of one side in the region of the base ending at HI, whose hunks from that side
+     * are HUNKS. */
+    private static int end(List<Diff.Hunk> hunks, int hi) {
+        Diff.Hunk last = hunks.get(hunks.size() - 1);
+        return last.bEnd + (hi - last.aEnd);
+    }
+
+    /** Start of a conflict. */
+    private static final byte[] OURS =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /** Between the two sides of a conflict. */
+    private static final byte[] SEPARATOR =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+    /** End of a conflict. */
+    private static final byte[] THEIRS =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+}
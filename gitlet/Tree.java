@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A tree object: the contents of one directory of a commit, mapping the names of its files to the UIDs of their blobs
+ * and the names of its subdirectories to the UIDs of their own trees.  A tree's UID is the sha-1 of its encoding (see
+ * Codec), so two commits with the same contents in a directory share that directory's tree, and a commit that changes
+ * one file writes new trees only for the directories on that file's path.
+ *
+ * Paths are relative to the working directory, with '/' between names.  The static methods take and return tree UIDs;
+ * a null UID stands for an empty directory, which is never stored except as the root.
+ * @author Lila Chalabi
+ */
+class Tree implements Serializable {
+
+    /** Returns the UID of the tree that results from applying CHANGES to the tree with UID ROOT (null for none):
+     * each path in CHANGES is set to its blob UID, or removed if that is null.  Only the trees on changed paths are
+     * read and written. */
+    static String update(String root, Map<String, String> changes) {
+        String result = updateSubtree(root, changes);
+        return result == null ? new Tree().write() : result;
+    }
+
+    /** Returns the UID of a tree holding the files in FILES, a map of paths to blob UIDs. */
+    static String fromMap(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the UID of the blob at PATH in the tree with UID ROOT, or null if there is none. */
+    static String lookup(String root, String path) {
+        String id = root;
+        int start = 0;
+        int slash;
+        while ((slash = path.indexOf('/', start)) >= 0) {
+            if (id == null) {
+                return null;
+            }
+            id = read(id).trees.get(path.substring(start, slash));
+            start = slash + 1;
+        }
+        return id == null ? null : read(id).files.get(path.substring(start));
+    }
+
+    /** Adds every file in the tree with UID ID to INTO, mapping its path, prefixed by PREFIX, to its blob UID. */
+    static void flatten(String id, String prefix, Map<String, String> into) {
+        if (id == null) {
+            return;
+        }
+        Tree tree = read(id);
+        for (Map.Entry<String, String> e : tree.files.entrySet()) {
+            into.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree.trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + "/", into);
+        }
+    }
+
+    /** Adds to INTO every path, prefixed by PREFIX, whose blob differs between the trees with UIDs A and B, mapped to
+     * its blob UIDs in A and in B (null where it is absent).  Subtrees with equal UIDs are equal and are skipped
+     * without being read. */
+    static void diff(String a, String b, String prefix,
+                     Map<String, String[]> into) {
+        if (a == null ? b == null : a.equals(b)) {
+            return;
+        }
+        Tree treeA = a == null ? new Tree() : read(a);
+        Tree treeB = b == null ? new Tree() : read(b);
+        TreeSet<String> names = new TreeSet<String>(treeA.files.keySet());
+        names.addAll(treeB.files.keySet());
+        for (String name : names) {
+            String blobA = treeA.files.get(name);
+            String blobB = treeB.files.get(name);
+            if (blobA == null || !blobA.equals(blobB)) {
+                into.put(prefix + name, new String[] {blobA, blobB});
+            }
+        }
+        names = new TreeSet<String>(treeA.trees.keySet());
+        names.addAll(treeB.trees.keySet());
+        for (String name : names) {
+            diff(treeA.trees.get(name), treeB.trees.get(name),
+                    prefix + name + "/", into);
+        }
+    }
+
+    /** UID of the empty tree, the root tree of the initial commit. */
+    static final String EMPTY = new Tree().id();
+
+    /** Returns the tree with UID ID. */
+    static Tree read(String id) {
+        return Utils.readObject(id, Tree.class);
+    }
+
+    /** Stores this tree in the object store and returns its UID. */
+    String write() {
+        byte[] contents = Codec.encode(this);
+        String id = Utils.sha1(contents);
+        Utils.objectStore().write(id, contents);
+        return id;
+    }
+
+    /** Returns the UID this tree has once stored. */
+    String id() {
+        return Utils.sha1(Codec.encode(this));
+    }
+
+    /** Returns the map of the names of the files in this directory to their blob UIDs. */
+    Map<String, String> files() {
+        return files;
+    }
+
+    /** Returns the map of the names of the subdirectories of this directory to their tree UIDs. */
+    Map<String, String> trees() {
+        return trees;
+    }
+
+    /** Writes the fields of this tree to OUT: its files and then its subdirectories, each as a count followed by
+     * names and UIDs in name order. */
+    void encode(Codec.Writer out) {
+        for (TreeMap<String, String> entries : List.of(files, trees)) {
+            out.varint(entries.size());
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                out.string(e.getKey());
+                out.id(e.getValue());
+            }
+        }
+    }
+
+    /** Returns the tree whose fields IN holds, as written by encode. */
+    static Tree decode(Codec.Reader in) {
+        Tree tree = new Tree();
+        for (TreeMap<String, String> entries : List.of(tree.files,
+                tree.trees)) {
+            for (int n = in.count(); n > 0; n -= 1) {
+                entries.put(in.string(), in.id());
+            }
+        }
+        return tree;
+    }
+
+    /** As for update, but returns null if the result is empty. */
+    private static String updateSubtree(String id,
+                                        Map<String, String> changes) {
+        Tree tree = id == null ? new Tree() : read(id);
+        Map<String, Map<String, String>> byDir =
+            new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                byDir.computeIfAbsent(path.substring(0, slash),
+                    k -> new HashMap<String, String>())
+                    .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                tree.files.remove(path);
+            } else {
+                tree.files.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : byDir.entrySet()) {
+            String sub = updateSubtree(tree.trees.get(e.getKey()),
+                    e.getValue());
+            if (sub == null) {
+                tree.trees.remove(e.getKey());
+            } else {
+                tree.trees.put(e.getKey(), sub);
+            }
+        }
+        if (tree.files.isEmpty() && tree.trees.isEmpty()) {
+            return null;
+        }
+        return tree.write();
+    }
+
+    /** Fixed so that trees serialized before Codec can still be read. */
+    private static final long serialVersionUID = 1L;
+
+    /** Maps the names of the files in this directory to their blob UIDs. */
+    private final TreeMap<String, String> files = new TreeMap<String, String>();
+    /** Maps the names of the subdirectories of this directory to their tree UIDs. */
+    private final TreeMap<String, String> trees = new TreeMap<String, String>();
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+
+public class TreeTest {
+
+    /** Points the object store at a fresh repository and returns a map of
+     *  a few nested files. */
+    private Map<String, String> setUp() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-tree").toFile();
+        new File(dir, ".gitlet/objects").mkdirs();
+        System.setProperty("user.dir", dir.getPath());
+        Map<String, String> files = new HashMap<String, String>();
+        files.put("top.txt", Utils.sha1("top"));
+        files.put("a/x.txt", Utils.sha1("x"));
+        files.put("a/b/y.txt", Utils.sha1("y"));
+        files.put("c/z.txt", Utils.sha1("z"));
+        return files;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String oldDir = System.getProperty("user.dir");
+        try {
+            Map<String, String> files = setUp();
+            String root = Tree.fromMap(files);
+            Map<String, String> flat = new HashMap<String, String>();
+            Tree.flatten(root, "", flat);
+            assertEquals(files, flat);
+            assertEquals(Utils.sha1("y"), Tree.lookup(root, "a/b/y.txt"));
+            assertNull(Tree.lookup(root, "a/b/q.txt"));
+            assertNull(Tree.lookup(root, "d/y.txt"));
+            assertEquals(root, Tree.fromMap(files));
+        } finally {
+            System.setProperty("user.dir", oldDir);
+        }
+    }
+
+    @Test
+    public void testUpdateSharesSubtrees() throws IOException {
+        String oldDir = System.getProperty("user.dir");
+        try {
+            Map<String, String> files = setUp();
+            String root = Tree.fromMap(files);
+            Map<String, String> changes = new HashMap<String, String>();
+            changes.put("a/b/y.txt", Utils.sha1("y2"));
+            changes.put("c/z.txt", null);
+            String updated = Tree.update(root, changes);
+
+            files.put("a/b/y.txt", Utils.sha1("y2"));
+            files.remove("c/z.txt");
+            assertEquals(Tree.fromMap(files), updated);
+
+            Map<String, String[]> diff = new TreeMap<String, String[]>();
+            Tree.diff(root, updated, "", diff);
+            assertEquals(2, diff.size());
+            assertArrayEquals(new String[] {Utils.sha1("y"), Utils.sha1("y2")},
+                    diff.get("a/b/y.txt"));
+            assertArrayEquals(new String[] {Utils.sha1("z"), null},
+                    diff.get("c/z.txt"));
+        } finally {
+            System.setProperty("user.dir", oldDir);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/** Writes the differences between two versions of each of a series of files as the diff command prints them: unified
+ * diffs with three lines of context, in the format of git diff, or with --stat one line per file counting the lines
+ * inserted and deleted and then a summary.  Each file's diff is written to the output as soon as it is computed, so
+ * only the two versions of one file are in memory at a time.  A version holding a NUL byte is binary, and a version
+ * of more than MAX_SIZE bytes is only counted, not kept; for those only the fact that the versions differ is
+ * reported.
+ * @author Lila Chalabi
+ */
+class UnifiedDiff {
+
+    /** One version of a file: its contents, or the reason they are not diffed. */
+    static class Version {
+
+        /** Returns the version of a file that does not exist. */
+        static Version none() {
+            return new Version(null, null, 0, false);
+        }
+
+        /** Returns the version with UID ID whose contents are read from IN.  Past MAX_SIZE bytes they are only
+         * counted. */
+        static Version read(InputStream in, String id) throws IOException {
+            byte[] text = in.readNBytes((int) MAX_SIZE + 1);
+            if (text.length <= MAX_SIZE) {
+                return new Version(new Diff.Lines(text), id, text.length,
+                        false);
+            }
+            long size = text.length
+                + in.transferTo(OutputStream.nullOutputStream());
+            return new Version(null, id, size, true);
+        }
+
+        /** A version with lines TEXT, UID ID and SIZE bytes, which are too many to diff if TOOLARGE. */
+        private Version(Diff.Lines text, String id, long size,
+                        boolean tooLarge) {
+            this.text = text;
+            this.id = id;
+            this.size = size;
+            this.tooLarge = tooLarge;
+        }
+
+        /** Returns true iff there is such a version of the file. */
+        boolean exists() {
+            return text != null || tooLarge;
+        }
+
+        /** Returns true iff the version is not diffed line by line. */
+        boolean isBinary() {
+            return tooLarge || text != null && text.isBinary();
+        }
+
+        /** The lines of the version, or null. */
+        private final Diff.Lines text;
+        /** The UID of the contents. */
+        private final String id;
+        /** The number of bytes in the contents. */
+        private final long size;
+        /** True iff the contents are over MAX_SIZE bytes. */
+        private final boolean tooLarge;
+    }
+
+    /** Writes diffs to OUT, or a summary of them if STAT. */
+    UnifiedDiff(OutputStream out, boolean stat) {
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.stat = stat;
+    }
+
+    /** Writes the difference between versions A and B of the file at PATH. */
+    void file(String path, Version a, Version b) throws IOException {
+        files += 1;
+        if (a.isBinary() || b.isBinary()) {
+            if (stat) {
+                print(String.format(" %s | Bin %d -> %d bytes\n", path,
+                        a.size, b.size));
+            } else {
+                header(path, a, b);
+                print(String.format("Binary files %s and %s differ\n",
+                        a.exists() ? "a/" + path : NO_FILE,
+                        b.exists() ? "b/" + path : NO_FILE));
+            }
+            out.flush();
+            return;
+        }
+
+        Diff.Lines al = a.exists() ? a.text : new Diff.Lines(new byte[0]);
+        Diff.Lines bl = b.exists() ? b.text : new Diff.Lines(new byte[0]);
+        Diff.tokenize(al, bl);
+        List<Diff.Hunk> hunks = Diff.diff(al, bl);
+        if (stat) {
+            int deleted = 0;
+            int inserted = 0;
+            for (Diff.Hunk h : hunks) {
+                deleted += h.aEnd - h.aStart;
+                inserted += h.bEnd - h.bStart;
+            }
+            insertions += inserted;
+            deletions += deleted;
+            print(String.format(" %s | %d %s\n", path, inserted + deleted,
+                    bar(inserted, deleted)));
+        } else {
+            header(path, a, b);
+            if (!hunks.isEmpty()) {
+                print((a.exists() ? "--- a/" + path : "--- " + NO_FILE)
+                        + "\n");
+                print((b.exists() ? "+++ b/" + path : "+++ " + NO_FILE)
+                        + "\n");
+            }
+            int first = 0;
+            while (first < hunks.size()) {
+                int last = first;
+                while (last + 1 < hunks.size()
+                        && hunks.get(last + 1).aStart - hunks.get(last).aEnd
+                            <= 2 * CONTEXT) {
+                    last += 1;
+                }
+                block(al, bl, hunks.subList(first, last + 1));
+                first = last + 1;
+            }
+        }
+        out.flush();
+    }
+
+    /** Writes the summary, if this writes one, and flushes the output. */
+    void finish() throws IOException {
+        if (stat && files > 0) {
+            StringBuilder summary = new StringBuilder();
+            summary.append(String.format(" %d file%s changed", files,
+                    files == 1 ? "" : "s"));
+            if (insertions > 0) {
+                summary.append(String.format(", %d insertion%s(+)",
+                        insertions, insertions == 1 ? "" : "s"));
+            }
+            if (deletions > 0) {
+                summary.append(String.format(", %d deletion%s(-)",
+                        deletions, deletions == 1 ? "" : "s"));
+            }
+            print(summary.append('\n').toString());
+        }
+        out.flush();
+    }
+
+    /** Writes the lines introducing the diff of the file at PATH from A to B. */
+    private void header(String path, Version a, Version b)
+        throws IOException {
+        print(String.format("diff --git a/%s b/%s\n", path, path));
+        if (!a.exists()) {
+            print("new file\n");
+        } else if (!b.exists()) {
+            print("deleted file\n");
+        }
+        print(String.format("index %s..%s\n", abbreviate(a), abbreviate(b)));
+    }
+
+    /** Writes one hunk of the unified diff from A to B, made of the changes HUNKS and the lines around them. */
+    private void block(Diff.Lines a, Diff.Lines b, List<Diff.Hunk> hunks)
+        throws IOException {
+        Diff.Hunk first = hunks.get(0);
+        Diff.Hunk last = hunks.get(hunks.size() - 1);
+        int before = Math.min(CONTEXT, first.aStart);
+        int after = Math.min(CONTEXT, a.size() - last.aEnd);
+        int aFrom = first.aStart - before;
+        int bFrom = first.bStart - before;
+        int aTo = last.aEnd + after;
+        int bTo = last.bEnd + after;
+        print(String.format("@@ -%s +%s @@\n", range(aFrom, aTo),
+                range(bFrom, bTo)));
+
+        int i = aFrom;
+        for (Diff.Hunk h : hunks) {
+            lines(a, i, h.aStart, ' ');
+            lines(a, h.aStart, h.aEnd, '-');
+            lines(b, h.bStart, h.bEnd, '+');
+            i = h.aEnd;
+        }
+        lines(a, i, aTo, ' ');
+    }
+
+    /** Writes lines [FROM..TO) of TEXT, each preceded by PREFIX. */
+    private void lines(Diff.Lines text, int from, int to, char prefix)
+        throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(prefix);
+            text.write(i, i + 1, out);
+            if (!text.terminated(i)) {
+                print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Returns the range of lines [FROM..TO) as a hunk header shows it: the first line, counting from 1, and the
+     * number of lines if it is not 1.  An empty range is shown by the line before it. */
+    private static String range(int from, int to) {
+        if (to - from == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (to == from ? from : from + 1) + "," + (to - from);
+    }
+
+    /** Returns a bar of '+' and '-' for INSERTED insertions and DELETED deletions, scaled down to at most BAR_WIDTH
+     * characters. */
+    private static String bar(int inserted, int deleted) {
+        int total = inserted + deleted;
+        if (total > BAR_WIDTH) {
+            inserted = (int) ((long) inserted * BAR_WIDTH / total);
+            deleted = BAR_WIDTH - inserted;
+        }
+        return "+".repeat(inserted) + "-".repeat(deleted);
+    }
+
+    /** Returns the abbreviated UID of VERSION, or zeros if it does not exist. */
+    private static String abbreviate(Version version) {
+        return version.exists() ? version.id.substring(0, ABBREV)
+            : "0".repeat(ABBREV);
+    }
+
+    /** Writes S, which is ASCII but for the file names it holds, to the output. */
+    private void print(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Most bytes in a version that is diffed. */
+    static final long MAX_SIZE = 1L << 24;
+    /** Lines of context around each change. */
+    private static final int CONTEXT = 3;
+    /** Widest bar drawn by --stat. */
+    private static final int BAR_WIDTH = 50;
+    /** Digits shown of a UID. */
+    private static final int ABBREV = 7;
+    /** Name shown for a missing version. */
+    private static final String NO_FILE = "/dev/null";
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where the diffs go. */
+    private final OutputStream out;
+    /** True iff only a summary is written. */
+    private final boolean stat;
+    /** Number of files written. */
+    private int files;
+    /** Lines inserted in all of them. */
+    private int insertions;
+    /** Lines deleted from all of them. */
+    private int deletions;
+}
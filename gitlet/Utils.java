@@ -3,19 +3,24 @@ package gitlet;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -42,11 +47,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -58,6 +59,25 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, the UID its blob
+     *  would have, reading it through a fixed-size buffer without storing
+     *  it. */
+    static String sha1(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buf = new byte[LooseObjectStore.BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                md.update(buf, 0, n);
+            }
+            return toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -83,6 +103,28 @@ class Utils {
         return restrictedDelete(new File(file));
     }
 
+    /** Deletes the file at PATH, relative to the working directory, if it
+     *  exists and is not a directory, and then deletes those of its parent
+     *  directories below the working directory that are left empty.
+     *  Returns true if the file was deleted, and false otherwise.  Refuses
+     *  to delete it and throws IllegalArgumentException unless the working
+     *  directory contains a directory named .gitlet. */
+    static boolean deleteWorkingFile(String path) {
+        File cwd = new File(System.getProperty("user.dir"));
+        if (!(new File(cwd, ".gitlet")).isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = new File(cwd, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(cwd) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
@@ -132,26 +174,203 @@ class Utils {
     }
 
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
-     *  Throws IllegalArgumentException in case of problems. */
+     *  FILE may hold a Codec encoding or, if written by an earlier version
+     *  of Gitlet, a Java serialization stream.  Throws
+     *  IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        return Codec.decode(readContents(file), expectedClass);
+    }
+
+    /** Write OBJ, a Commit, Tree or StagedArea, to FILE in the encoding
+     *  of Codec. */
+    static void writeObject(File file, Serializable obj) {
+        writeContents(file, (Object) Codec.encode(obj));
+    }
+
+    /* OBJECTS */
+
+    /** Return the objects directory of the repository in the current
+     *  directory. */
+    static File objectsDir() {
+        return new File(System.getProperty("user.dir") + "/.gitlet/objects");
+    }
+
+    /** Return the ObjectStore of the repository in the current directory,
+     *  opening it the first time. */
+    static synchronized ObjectStore objectStore() {
+        File objects = objectsDir();
+        if (store == null || !objects.equals(storeDir)) {
+            store = ObjectStore.open(objects);
+            if (cacheCapacity > 0) {
+                store = new CachingObjectStore(store, cacheCapacity);
+            }
+            storeDir = objects;
+        }
+        return store;
+    }
+
+    /** Makes objectStore keep up to CAPACITY bytes of the contents of
+     *  recently read objects in memory, for a long-lived process. */
+    static synchronized void cacheObjects(long capacity) {
+        cacheCapacity = capacity;
+        store = null;
+    }
+
+    /** Return the object of type T with id ID from the repository's object
+     *  store, casting it to EXPECTEDCLASS, as for readObject(File, Class).
+     *  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T readObject(String id,
+                                                 Class<T> expectedClass) {
+        return Codec.decode(objectStore().read(id), expectedClass);
+    }
+
+    /** Store OBJ, a Commit, Tree or StagedArea, in the repository's object
+     *  store under the id ID. */
+    static void writeObject(String id, Serializable obj) {
+        objectStore().write(id, Codec.encode(obj));
+    }
+
+    /** Return the contents of the object with id ID in the repository's
+     *  object store.  Throws IllegalArgumentException if there is no such
+     *  object. */
+    static byte[] readObjectContents(String id) {
+        return objectStore().read(id);
+    }
+
+    /** Return true iff the repository's object store holds an object with
+     *  id ID. */
+    static boolean objectExists(String id) {
+        return objectStore().has(id);
+    }
+
+    /** Write the contents of the object with id ID to TARGET, creating or
+     *  replacing it and creating its parent directories as needed.  An
+     *  object the store keeps uncompressed is copied by the file system with
+     *  FileChannel.transferTo, and any other is inflated straight into
+     *  TARGET's channel through a fixed-size buffer, so the heap used does
+     *  not grow with the object.  If the repository has a file
+     *  .gitlet/link-checkouts, TARGET is instead made a hard link to an
+     *  uncompressed, read-only copy of the object, which the store keeps
+     *  from then on.  TARGET is always replaced rather than written into,
+     *  since it may be such a link. */
+    static void copyObject(String id, File target) {
+        ObjectStore objects = objectStore();
+        Path path = target.toPath();
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
-        } catch (IOException | ClassCastException
-                 | ClassNotFoundException excp) {
+            File raw = objects.rawFile(id);
+            if (linkCheckouts()) {
+                if (raw == null) {
+                    try (InputStream in = objects.openStream(id)) {
+                        raw = objects.storeRaw(id, in);
+                    }
+                }
+                if (raw != null && link(raw, path)) {
+                    return;
+                }
+            }
+            Files.deleteIfExists(path);
+            try (FileChannel out = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                if (raw != null) {
+                    transfer(raw, out);
+                    return;
+                }
+                try (InputStream in = objects.openStream(id)) {
+                    byte[] buf = new byte[LooseObjectStore.BUFFER_SIZE];
+                    ByteBuffer window = ByteBuffer.wrap(buf);
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        window.clear().limit(n);
+                        while (window.hasRemaining()) {
+                            out.write(window);
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
-    static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+    /** Return true iff checkouts in the repository in the current directory
+     *  hard-link files to their blobs, which it asks for by having a file
+     *  .gitlet/link-checkouts. */
+    static boolean linkCheckouts() {
+        return new File(System.getProperty("user.dir"),
+                ".gitlet/link-checkouts").isFile();
+    }
+
+    /** Make TARGET a hard link to the object file RAW, which is made
+     *  read-only first, unless it is one already.  Return false if the file
+     *  system cannot link them. */
+    private static boolean link(File raw, Path target) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(raw.toPath(), target)) {
+            return true;
+        }
+        raw.setWritable(false, false);
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, raw.toPath());
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException excp) {
+            return false;
+        }
+    }
+
+    /** Copy all of SOURCE to OUT with FileChannel.transferTo. */
+    private static void transfer(File source, FileChannel out)
+        throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath())) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                long n = in.transferTo(pos, size - pos, out);
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+            }
+        }
+    }
+
+    /** Store the contents of FILE as a blob in the repository's object
+     *  store, reading FILE only once, and return its id, the SHA-1 of the
+     *  contents. */
+    static String writeBlob(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return objectStore().write(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return RAW as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] raw) {
+        char[] result = new char[2 * raw.length];
+        for (int i = 0; i < raw.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(raw[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[raw[i] & 0xf];
+        }
+        return new String(result);
     }
 
+    /** The lower-case hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The object store last opened by objectStore. */
+    private static ObjectStore store;
+
+    /** The objects directory of STORE. */
+    private static File storeDir;
+
+    /** Bytes of object contents cached in memory by STORE, or 0. */
+    private static long cacheCapacity;
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -183,6 +402,44 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns a list of the paths, relative to DIR and with '/' between
+     *  names, of all plain files in DIR and its subdirectories other than
+     *  .gitlet, in lexicographic order as Java Strings.  Returns null if DIR
+     *  does not denote a directory. */
+    static List<String> workingFilesIn(File dir) {
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>();
+        addWorkingFiles(dir, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns a list of the paths of all plain files in DIR and its
+     *  subdirectories other than .gitlet, as for workingFilesIn(File). */
+    static List<String> workingFilesIn(String dir) {
+        return workingFilesIn(new File(dir));
+    }
+
+    /** Adds the paths of the plain files below DIR to RESULT, each prefixed
+     *  by PREFIX. */
+    private static void addWorkingFiles(File dir, String prefix,
+                                        List<String> result) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (entry.isFile()) {
+                result.add(prefix + name);
+            } else if (entry.isDirectory() && !name.equals(".gitlet")) {
+                addWorkingFiles(entry, prefix + name + "/", result);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/** Compares the working directory with the head commit and the staging area, for status.  The directory walk forks a
+ * task per subdirectory and the files that must be hashed are split among tasks as well, all on a ForkJoinPool: the
+ * common pool by default, or one of a given parallelism.  Each hash reads its file through one fixed-size buffer.
+ * Files whose stat data match the stat cache are not hashed at all.  Add stores files as blobs through the same
+ * tasks.
+ * @author Lila Chalabi
+ */
+class WorkingTreeScanner {
+
+    /** The differences found by compare, each list sorted by path. */
+    static class Result {
+        /** Files whose contents differ from the version staged, or from the head's if none is staged. */
+        final List<String> modified = new ArrayList<String>();
+        /** Files staged, or tracked and not staged for removal, that are missing from the working directory. */
+        final List<String> deleted = new ArrayList<String>();
+        /** Files neither staged nor tracked, or tracked but staged for removal. */
+        final List<String> untracked = new ArrayList<String>();
+    }
+
+    /** A scanner of the working directory ROOT on the common ForkJoinPool. */
+    WorkingTreeScanner(File root) {
+        this(root, 0);
+    }
+
+    /** A scanner of the working directory ROOT using PARALLELISM threads, or the common ForkJoinPool if it is 0. */
+    WorkingTreeScanner(File root, int parallelism) {
+        this.root = root.toPath();
+        this.parallelism = parallelism;
+    }
+
+    /** Returns the stat data of every plain file below the working directory other than those in .gitlet, by path
+     * relative to it with '/' between names.  The map is unordered. */
+    Map<String, StatCache.Stat> scan() {
+        return invoke(new ScanTask(root, ""));
+    }
+
+    /** Returns the UIDs of the contents of the working files PATHS, whose stat data are in FILES, using CACHE where it
+     * can be trusted and recording the others in it. */
+    Map<String, String> hash(Iterable<String> paths,
+                             Map<String, StatCache.Stat> files,
+                             StatCache cache) {
+        return hash(paths, files, cache, false);
+    }
+
+    /** Stores the contents of the working files PATHS, whose stat data are in FILES, as blobs, and returns their
+     * UIDs.  A file CACHE vouches for is not read at all if its blob is already stored; the others are hashed and
+     * stored in one pass each, in parallel, and recorded in CACHE. */
+    Map<String, String> store(Iterable<String> paths,
+                              Map<String, StatCache.Stat> files,
+                              StatCache cache) {
+        return hash(paths, files, cache, true);
+    }
+
+    /** Returns the files found by the last hash or store to be hard links to blobs whose contents they no longer
+     * have, sorted by path. */
+    List<String> damaged() {
+        return damaged;
+    }
+
+    /** Returns the UIDs of the contents of the working files PATHS, whose stat data are in FILES, using CACHE where it
+     * can be trusted and recording the others in it, and also storing those as blobs if STORE.  In a repository that
+     * links checkouts, a file that is a hard link to the blob CACHE last recorded for it is always hashed again: the
+     * read-only bit is all that protects the blob, and root, or an editor that makes the file writable first, can
+     * change both in place.  A file that no longer matches its blob is added to the damaged files. */
+    private Map<String, String> hash(Iterable<String> paths,
+                                     Map<String, StatCache.Stat> files,
+                                     StatCache cache, boolean store) {
+        boolean links = Utils.linkCheckouts();
+        Map<String, String> linked = new HashMap<String, String>();
+        Map<String, String> result = new HashMap<String, String>();
+        List<String> misses = new ArrayList<String>();
+        for (String path : paths) {
+            String id = cache.cached(path, files.get(path));
+            String blob = links ? linkedBlob(path, cache) : null;
+            if (blob != null) {
+                linked.put(path, blob);
+                misses.add(path);
+            } else if (id == null || store && !Utils.objectExists(id)) {
+                misses.add(path);
+            } else {
+                result.put(path, id);
+            }
+        }
+        String[] ids = new String[misses.size()];
+        invoke(new RangeTask(i -> {
+            File file = root.resolve(misses.get(i)).toFile();
+            ids[i] = store ? Utils.writeBlob(file) : Utils.sha1(file);
+        }, 0, ids.length, HASH_BATCH));
+        damaged.clear();
+        for (int i = 0; i < ids.length; i += 1) {
+            String path = misses.get(i);
+            cache.record(path, files.get(path), ids[i]);
+            result.put(path, ids[i]);
+            if (linked.containsKey(path)
+                    && !linked.get(path).equals(ids[i])) {
+                damaged.add(path);
+            }
+        }
+        Collections.sort(damaged);
+        return result;
+    }
+
+    /** Returns the UID of the blob CACHE last recorded for the working file PATH if the file is a hard link to the
+     * blob's uncompressed copy in the store, and null otherwise. */
+    private String linkedBlob(String path, StatCache cache) {
+        String id = cache.recorded(path);
+        File raw = id == null ? null : Utils.objectStore().rawFile(id);
+        try {
+            return raw != null
+                && Files.isSameFile(raw.toPath(), root.resolve(path))
+                ? id : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Runs TASK and returns its result, on the common pool or on a pool of its own that is shut down afterwards, so
+     * that a long-lived daemon does not keep the threads of every scan. */
+    private <T> T invoke(ForkJoinTask<T> task) {
+        if (parallelism == 0) {
+            return ForkJoinPool.commonPool().invoke(task);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Compares the working directory with TRACKED, the head commit's map of files to blob UIDs, and with the staging
+     * area SA, hashing only those files that CACHE cannot vouch for, and then writes CACHE. */
+    Result compare(Map<String, String> tracked, StagedArea sA,
+                   StatCache cache) {
+        Map<String, StatCache.Stat> files = scan();
+        TreeSet<String> candidates = new TreeSet<String>(tracked.keySet());
+        candidates.addAll(sA.stagedMap.keySet());
+
+        Result result = new Result();
+        List<String> present = new ArrayList<String>();
+        for (String file : candidates) {
+            boolean expected = sA.stagedMap.containsKey(file)
+                    || !sA.toDelete.contains(file);
+            if (!expected) {
+                continue;
+            } else if (files.containsKey(file)) {
+                present.add(file);
+            } else {
+                result.deleted.add(file);
+            }
+        }
+        Map<String, String> ids = hash(present, files, cache);
+        for (String file : present) {
+            String staged = sA.stagedMap.get(file);
+            String expected = staged != null ? staged : tracked.get(file);
+            if (!ids.get(file).equals(expected)) {
+                result.modified.add(file);
+            }
+        }
+        for (String file : files.keySet()) {
+            if (!sA.stagedMap.containsKey(file)
+                    && (!tracked.containsKey(file)
+                        || sA.toDelete.contains(file))) {
+                result.untracked.add(file);
+            }
+        }
+        Collections.sort(result.untracked);
+
+        cache.retain(files);
+        cache.save();
+        return result;
+    }
+
+    /** Lists one directory, forking a task for each subdirectory. */
+    private static class ScanTask
+        extends RecursiveTask<Map<String, StatCache.Stat>> {
+
+        /** A task listing DIR, whose files' paths start with PREFIX. */
+        ScanTask(Path dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected Map<String, StatCache.Stat> compute() {
+            Map<String, StatCache.Stat> result =
+                new HashMap<String, StatCache.Stat>();
+            List<ScanTask> subtasks = new ArrayList<ScanTask>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    BasicFileAttributes attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isRegularFile()) {
+                        result.put(prefix + name, new StatCache.Stat(attrs));
+                    } else if (attrs.isDirectory()
+                            && !name.equals(".gitlet")) {
+                        ScanTask task = new ScanTask(entry,
+                                prefix + name + "/");
+                        task.fork();
+                        subtasks.add(task);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (ScanTask task : subtasks) {
+                result.putAll(task.join());
+            }
+            return result;
+        }
+
+        /** The directory. */
+        private final Path dir;
+        /** Prefix of the paths of its files. */
+        private final String prefix;
+    }
+
+    /** Most files hashed by one task without splitting. */
+    private static final int HASH_BATCH = 16;
+
+    /** The working directory. */
+    private final Path root;
+    /** Threads the tasks run on, or 0 for the common pool. */
+    private final int parallelism;
+    /** Files found by the last hash or store to have been changed in place through a link to their blob. */
+    private final List<String> damaged = new ArrayList<String>();
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/** Replaces the files of one commit in the working directory by those of another, for reset, branch checkout and
+ * fast-forward merges.  Files only the first commit tracks are deleted.  Of the second commit's files, those the stat
+ * cache vouches for as already holding the right contents are skipped without being read; the others are hashed, and
+ * written only if they differ, by tasks on a pool of a bounded number of threads.  Deletions come first, since
+ * deleting a file also deletes the directories it leaves empty.
+ * @author Lila Chalabi
+ */
+class WorkingTreeUpdate {
+
+    /** The number of files an update wrote, deleted and skipped. */
+    static class Result {
+        /** Files created or replaced. */
+        int written;
+        /** Files deleted. */
+        int deleted;
+        /** Files that already had the right contents. */
+        int skipped;
+
+        @Override
+        public String toString() {
+            return String.format("%d written, %d deleted, %d skipped",
+                    written, deleted, skipped);
+        }
+    }
+
+    /** An update of the working directory ROOT using up to PARALLELISM threads to write files. */
+    WorkingTreeUpdate(File root, int parallelism) {
+        this.root = root;
+        this.parallelism = parallelism;
+    }
+
+    /** An update of the working directory ROOT using the default number of threads. */
+    WorkingTreeUpdate(File root) {
+        this(root, RangeTask.defaultParallelism());
+    }
+
+    /** Replaces the files of commit FROM in the working directory by those of commit TO, using CACHE to skip files
+     * that already have the right contents and recording the files written in it, and then writes CACHE. */
+    Result apply(Commit from, Commit to, StatCache cache) {
+        Result result = new Result();
+        Map<String, String[]> changes = new TreeMap<String, String[]>();
+        Tree.diff(from.getTree(), to.getTree(), "", changes);
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            if (e.getValue()[1] == null
+                    && Utils.deleteWorkingFile(e.getKey())) {
+                result.deleted += 1;
+            }
+        }
+
+        List<String> paths = new ArrayList<String>();
+        List<String> ids = new ArrayList<String>();
+        for (Map.Entry<String, String> e
+                : new TreeMap<String, String>(to.getBlobReference())
+                    .entrySet()) {
+            String path = e.getKey();
+            StatCache.Stat stat = StatCache.stat(file(path).getPath());
+            if (stat != null && e.getValue().equals(
+                    cache.cached(path, stat))) {
+                result.skipped += 1;
+            } else {
+                paths.add(path);
+                ids.add(e.getValue());
+            }
+        }
+
+        boolean[] wrote = new boolean[paths.size()];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RangeTask(i -> {
+                File target = file(paths.get(i));
+                if (!target.isFile()
+                        || !Utils.sha1(target).equals(ids.get(i))) {
+                    Utils.copyObject(ids.get(i), target);
+                    wrote[i] = true;
+                }
+            }, 0, wrote.length, WRITE_BATCH));
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < wrote.length; i += 1) {
+            String path = paths.get(i);
+            StatCache.Stat stat = StatCache.stat(file(path).getPath());
+            if (stat != null) {
+                cache.record(path, stat, ids.get(i));
+            }
+            if (wrote[i]) {
+                result.written += 1;
+            } else {
+                result.skipped += 1;
+            }
+        }
+        cache.save();
+        return result;
+    }
+
+    /** Returns the working file at PATH. */
+    private File file(String path) {
+        return new File(root, path);
+    }
+
+    /** Most files written by one task without splitting. */
+    private static final int WRITE_BATCH = 8;
+
+    /** The working directory. */
+    private final File root;
+    /** Most threads writing files at once. */
+    private final int parallelism;
+}